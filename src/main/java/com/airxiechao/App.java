@@ -32,6 +32,9 @@ public class App
     private static void runAsClient(){
         DevopsRpcClient devopsRpcClient = new DevopsRpcClient(getRpcServerIp(), getRpcServerPort());
         devopsRpcClient.connect(false);
+
+        // 退出时排空，不中断正在执行的命令
+        Runtime.getRuntime().addShutdownHook(new Thread(devopsRpcClient::disconnect));
     }
 
     /**
@@ -41,7 +44,8 @@ public class App
         DevopsRpcServer devopsRpcServer = new DevopsRpcServer(getRpcServerPort());
         devopsRpcServer.start();
 
-
+        // 滚动重启时排空，不中断正在进行的批量操作
+        Runtime.getRuntime().addShutdownHook(new Thread(devopsRpcServer::stop));
     }
 
 
@@ -5,6 +5,8 @@ public class Response {
     public static final String CODE_OK = "0";
     public static final String CODE_ERROR = "-1";
     public static final String CODE_AUTH_ERROR = "-2";
+    public static final String CODE_BUSY = "-3";
+    public static final String CODE_DEADLINE_EXCEEDED = "-4";
 
     private String code;
     private String message;
@@ -41,6 +43,16 @@ public class Response {
         this.message = message;
     }
 
+    public void busy(String message){
+        this.code = CODE_BUSY;
+        this.message = message;
+    }
+
+    public void deadlineExceeded(String message){
+        this.code = CODE_DEADLINE_EXCEEDED;
+        this.message = message;
+    }
+
     public String getCode() {
         return code;
     }
@@ -68,4 +80,12 @@ public class Response {
     public boolean isSuccess(){
         return CODE_OK.equals(this.code);
     }
+
+    public boolean isBusy(){
+        return CODE_BUSY.equals(this.code);
+    }
+
+    public boolean isDeadlineExceeded(){
+        return CODE_DEADLINE_EXCEEDED.equals(this.code);
+    }
 }
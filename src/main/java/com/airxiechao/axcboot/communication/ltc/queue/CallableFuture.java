@@ -4,31 +4,73 @@ import java.util.concurrent.*;
 
 public class CallableFuture implements Future {
 
-    private Object result;
-    private Throwable error;
+    private volatile Object result;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private Thread runner;
     private CountDownLatch latch = new CountDownLatch(1);
 
+    /**
+     * 取消事件，未执行的事件不再执行，执行中的事件在 mayInterruptIfRunning 时中断执行线程
+     * @param mayInterruptIfRunning
+     * @return 已完成时返回 false
+     */
     @Override
-    public boolean cancel(boolean mayInterruptIfRunning) {
-        return false;
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if(isDone()){
+            return false;
+        }
+
+        cancelled = true;
+        if(mayInterruptIfRunning && null != runner){
+            runner.interrupt();
+        }
+        latch.countDown();
+        return true;
     }
 
     @Override
     public boolean isCancelled() {
-        return false;
+        return cancelled;
     }
 
     @Override
     public boolean isDone() {
-        return result != null || error != null;
+        return cancelled || result != null || error != null;
+    }
+
+    /**
+     * 开始执行前调用
+     * @return 已取消时返回 false
+     */
+    synchronized boolean start() {
+        if(cancelled){
+            return false;
+        }
+        runner = Thread.currentThread();
+        return true;
+    }
+
+    /**
+     * 执行结束后调用，清除取消时留下的中断状态
+     */
+    synchronized void finish() {
+        runner = null;
+        Thread.interrupted();
     }
 
-    public void success(Object result) {
+    public synchronized void success(Object result) {
+        if(cancelled){
+            return;
+        }
         this.result = result;
         latch.countDown();
     }
 
-    public void fail(Throwable error) {
+    public synchronized void fail(Throwable error) {
+        if(cancelled){
+            return;
+        }
         this.error = error;
         latch.countDown();
     }
@@ -36,19 +78,23 @@ public class CallableFuture implements Future {
     @Override
     public Object get() throws InterruptedException, ExecutionException {
         latch.await();
-        if (error != null) {
-            throw new ExecutionException(error);
-        }
-        return result;
+        return report();
     }
 
     @Override
     public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
         latch.await(timeout, unit);
+        return report();
+    }
+
+    private Object report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
         if (error != null) {
             throw new ExecutionException(error);
         }
         return result;
     }
 
-}
\ No newline at end of file
+}
@@ -49,12 +49,18 @@ public class CallableQueue {
                             logger.info("event pool [{}] execute [active:{}, queue:{}]...",
                                     name, threadPool.getExecutor().getActiveCount(), threadPool.getExecutor().getQueue().size());
                             threadPool.getExecutor().execute(()->{
+                                if(!future.start()){
+                                    logger.info("event loop [{}] skip cancelled event", name);
+                                    return;
+                                }
                                 try {
                                     Object ret = event.handle();
                                     future.success(ret);
                                 } catch (Exception e) {
                                     logger.error("event loop [{}] execute error", name, e);
                                     future.fail(e);
+                                } finally {
+                                    future.finish();
                                 }
                             });
                         }catch (Exception e){
@@ -0,0 +1,28 @@
+package com.airxiechao.axcboot.communication.rpc.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * RPC 服务方法，须为返回 Response 的静态方法
+ *
+ * 参数可以是 ChannelHandlerContext、RpcStreamEmitter（流式服务）和至多一个负载参数，顺序任意，负载按参数类型反序列化
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RpcService {
+
+    /**
+     * 服务类型
+     */
+    String value();
+
+    /**
+     * 大于 0 时使用独立的线程池
+     */
+    int maxConcurrency() default 0;
+
+    int maxQueueSize() default 0;
+}
@@ -1,24 +1,28 @@
 package com.airxiechao.axcboot.communication.rpc.client;
 
-import com.airxiechao.axcboot.communication.common.RequestId;
 import com.airxiechao.axcboot.communication.common.Response;
 import com.airxiechao.axcboot.communication.rpc.common.*;
-import com.alibaba.fastjson.JSON;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.airxiechao.axcboot.communication.rpc.serializer.BinaryRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializerManager;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.airxiechao.axcboot.communication.rpc.common.RpcContext.HEARTBEAT_PERIOD_SECS;
 
@@ -26,59 +30,152 @@ public class RpcClient {
 
     private static final Logger logger = LoggerFactory.getLogger(RpcClient.class);
 
+    public static final long DEFAULT_STABLE_PERIOD_MILLIS = 30 * 1000;
+    // awaitConnected 每次等待的时长，之间检查是否已 disconnect
+    private static final long CONNECT_WAIT_MILLIS = 1000;
+    // 关闭 group 前的静默期，接收对端关闭连接时提交的最后任务
+    private static final long SHUTDOWN_QUIET_MILLIS = 100;
+
     private String name;
     private String serverIp;
     private int serverPort;
     private int numIoThreads;
+    private int numChannels;
     private int numWorkerThreads;
     private Bootstrap clientBootstrap;
-    private NioEventLoopGroup clientGroup;
+    private Bootstrap localBootstrap;
+    private EventLoopGroup clientGroup;
+    // 只关闭自己创建的 group
+    private boolean ownsGroup;
+    private ScheduledFuture<?> heartbeatFuture;
+    private boolean nativeTransport;
+    private boolean localTransport;
     private Map<String, IRpcMessageHandler> serviceHandlers = new HashMap<>();
+    private Map<String, IRpcStreamHandler> streamHandlers = new HashMap<>();
+    private Map<String, RpcServiceMethod> serviceMethods = new HashMap<>();
+    private Map<String, RpcBulkhead> serviceBulkheads = new ConcurrentHashMap<>();
+    private RpcTypeRegistry typeRegistry = new RpcTypeRegistry();
     private RpcClientMessageRouter router;
-    private boolean connected;
-    private RpcFuture connectedFuture;
-    private boolean stopped;
-
-    private ScheduledExecutorService scheduledExecutorService;
+    private AtomicInteger openChannels = new AtomicInteger();
+    private RpcBackoff reconnectBackoff = new RpcBackoff();
+    private long stablePeriodMillis = DEFAULT_STABLE_PERIOD_MILLIS;
+    private AtomicLong connectAttempts = new AtomicLong();
+    private AtomicLong connectFailures = new AtomicLong();
+    private AtomicLong channelsClosed = new AtomicLong();
+    private volatile boolean disconnected;
+    private volatile long disconnectedNanos;
+    private volatile long lastRecoveryMillis = -1;
+    private volatile RpcFuture connectedFuture = new RpcFuture();
+    private volatile boolean stopped;
+    private long requestTimeoutMillis = TimeUnit.SECONDS.toMillis(RpcContext.DEFAULT_REQUEST_TIMEOUT_SECS);
+    private long drainGraceMillis = TimeUnit.SECONDS.toMillis(RpcContext.DEFAULT_DRAIN_GRACE_SECS);
+    private int writeBatchSize = RpcChannelWriter.DEFAULT_MAX_BATCH_SIZE;
+    private long writeBatchDelayMicros = RpcChannelWriter.DEFAULT_MAX_BATCH_DELAY_MICROS;
+    private int compressThreshold = RpcContext.DEFAULT_COMPRESS_THRESHOLD;
+    private RpcSerializer serializer = RpcSerializerManager.getInstance().getSerializer(BinaryRpcSerializer.ID);
 
     public RpcClient(String name, String ip, int port, int numWorkerThreads){
+        this(name, ip, port, numWorkerThreads, false);
+    }
+
+    /**
+     * @param name
+     * @param ip
+     * @param port
+     * @param numWorkerThreads
+     * @param nativeTransport 使用 native epoll 传输，不可用时自动回退到 NIO
+     */
+    public RpcClient(String name, String ip, int port, int numWorkerThreads, boolean nativeTransport){
+        this(name, ip, port, numWorkerThreads, 1, nativeTransport);
+    }
+
+    /**
+     * @param name
+     * @param ip
+     * @param port
+     * @param numWorkerThreads
+     * @param numChannels 到服务端的连接数，每个连接使用独立的 IO 线程，请求发送到待响应最少的连接
+     * @param nativeTransport 使用 native epoll 传输，不可用时自动回退到 NIO
+     */
+    public RpcClient(String name, String ip, int port, int numWorkerThreads, int numChannels, boolean nativeTransport){
 
         this.name = name;
+        this.nativeTransport = nativeTransport;
         this.serverIp = ip;
         this.serverPort = port;
-        this.numIoThreads = 1;
+        this.numChannels = Math.max(1, numChannels);
+        this.numIoThreads = this.numChannels;
         this.numWorkerThreads = numWorkerThreads;
 
-        this.scheduledExecutorService = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
-                .setNameFormat("rpc-client["+this.name+"]-schedule")
-                .setDaemon(true)
-                .build()
-        );
-
-        init();
+        init(null);
         //connect();
+
+        registerService(RpcMetrics.SERVICE_TYPE, (ctx, payload) -> router.getMetrics().toResponse());
+    }
+
+    /**
+     * 使用外部的 event loop group，多个客户端共享 IO 线程，断开时不关闭该 group
+     * @param name
+     * @param ip
+     * @param port
+     * @param numWorkerThreads
+     * @param numChannels
+     * @param group 传输类型由 group 决定
+     */
+    public RpcClient(String name, String ip, int port, int numWorkerThreads, int numChannels, EventLoopGroup group){
+
+        this.name = name;
+        this.nativeTransport = RpcTransport.isNative(group);
+        this.serverIp = ip;
+        this.serverPort = port;
+        this.numChannels = Math.max(1, numChannels);
+        this.numIoThreads = RpcTransport.countEventLoops(group);
+        this.numWorkerThreads = numWorkerThreads;
+
+        init(group);
+
+        registerService(RpcMetrics.SERVICE_TYPE, (ctx, payload) -> router.getMetrics().toResponse());
     }
 
     public String getName(){
         return this.name;
     }
 
-    public void setConnected(boolean connected){
-        this.connected = connected;
+    /**
+     * 是否至少有一个可用连接
+     * @return
+     */
+    public boolean isConnected(){
+        return router.getChannelPool().isActive();
     }
 
-    private void init(){
+    public int getNumChannels(){
+        return numChannels;
+    }
 
-        initHeartbeat();
+    public int getNumIoThreads(){
+        return numIoThreads;
+    }
+
+    private void init(EventLoopGroup group){
+
+        boolean useNative = RpcTransport.useNative(this.nativeTransport, "rpc-client-[" + this.name + "]");
 
         clientBootstrap = new Bootstrap();
-        clientGroup = new NioEventLoopGroup(this.numIoThreads);
+        if(null != group){
+            clientGroup = group;
+        }else{
+            clientGroup = RpcTransport.newEventLoopGroup(useNative, this.numIoThreads);
+            ownsGroup = true;
+        }
         clientBootstrap.group(clientGroup);
         RpcMessageEncoder encoder = new RpcMessageEncoder();
-        router = new RpcClientMessageRouter(serviceHandlers, this.numWorkerThreads, this);
-        clientBootstrap.channel(NioSocketChannel.class).handler(new ChannelInitializer<SocketChannel>() {
+        router = new RpcClientMessageRouter(serviceHandlers, streamHandlers, serviceMethods, serviceBulkheads, this.numWorkerThreads, this);
+        clientBootstrap.channel(RpcTransport.socketChannelClass(useNative)).handler(new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) throws Exception {
+                RpcChannelWriter.attach(ch, writeBatchSize, writeBatchDelayMicros);
+
                 ChannelPipeline pipe = ch.pipeline();
                 pipe.addLast(new ReadTimeoutHandler(HEARTBEAT_PERIOD_SECS * 2));
                 pipe.addLast(new RpcMessageDecoder());
@@ -87,116 +184,457 @@ public class RpcClient {
             }
 
         });
+
+        localBootstrap = new Bootstrap().group(clientGroup).channel(LocalChannel.class).handler(new ChannelInitializer<LocalChannel>() {
+            @Override
+            protected void initChannel(LocalChannel ch) throws Exception {
+                RpcChannelWriter.attach(ch, writeBatchSize, writeBatchDelayMicros);
+
+                ChannelPipeline pipe = ch.pipeline();
+                pipe.addLast(new ReadTimeoutHandler(HEARTBEAT_PERIOD_SECS * 2));
+                pipe.addLast(router);
+            }
+
+        });
+
+        initHeartbeat();
     }
 
+    /**
+     * 心跳在 IO 线程上发送，首次延迟在一个周期内随机，避免共享 group 的大量客户端同时发送
+     *
+     * 连接激活时立即发送一次心跳，之后间隔不超过一个周期，不会触发两个周期的读超时和心跳过期
+     */
     private void initHeartbeat(){
-        this.scheduledExecutorService.scheduleAtFixedRate(()->{
+        long periodMillis = TimeUnit.SECONDS.toMillis(HEARTBEAT_PERIOD_SECS);
+        long initialDelayMillis = ThreadLocalRandom.current().nextLong(periodMillis);
+        this.heartbeatFuture = clientGroup.scheduleAtFixedRate(()->{
             heartbeat();
-        }, HEARTBEAT_PERIOD_SECS, HEARTBEAT_PERIOD_SECS, TimeUnit.SECONDS);
+        }, initialDelayMillis, periodMillis, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 心跳为独立的帧，由服务端在 IO 线程上直接返回，收到 pong 时更新心跳时间
+     */
     private void heartbeat(){
-        try{
-            Map params = new HashMap();
-            params.put("name", this.name);
-            Response resp = sendToServer("ping", params);
-            if(resp.isSuccess()){
-                router.updateRpcContextLastHeartbeatTime(new Date());
-                logger.info("rpc-client-[{}] heartbeat success", this.name);
-            }else{
-                logger.error("rpc-client-[{}] heartbeat error [{}]", this.name, resp.getMessage());
-            }
-        }catch (Exception e){
-            logger.error("rpc-client-[{}] heartbeat error [{}]", this.name, e.getMessage());
+        if(!router.ping()){
+            logger.error("rpc-client-[{}] heartbeat error [connection not active]", this.name);
         }
     }
 
-    public void heartbeatOnce(){
-        Thread t = new Thread(()-> heartbeat());
-        t.setDaemon(true);
-        t.start();
+    /**
+     * 立即在每个连接上发送一次心跳
+     * @return 没有可用连接时返回 false
+     */
+    public boolean ping(){
+        return router.ping();
+    }
+
+    /**
+     * 各连接中最近一次心跳的最小往返时间
+     * @return 未知时为 -1
+     */
+    public long getRttMicros(){
+        return router.getChannelPool().getRttMicros();
     }
 
+    /**
+     * 补足到配置的连接数，已足够时直接返回
+     * @return
+     */
     public RpcClient connect() {
-        if (stopped) {
-            return this;
-        }
+        while(!stopped){
+            int open = openChannels.get();
+            if(open >= numChannels){
+                break;
+            }
 
-        if(connected){
-            return this;
+            if(openChannels.compareAndSet(open, open + 1)){
+                connectOne();
+            }
         }
 
-        if(null != router.getRpcContext().getContext()){
-            return this;
-        }
+        return this;
+    }
 
-        connectedFuture = new RpcFuture();
-        clientBootstrap.connect(serverIp, serverPort).addListener(future -> {
+    private void connectOne(){
+        connectAttempts.incrementAndGet();
+        ChannelFuture channelFuture = localTransport ?
+                localBootstrap.connect(RpcTransport.localAddress(serverPort)) : clientBootstrap.connect(serverIp, serverPort);
+        channelFuture.addListener(future -> {
             if (future.isSuccess()) {
-                connected = true;
-                connectedFuture.success(new Response());
+                if(disconnected){
+                    disconnected = false;
+                    lastRecoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - disconnectedNanos);
+                }
+                // 连接保持稳定后重置退避
+                Channel channel = channelFuture.channel();
+                channel.eventLoop().schedule(() -> {
+                    if(channel.isActive()){
+                        reconnectBackoff.reset();
+                    }
+                }, stablePeriodMillis, TimeUnit.MILLISECONDS);
 
                 logger.info("rpc-client-[{}] connecting to server {}:{} success", name, serverIp, serverPort);
 
                 return;
-            }else{
-                connectedFuture.fail(future.cause());
             }
 
-            if (!stopped) {
-                clientGroup.schedule(() -> {
-                    connect();
-                }, 1, TimeUnit.SECONDS);
-            }
-            logger.error("rpc-client-[{}] connecting to server {}:{} fails [{}]", name, serverIp, serverPort, future.cause().getMessage());
+            connectFailures.incrementAndGet();
+            openChannels.decrementAndGet();
+            long delay = scheduleConnect();
+            logger.error("rpc-client-[{}] connecting to server {}:{} fails [{}], retry in {} ms",
+                    name, serverIp, serverPort, future.cause().getMessage(), delay);
         });
+    }
 
+    /**
+     * 收到心跳应答后由路由调用，有可选的连接时唤醒等待连接的线程
+     */
+    void onHeartbeat(){
+        if(router.getChannelPool().isActive()){
+            connectedFuture.success(new Response());
+        }
+    }
+
+    /**
+     * 连接关闭后由路由调用，退避后补足连接
+     */
+    void onChannelClosed(){
+        channelsClosed.incrementAndGet();
+        openChannels.decrementAndGet();
+        if(!router.getChannelPool().isActive()){
+            if(!disconnected){
+                disconnectedNanos = System.nanoTime();
+                disconnected = true;
+            }
+            if(connectedFuture.isDone()){
+                connectedFuture = new RpcFuture();
+            }
+        }
+
+        scheduleConnect();
+    }
+
+    private long scheduleConnect(){
+        if (stopped || clientGroup.isShuttingDown()) {
+            return -1;
+        }
+
+        long delay = reconnectBackoff.nextDelayMillis();
+        clientGroup.schedule(() -> {
+            connect();
+        }, delay, TimeUnit.MILLISECONDS);
+        return delay;
+    }
+
+    /**
+     * 通过进程内本地传输连接同一进程内的服务端，服务端需开启本地传输，消息不经过编解码，负载按引用传递，需在 connect 前设置
+     * @param localTransport
+     * @return
+     */
+    public RpcClient setLocalTransport(boolean localTransport){
+        this.localTransport = localTransport;
         return this;
     }
 
-    public RpcClient awaitConnected(){
+    /**
+     * 重连的指数退避，延迟在 [0, min(maxDelay, initialDelay * 2^n)] 内随机，连接保持 stablePeriod 后重置
+     * @param initialDelay
+     * @param maxDelay
+     * @param stablePeriod
+     * @param unit
+     * @return
+     */
+    public RpcClient setReconnectBackoff(long initialDelay, long maxDelay, long stablePeriod, TimeUnit unit){
+        this.reconnectBackoff = new RpcBackoff(initialDelay, maxDelay, unit);
+        this.stablePeriodMillis = unit.toMillis(stablePeriod);
+        return this;
+    }
 
-        while(!stopped){
+    /**
+     * 按服务类型的请求数、错误数、繁忙数、处理中数、字节数、排队和处理耗时分布（微秒）
+     * @return served 为本端处理的请求，called 为本端发出的请求
+     */
+    public Map<String, Object> getMetrics(){
+        return router.getMetrics().snapshot();
+    }
 
-            try {
-                Response resp = connectedFuture.get();
-                if(resp.isSuccess()){
-                    return this;
-                }
-            } catch (Exception e) {
+    /**
+     * 连接计数：发起连接数、连接失败数、连接关闭数、当前退避次数，以及最近一次从全部断开到恢复的毫秒数（未知时为 -1）
+     * @return
+     */
+    public Map<String, Long> getConnectionCounts(){
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("attempts", connectAttempts.get());
+        counts.put("failures", connectFailures.get());
+        counts.put("closed", channelsClosed.get());
+        counts.put("backoff", (long) reconnectBackoff.getAttempts());
+        counts.put("lastRecoveryMillis", lastRecoveryMillis);
+        return counts;
+    }
 
+    /**
+     * 等待至少一个连接可选（连接后收到首次心跳应答），disconnect 或等待线程被中断时返回
+     * @return
+     */
+    public RpcClient awaitConnected(){
+        while(!stopped && !Thread.currentThread().isInterrupted()){
+            if(awaitConnected(CONNECT_WAIT_MILLIS, TimeUnit.MILLISECONDS)){
+                break;
             }
         }
 
         return this;
     }
 
+    /**
+     * 最多等待指定时间直到至少一个连接可选
+     * @param timeout
+     * @param unit
+     * @return 超时、被中断或已 disconnect 时返回 false
+     */
+    public boolean awaitConnected(long timeout, TimeUnit unit){
+        try {
+            return connectedFuture.get(timeout, unit).isSuccess();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
 
+    /**
+     * 设置优先使用的序列化，握手时由服务端确认，服务端不支持时回退到 JSON
+     * @param serializer
+     * @return
+     */
+    public RpcClient setSerializer(RpcSerializer serializer){
+        RpcSerializerManager.getInstance().register(serializer);
+        this.serializer = serializer;
+        return this;
+    }
+
+    public List<Byte> getSerializerIds(){
+        List<Byte> ids = new ArrayList<>();
+        ids.add(serializer.getId());
+        if(JsonRpcSerializer.ID != serializer.getId()){
+            ids.add(JsonRpcSerializer.ID);
+        }
+        return ids;
+    }
 
     public RpcClient registerService(String type, IRpcMessageHandler handler){
+        typeRegistry.intern(type);
         serviceHandlers.put(type, handler);
         return this;
     }
 
+    /**
+     * 注册流式服务，只能由 sendStreamToClient 调用
+     * @param type
+     * @param handler
+     * @return
+     */
+    public RpcClient registerStreamService(String type, IRpcStreamHandler handler){
+        typeRegistry.intern(type);
+        streamHandlers.put(type, handler);
+        return this;
+    }
+
+    /**
+     * 注册服务，使用独立的线程池，与其它服务隔离
+     * @param type
+     * @param handler
+     * @param maxConcurrency 最大并发数
+     * @param maxQueueSize 最大排队数，超出时返回繁忙响应
+     * @return
+     */
+    public RpcClient registerService(String type, IRpcMessageHandler handler, int maxConcurrency, int maxQueueSize){
+        serviceBulkheads.put(type, new RpcBulkhead("rpc-client["+this.name+"]-"+type, maxConcurrency, maxQueueSize));
+        return registerService(type, handler);
+    }
+
+    public RpcClient registerStreamService(String type, IRpcStreamHandler handler, int maxConcurrency, int maxQueueSize){
+        serviceBulkheads.put(type, new RpcBulkhead("rpc-client["+this.name+"]-"+type, maxConcurrency, maxQueueSize));
+        return registerStreamService(type, handler);
+    }
+
+    /**
+     * 注册类中 @RpcService 注解的静态方法，负载按参数类型反序列化，带 RpcStreamEmitter 参数的为流式服务
+     * @param cls
+     * @return
+     */
+    public RpcClient registerHandler(Class<?> cls){
+        for(RpcServiceMethod method : RpcServiceMethod.resolve(cls)){
+            typeRegistry.intern(method.getType());
+            serviceMethods.put(method.getType(), method);
+            if(method.getMaxConcurrency() > 0){
+                serviceBulkheads.put(method.getType(), new RpcBulkhead("rpc-client["+this.name+"]-"+method.getType(),
+                        method.getMaxConcurrency(), method.getMaxQueueSize()));
+            }
+        }
+        return this;
+    }
+
+    public RpcTypeRegistry getTypeRegistry(){
+        return typeRegistry;
+    }
+
+    /**
+     * 合并写的最大批量和最大延迟，延迟为 0 时在当前 event loop 周期结束前 flush
+     * @param maxBatchSize
+     * @param maxDelay
+     * @param unit
+     * @return
+     */
+    public RpcClient setWriteBatch(int maxBatchSize, long maxDelay, TimeUnit unit){
+        this.writeBatchSize = maxBatchSize;
+        this.writeBatchDelayMicros = unit.toMicros(maxDelay);
+        return this;
+    }
+
+    /**
+     * 协商压缩后，序列化后达到该字节数的负载压缩发送，小于等于 0 不压缩
+     * @param threshold
+     * @return
+     */
+    public RpcClient setCompressThreshold(int threshold){
+        this.compressThreshold = threshold;
+        return this;
+    }
+
+    public int getCompressThreshold(){
+        return compressThreshold;
+    }
+
+    /**
+     * 未指定超时的请求使用的默认超时，默认 RpcContext.DEFAULT_REQUEST_TIMEOUT_SECS，小于等于 0 不超时
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public RpcClient setRequestTimeout(long timeout, TimeUnit unit){
+        this.requestTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * 请求超时后是否通知被调用方取消，默认只在本端放弃等待，流式请求超时总是通知
+     * @param cancelOnTimeout
+     * @return
+     */
+    public RpcClient setCancelOnTimeout(boolean cancelOnTimeout){
+        this.router.setCancelOnTimeout(cancelOnTimeout);
+        return this;
+    }
+
+    /**
+     * disconnect 时等待处理中的请求结束的宽限期
+     * @param gracePeriod
+     * @param unit
+     * @return
+     */
+    public RpcClient setDrainGracePeriod(long gracePeriod, TimeUnit unit){
+        this.drainGraceMillis = unit.toMillis(gracePeriod);
+        return this;
+    }
+
+    /**
+     * 各服务类型的请求超时次数
+     * @return
+     */
+    public Map<String, Long> getTimeoutCounts(){
+        return router.getTimeoutCounts();
+    }
+
     public Response sendToServer(String type, Map payload){
-        return sendToServer(type, JSON.toJSONString(payload));
+        return RpcUtil.await(sendToServerAsync(type, payload));
     }
 
     public Response sendToServer(String type, String payload){
-        try{
-            String requestId = RequestId.next();
-            RpcMessage message = new RpcMessage(requestId, type, payload);
-            RpcFuture future = this.router.sendToServer(message);
-            return future.get();
-        }catch (Exception e) {
-            throw new RpcException(e);
-        }
+        return RpcUtil.await(sendToServerAsync(type, payload));
+    }
+
+    public Response sendToServer(String type, Map payload, long timeout, TimeUnit unit){
+        return RpcUtil.await(sendToServerAsync(type, payload, timeout, unit));
+    }
+
+    public Response sendToServer(String type, String payload, long timeout, TimeUnit unit){
+        return RpcUtil.await(sendToServerAsync(type, payload, timeout, unit));
+    }
+
+    public CompletableFuture<Response> sendToServerAsync(String type, Map payload){
+        return doSendToServerAsync(type, payload, 0);
     }
 
+    public CompletableFuture<Response> sendToServerAsync(String type, String payload){
+        return doSendToServerAsync(type, payload, 0);
+    }
+
+    public CompletableFuture<Response> sendToServerAsync(String type, Map payload, long timeout, TimeUnit unit){
+        return doSendToServerAsync(type, payload, unit.toMillis(timeout));
+    }
+
+    public CompletableFuture<Response> sendToServerAsync(String type, String payload, long timeout, TimeUnit unit){
+        return doSendToServerAsync(type, payload, unit.toMillis(timeout));
+    }
+
+    /**
+     * 在一个帧中发送批量请求，服务端全部处理后以一个帧返回
+     * @param batch
+     * @return 与批量中各项顺序一致，每项独立完成
+     */
+    public List<CompletableFuture<Response>> sendBatchToServer(RpcBatch batch){
+        return new ArrayList<>(this.router.sendBatchToServer(batch, requestTimeoutMillis));
+    }
+
+    public List<CompletableFuture<Response>> sendBatchToServer(RpcBatch batch, long timeout, TimeUnit unit){
+        return new ArrayList<>(this.router.sendBatchToServer(batch, unit.toMillis(timeout)));
+    }
+
+    /**
+     * 异步发送，回调在 IO 线程上执行，耗时回调应使用 *Async 方法切换线程
+     * @param type
+     * @param payload
+     * @param timeoutMillis
+     * @return
+     */
+    private CompletableFuture<Response> doSendToServerAsync(String type, Object payload, long timeoutMillis){
+        return this.router.sendToServer(type, payload, timeoutMillis > 0 ? timeoutMillis : requestTimeoutMillis);
+    }
+
+    /**
+     * 排空后断开，最多等待 setDrainGracePeriod 设置的宽限期
+     */
     public void disconnect() {
+        disconnect(drainGraceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 排空后断开：不再重连，拒绝服务端的新请求并通知服务端不再发送，
+     * 等待处理中的请求和发给服务端的请求结束，到期后关闭连接
+     * @param gracePeriod 为 0 时立即关闭
+     * @param unit
+     */
+    public void disconnect(long gracePeriod, TimeUnit unit) {
         stopped = true;
-        router.close();
-        clientGroup.shutdownGracefully(0, 5000, TimeUnit.SECONDS);
+        // 唤醒等待连接的线程
+        connectedFuture.fail(new RpcException("rpc-client-[" + this.name + "] disconnected"));
+        heartbeatFuture.cancel(false);
+
+        RpcDrain drain = router.getDrain();
+        drain.drain();
+        if(!drain.awaitDrained(gracePeriod, unit)){
+            logger.warn("rpc-client-[{}] drain timeout, close with {} requests in flight", this.name, drain.getInFlight());
+        }
+        // 连接关闭后再关闭 group，避免对端向已终止的 event loop 提交任务
+        drain.close();
+        router.closeGracefully();
+        if(ownsGroup){
+            clientGroup.shutdownGracefully(SHUTDOWN_QUIET_MILLIS, 5000, TimeUnit.MILLISECONDS);
+        }
     }
 
 }
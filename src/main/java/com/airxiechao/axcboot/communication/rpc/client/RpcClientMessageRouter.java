@@ -2,76 +2,110 @@ package com.airxiechao.axcboot.communication.rpc.client;
 
 import com.airxiechao.axcboot.communication.common.Response;
 import com.airxiechao.axcboot.communication.rpc.common.IRpcMessageHandler;
+import com.airxiechao.axcboot.communication.rpc.common.IRpcStreamHandler;
+import com.airxiechao.axcboot.communication.rpc.common.RpcBatch;
+import com.airxiechao.axcboot.communication.rpc.common.RpcBulkhead;
+import com.airxiechao.axcboot.communication.rpc.common.RpcChannelPool;
+import com.airxiechao.axcboot.communication.rpc.common.RpcChannelWriter;
+import com.airxiechao.axcboot.communication.rpc.common.RpcCompression;
+import com.airxiechao.axcboot.communication.rpc.common.RpcFrame;
 import com.airxiechao.axcboot.communication.rpc.common.RpcFuture;
+import com.airxiechao.axcboot.communication.rpc.common.RpcPendingRequests;
 import com.airxiechao.axcboot.communication.rpc.common.RpcMessage;
 import com.airxiechao.axcboot.communication.rpc.common.RpcContext;
-import com.alibaba.fastjson.JSON;
+import com.airxiechao.axcboot.communication.rpc.common.RpcDrain;
+import com.airxiechao.axcboot.communication.rpc.common.RpcException;
+import com.airxiechao.axcboot.communication.rpc.common.RpcRequestExpiry;
+import com.airxiechao.axcboot.communication.rpc.common.RpcRequestSender;
+import com.airxiechao.axcboot.communication.rpc.common.RpcRunningRequest;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMetrics;
+import com.airxiechao.axcboot.communication.rpc.common.RpcServiceDispatcher;
+import com.airxiechao.axcboot.communication.rpc.common.RpcServiceMethod;
+import com.airxiechao.axcboot.communication.rpc.common.RpcStreamEmitter;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializerManager;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static com.airxiechao.axcboot.communication.rpc.util.RpcUtil.buildResponseType;
 
 @Sharable
 public class RpcClientMessageRouter extends ChannelInboundHandlerAdapter {
 
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
     private final static Logger logger = LoggerFactory.getLogger(RpcClientMessageRouter.class);
 
     private Map<String, IRpcMessageHandler> serviceHandlers;
-    private ThreadPoolExecutor executor;
-    private RpcContext rpcContext = new RpcContext();
-    private Map<String, RpcFuture> pendingRequests = new ConcurrentHashMap<>();
+    private Map<String, IRpcStreamHandler> streamHandlers;
+    private Map<String, RpcServiceMethod> serviceMethods;
+    private RpcBulkhead executor;
+    private Map<String, RpcBulkhead> serviceBulkheads;
+    private RpcChannelPool pool = new RpcChannelPool();
+    private RpcDrain drain = new RpcDrain();
+    private RpcServiceDispatcher dispatcher;
+    private RpcRequestExpiry expiry;
+    private RpcRequestSender sender;
+    private RpcMetrics metrics = new RpcMetrics();
     private RpcClient client;
 
-    public RpcClientMessageRouter(Map<String, IRpcMessageHandler> serviceHandlers, int numWorkerThreads, RpcClient client){
+    public RpcClientMessageRouter(Map<String, IRpcMessageHandler> serviceHandlers, Map<String, IRpcStreamHandler> streamHandlers,
+                                  Map<String, RpcServiceMethod> serviceMethods, Map<String, RpcBulkhead> serviceBulkheads,
+                                  int numWorkerThreads, RpcClient client){
         this.client = client;
         this.serviceHandlers = serviceHandlers;
+        this.streamHandlers = streamHandlers;
+        this.serviceMethods = serviceMethods;
+        this.serviceBulkheads = serviceBulkheads;
 
-        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(1000);
-        ThreadFactory factory = new ThreadFactory() {
-
-            AtomicInteger seq = new AtomicInteger();
+        this.executor = new RpcBulkhead("rpc-client["+client.getName()+"]", numWorkerThreads, DEFAULT_QUEUE_SIZE);
+        this.dispatcher = new RpcServiceDispatcher("rpc-client-["+client.getName()+"]", executor, serviceBulkheads, metrics,
+                client.getTypeRegistry(), this::isRegistered, this::invokeService, drain);
 
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r);
-                t.setName("rpc-client["+client.getName()+"]-" + seq.getAndIncrement());
-                t.setDaemon(true);
-                return t;
-            }
-
-        };
-        this.executor = new ThreadPoolExecutor(numWorkerThreads, numWorkerThreads * 100, 30, TimeUnit.SECONDS,
-                queue, factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.expiry = new RpcRequestExpiry();
+        this.sender = new RpcRequestSender(metrics, expiry);
+    }
 
+    public RpcChannelPool getChannelPool(){
+        return pool;
     }
 
-    public RpcContext getRpcContext(){
-        return rpcContext;
+    public RpcDrain getDrain(){
+        return drain;
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-        updateRpcContext(ctx, new Date());
+        pool.getOrAdd(ctx);
+        drain.bind(ctx.channel());
 
-        client.heartbeatOnce();
+        Map<String, Object> handshake = new HashMap<>();
+        handshake.put("serializers", client.getSerializerIds());
+        handshake.put("types", client.getTypeRegistry().getIds());
+        handshake.put("compressions", Collections.singletonList(RpcCompression.DEFLATE));
+        ctx.writeAndFlush(RpcUtil.buildHandshakeMessage(RpcPendingRequests.of(ctx.channel()).nextRequestId(), handshake));
+
+        ping(ctx);
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        close();
+        pool.remove(ctx);
+        RpcRunningRequest.cancelAll(ctx.channel());
+        RpcPendingRequests.of(ctx.channel()).failAll(new Exception("rpc-client-["+client.getName()+"] connection not active error"));
 
-        // 尝试重连
-        ctx.channel().eventLoop().schedule(() -> {
-            client.connect();
-        }, 1, TimeUnit.SECONDS);
+        // 补充连接
+        client.onChannelClosed();
     }
 
     @Override
@@ -82,13 +116,117 @@ public class RpcClientMessageRouter extends ChannelInboundHandlerAdapter {
 
         RpcMessage message = (RpcMessage) msg;
 
-        if(message.isResponse()){
-            this.handleResponseMessage(ctx, message);
-        }else{
-            this.executor.execute(() -> {
-                this.handleServiceMessage(ctx, message);
-            });
+        switch (message.getKind()){
+            case RpcFrame.KIND_HANDSHAKE:
+                this.handleHandshakeMessage(ctx, message);
+                break;
+            case RpcFrame.KIND_RESPONSE:
+            case RpcFrame.KIND_ERROR:
+                this.handleResponseMessage(ctx, message);
+                break;
+            case RpcFrame.KIND_REQUEST:
+                RpcUtil.resolveType(message, client.getTypeRegistry());
+                message.startDeadline(System.nanoTime());
+                dispatcher.dispatch(ctx, message);
+                break;
+            case RpcFrame.KIND_HEARTBEAT:
+                this.handleHeartbeatMessage(ctx, message);
+                break;
+            case RpcFrame.KIND_BATCH:
+                dispatcher.dispatchBatch(ctx, message);
+                break;
+            case RpcFrame.KIND_CANCEL:
+                RpcRunningRequest.cancel(ctx.channel(), message.getRequestId());
+                break;
+            case RpcFrame.KIND_DRAIN:
+                logger.info("rpc-client-[{}] peer draining, stop sending new requests on [{}]", client.getName(), ctx.channel().remoteAddress());
+                RpcContext.setDraining(ctx);
+                break;
+            case RpcFrame.KIND_BATCH_RESPONSE:
+                for(RpcMessage item : RpcUtil.getBatchItems(message)){
+                    this.handleResponseMessage(ctx, item);
+                }
+                break;
+            case RpcFrame.KIND_STREAM_CREDIT:
+                RpcStreamEmitter.grant(ctx.channel(), message.getRequestId(), RpcUtil.getStreamCredits(message));
+                break;
+            default:
+                logger.warn("unsupported rpc message kind [{}]", message.getKind());
+                break;
+        }
+    }
+
+    /**
+     * 处理握手响应，记录服务端选择的序列化、压缩和服务类型编号
+     * @param ctx
+     * @param message
+     * @throws Exception
+     */
+    private void handleHandshakeMessage(ChannelHandlerContext ctx, RpcMessage message) throws Exception {
+        Map payload = RpcUtil.deserializePayload(message, Map.class);
+        RpcContext.setPeerTypeIds(ctx, RpcUtil.parseTypeIds(payload.get("types")));
+        if(RpcCompression.DEFLATE.equals(payload.get("compression"))){
+            RpcContext.setCompressThreshold(ctx, client.getCompressThreshold());
+        }
+
+        Object id = payload.get("serializer");
+        if(!(id instanceof Number)){
+            return;
+        }
+
+        RpcSerializer serializer = RpcSerializerManager.getInstance().getSerializer(((Number) id).byteValue());
+        if(null == serializer){
+            logger.error("rpc-client-[{}] unknown serializer [{}] chosen by server", client.getName(), id);
+            return;
+        }
+
+        RpcContext.setSerializer(ctx, serializer);
+        logger.info("rpc-client-[{}] uses serializer [{}]", client.getName(), serializer.getName());
+    }
+
+    /**
+     * 在 IO 线程上处理心跳，收到 pong 时更新心跳时间和往返时间，收到 ping 时立即返回 pong
+     * @param ctx
+     * @param message
+     */
+    private void handleHeartbeatMessage(ChannelHandlerContext ctx, RpcMessage message){
+        if(!message.isPong()){
+            RpcChannelWriter.of(ctx.channel()).write(RpcUtil.buildPongMessage(message));
+            return;
+        }
+
+        RpcContext rpcContext = pool.get(ctx);
+        if(null == rpcContext){
+            return;
+        }
+
+        long rttMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - RpcUtil.getHeartbeatTimestamp(message));
+        rpcContext.setRttMicros(rttMicros);
+        rpcContext.setLastHeartbeatTime(new Date());
+        client.onHeartbeat();
+        logger.debug("rpc-client-[{}] heartbeat success, rtt [{}us]", client.getName(), rttMicros);
+    }
+
+    /**
+     * 在每个连接上发送心跳 ping
+     * @return 没有可用连接时返回 false
+     */
+    public boolean ping(){
+        boolean sent = false;
+        for(ChannelHandlerContext ctx : pool.getChannels()){
+            sent |= ping(ctx);
+        }
+        return sent;
+    }
+
+    private boolean ping(ChannelHandlerContext ctx){
+        if(!ctx.channel().isActive()){
+            return false;
         }
+
+        RpcChannelWriter.of(ctx.channel()).write(
+                RpcUtil.buildPingMessage(System.nanoTime(), client.getName()));
+        return true;
     }
 
     /**
@@ -98,14 +236,28 @@ public class RpcClientMessageRouter extends ChannelInboundHandlerAdapter {
      * @throws Exception
      */
     private void handleResponseMessage(ChannelHandlerContext ctx, RpcMessage message) throws Exception {
-        RpcFuture future = pendingRequests.remove(message.getRequestId());
+        if(message.isDeadlineExceeded()){
+            metrics.called(null == message.getType() ? RpcMetrics.UNKNOWN_TYPE : message.getType()).onExpired();
+        }
+
+        RpcFuture future = RpcPendingRequests.of(ctx.channel()).remove(message.getRequestId());
         if (future == null) {
-            logger.error("future not found with type {}", message.getType());
+            if(message.isDeadlineExceeded() || message.isCancelled()){
+                // 调用方已超时或取消，被调用方随后丢弃或中断了该请求
+                return;
+            }
+            logger.error("future not found with request id {}", message.getRequestId());
+            return;
+        }
+
+        future.recordBytesIn(message.getPayload().length);
+        if(RpcFrame.KIND_ERROR == message.getKind()){
+            future.fail(new RpcException(RpcUtil.getErrorMessage(message)));
             return;
         }
 
         try{
-            Response response = JSON.parseObject(message.getPayload(), Response.class);
+            Response response = RpcUtil.deserializePayload(message, Response.class);
             future.success(response);
         }catch (Exception e){
             logger.error("parse response message error", e);
@@ -115,60 +267,100 @@ public class RpcClientMessageRouter extends ChannelInboundHandlerAdapter {
         }
     }
 
+    private boolean isRegistered(String type){
+        return serviceHandlers.containsKey(type) || streamHandlers.containsKey(type) || serviceMethods.containsKey(type);
+    }
+
+    private Response invokeService(ChannelHandlerContext ctx, RpcMessage message){
+        RpcServiceMethod method = serviceMethods.get(message.getType());
+        if(null != method && method.isStream()){
+            return handleStreamServiceMessage(ctx, message, emitter -> method.invoke(ctx, message, emitter));
+        }
+
+        IRpcStreamHandler streamHandler = streamHandlers.get(message.getType());
+        if(null != streamHandler){
+            return handleStreamServiceMessage(ctx, message, emitter -> {
+                Map payloadMap = RpcUtil.deserializePayload(message, Map.class);
+                return streamHandler.handle(ctx, payloadMap, emitter);
+            });
+        }
+
+        return RpcServiceDispatcher.invokeHandler(ctx, message, method, serviceHandlers.get(message.getType()));
+    }
+
     /**
-     * 处理请求消息
+     * 处理流式请求，分片由 handler 通过 emitter 发送，返回结束响应
      * @param ctx
      * @param message
+     * @param invoker
+     * @return
      */
-    private void handleServiceMessage(ChannelHandlerContext ctx, RpcMessage message){
-        IRpcMessageHandler handler = serviceHandlers.get(message.getType());
+    private Response handleStreamServiceMessage(ChannelHandlerContext ctx, RpcMessage message, StreamInvoker invoker){
         Response response;
-        if(null != handler){
+        if(message.isStream()){
+            RpcStreamEmitter emitter = RpcStreamEmitter.open(ctx, message.getRequestId());
             try {
-                String payload = message.getPayload();
-                Map payloadMap = JSON.parseObject(payload, Map.class);
-                response = handler.handle(ctx, payloadMap);
-            }catch (Exception e){
-                logger.error("handle service [{}] error", message.getType(), e);
+                response = invoker.invoke(emitter);
+            }catch (Throwable e){
+                if(!RpcRunningRequest.isCurrentCancelled()){
+                    logger.error("handle stream service [{}] error", message.getType(), e);
+                }
 
                 response = new Response();
                 response.error(e.getMessage());
+            }finally {
+                emitter.close();
             }
         }else{
             response = new Response();
-            response.error("no service [" + message.getType() + "]");
+            response.error("service [" + message.getType() + "] must be called as stream");
         }
 
-        ctx.writeAndFlush(new RpcMessage(message.getRequestId(), buildResponseType(message.getType()), JSON.toJSONString(response)));
+        return response;
     }
 
-    public RpcFuture sendToServer(RpcMessage message) {
-        ChannelHandlerContext ctx = null;
-        if(!rpcContext.isHeartbeatExpired()){
-            ctx = rpcContext.getContext();
-        }
+    private interface StreamInvoker {
+        Response invoke(RpcStreamEmitter emitter) throws Throwable;
+    }
+
+    /**
+     * 发送请求，超时或完成后从等待列表移除
+     * @param type
+     * @param payload
+     * @param timeoutMillis 小于等于 0 不超时，到期以 RpcTimeoutException 失败
+     * @return
+     */
+    public RpcFuture sendToServer(String type, Object payload, long timeoutMillis) {
+        ChannelHandlerContext ctx = pool.select();
         RpcFuture future = new RpcFuture();
-        ChannelHandlerContext ctx1 = ctx;
         if (ctx != null) {
-            ctx.channel().eventLoop().execute(() -> {
-                pendingRequests.put(message.getRequestId(), future);
-                ctx1.writeAndFlush(message);
-            });
+            sender.send(ctx, future, type, requestId -> RpcUtil.buildMessage(ctx, requestId, type, payload), timeoutMillis);
         } else {
             future.fail(new Exception("rpc-client-["+client.getName()+"] connection not active error"));
         }
         return future;
     }
 
-    public void updateRpcContext(ChannelHandlerContext ctx, Date lastHeartbeatTime){
-        rpcContext.setContext(ctx);
-        updateRpcContextLastHeartbeatTime(lastHeartbeatTime);
-    }
+    /**
+     * 在一个帧中发送批量请求，每项有独立的请求号、超时和结果
+     * @param batch
+     * @param timeoutMillis 小于等于 0 不超时
+     * @return 与批量中各项顺序一致
+     */
+    public List<RpcFuture> sendBatchToServer(RpcBatch batch, long timeoutMillis) {
+        List<RpcFuture> futures = new ArrayList<>();
+        for(int i = 0; i < batch.size(); ++i){
+            futures.add(new RpcFuture());
+        }
 
-    public void updateRpcContextLastHeartbeatTime(Date lastHeartbeatTime){
-        if(null != lastHeartbeatTime){
-            rpcContext.setLastHeartbeatTime(lastHeartbeatTime);
+        ChannelHandlerContext ctx = pool.select();
+        if(null == ctx){
+            Exception error = new Exception("rpc-client-["+client.getName()+"] connection not active error");
+            futures.forEach(future -> future.fail(error));
+            return futures;
         }
+
+        return sender.sendBatch(ctx, batch, futures, timeoutMillis);
     }
 
     @Override
@@ -178,21 +370,35 @@ public class RpcClientMessageRouter extends ChannelInboundHandlerAdapter {
         logger.error("close [{}] connection by uncaught error", client.getName(), cause);
     }
 
+    public Map<String, Long> getTimeoutCounts(){
+        return expiry.getTimeoutCounts();
+    }
+
+    public void setCancelOnTimeout(boolean cancelOnTimeout){
+        expiry.setCancelOnTimeout(cancelOnTimeout);
+    }
+
+    public RpcMetrics getMetrics(){
+        return metrics;
+    }
+
+    public void closeGracefully() {
+        close();
+
+        this.executor.shutdown(10, TimeUnit.SECONDS);
+        for(RpcBulkhead bulkhead : serviceBulkheads.values()){
+            bulkhead.shutdown(10, TimeUnit.SECONDS);
+        }
+    }
+
     /**
-     * 关闭连接
+     * 关闭所有连接
      */
     public void close() {
-        ChannelHandlerContext ctx = rpcContext.getContext();
-        if (ctx != null) {
-            ctx.close();
-        }
+        for(ChannelHandlerContext ctx : pool.getChannels()){
+            RpcChannelWriter.of(ctx.channel()).close();
 
-        pendingRequests.forEach((__, future) -> {
-            future.fail(new Exception("rpc-client-["+client.getName()+"] connection not active error"));
-        });
-        pendingRequests.clear();
-
-        updateRpcContext(null, null);
-        client.setConnected(false);
+            RpcPendingRequests.of(ctx.channel()).failAll(new Exception("rpc-client-["+client.getName()+"] connection not active error"));
+        }
     }
 }
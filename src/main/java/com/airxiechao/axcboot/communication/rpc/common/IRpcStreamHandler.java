@@ -0,0 +1,14 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.Map;
+
+/**
+ * 流式服务，处理过程中通过 emitter 按顺序发送分片，返回值为结束响应
+ */
+public interface IRpcStreamHandler {
+
+    Response handle(ChannelHandlerContext ctx, Map payload, RpcStreamEmitter emitter) throws Exception;
+}
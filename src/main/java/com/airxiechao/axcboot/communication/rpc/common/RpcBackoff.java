@@ -0,0 +1,54 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 指数退避，第 n 次重试的延迟在 [0, min(max, initial * 2^n)] 内均匀随机（full jitter），
+ * 避免大量客户端在服务端重启后同时重连
+ */
+public class RpcBackoff {
+
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 60 * 1000;
+
+    private long initialDelayMillis;
+    private long maxDelayMillis;
+    private AtomicInteger attempts = new AtomicInteger();
+
+    public RpcBackoff(){
+        this(DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param initialDelay 首次重试的延迟上限
+     * @param maxDelay 延迟上限的最大值
+     * @param unit
+     */
+    public RpcBackoff(long initialDelay, long maxDelay, TimeUnit unit){
+        this.initialDelayMillis = Math.max(1, unit.toMillis(initialDelay));
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, unit.toMillis(maxDelay));
+    }
+
+    /**
+     * 计算下一次重试的延迟，并增加重试次数
+     * @return 毫秒
+     */
+    public long nextDelayMillis(){
+        int n = attempts.getAndIncrement();
+        long ceiling = n >= 30 ? maxDelayMillis : Math.min(maxDelayMillis, initialDelayMillis << n);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 连接稳定后重置重试次数
+     */
+    public void reset(){
+        attempts.set(0);
+    }
+
+    public int getAttempts(){
+        return attempts.get();
+    }
+}
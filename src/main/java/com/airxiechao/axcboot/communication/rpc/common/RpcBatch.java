@@ -0,0 +1,80 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量请求，多个请求在一个帧中发送，被调用方全部处理后以一个帧返回，每项有独立的结果
+ *
+ * 默认并行处理，设置 ordered 后被调用方按加入顺序逐项处理，批量中不能调用流式服务
+ */
+public class RpcBatch {
+
+    public static final int MAX_SIZE = 1024;
+
+    private List<Item> items = new ArrayList<>();
+    private boolean ordered;
+
+    public RpcBatch add(String type, Map payload){
+        return addItem(type, payload);
+    }
+
+    /**
+     * @param type
+     * @param payload 已序列化的 JSON 文本
+     * @return
+     */
+    public RpcBatch add(String type, String payload){
+        return addItem(type, payload);
+    }
+
+    private RpcBatch addItem(String type, Object payload){
+        if(items.size() >= MAX_SIZE){
+            throw new IllegalArgumentException("rpc batch exceeds max size " + MAX_SIZE);
+        }
+        items.add(new Item(type, payload));
+        return this;
+    }
+
+    /**
+     * 按加入顺序逐项处理，前一项完成后再处理下一项
+     * @param ordered
+     * @return
+     */
+    public RpcBatch setOrdered(boolean ordered){
+        this.ordered = ordered;
+        return this;
+    }
+
+    public boolean isOrdered(){
+        return ordered;
+    }
+
+    public List<Item> getItems(){
+        return Collections.unmodifiableList(items);
+    }
+
+    public int size(){
+        return items.size();
+    }
+
+    public static class Item {
+        private String type;
+        private Object payload;
+
+        private Item(String type, Object payload){
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public Object getPayload() {
+            return payload;
+        }
+    }
+}
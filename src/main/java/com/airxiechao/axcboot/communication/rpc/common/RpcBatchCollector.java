@@ -0,0 +1,40 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 被调用方收集批量请求中各项的响应消息，全部完成后按请求顺序交给 onComplete
+ */
+public class RpcBatchCollector {
+
+    private RpcMessage[] responses;
+    private AtomicInteger remaining;
+    private Consumer<List<RpcMessage>> onComplete;
+
+    public RpcBatchCollector(int size, Consumer<List<RpcMessage>> onComplete){
+        this.responses = new RpcMessage[size];
+        this.remaining = new AtomicInteger(size);
+        this.onComplete = onComplete;
+
+        if(0 == size){
+            onComplete.accept(Arrays.asList(responses));
+        }
+    }
+
+    /**
+     * 第 index 项的响应，可在任意线程调用
+     * @param index
+     * @return
+     */
+    public Consumer<RpcMessage> slot(int index){
+        return response -> {
+            responses[index] = response;
+            if(0 == remaining.decrementAndGet()){
+                onComplete.accept(Arrays.asList(responses));
+            }
+        };
+    }
+}
@@ -0,0 +1,82 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务隔离的线程池，并发数和排队数都有上限，满时拒绝任务而不是在调用线程（IO 线程）上执行
+ */
+public class RpcBulkhead implements Executor {
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * @param name 线程名前缀
+     * @param maxConcurrency 最大并发数
+     * @param maxQueueSize 最大排队数
+     */
+    public RpcBulkhead(String name, int maxConcurrency, int maxQueueSize){
+        this(name, maxConcurrency, new ArrayBlockingQueue<>(Math.max(1, maxQueueSize)));
+    }
+
+    /**
+     * 排队数不设上限，用于任务数已由调用方限制的场景，例如每个流最多只排队一个分发任务
+     * @param name 线程名前缀
+     * @param maxConcurrency 最大并发数
+     */
+    public RpcBulkhead(String name, int maxConcurrency){
+        this(name, maxConcurrency, new LinkedBlockingQueue<>());
+    }
+
+    private RpcBulkhead(String name, int maxConcurrency, BlockingQueue<Runnable> queue){
+        ThreadFactory factory = new ThreadFactory() {
+
+            AtomicInteger seq = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setName(name + "-" + seq.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+
+        };
+
+        this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 30, TimeUnit.SECONDS,
+                queue, factory, new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 满时抛出 RejectedExecutionException
+     * @param task
+     */
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    public int getActiveCount(){
+        return executor.getActiveCount();
+    }
+
+    public int getQueueSize(){
+        return executor.getQueue().size();
+    }
+
+    public void shutdown(long timeout, TimeUnit unit){
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+        }
+        executor.shutdownNow();
+    }
+}
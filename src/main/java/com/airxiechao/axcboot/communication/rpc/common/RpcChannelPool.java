@@ -0,0 +1,132 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一对端的多个连接，每个连接单独记录心跳
+ *
+ * 发送时在心跳未过期且对端未在排空的连接中选择等待请求最少的，相同时轮询
+ */
+public class RpcChannelPool {
+
+    private List<RpcContext> contexts = new CopyOnWriteArrayList<>();
+    private AtomicInteger next = new AtomicInteger();
+
+    /**
+     * 获取连接的上下文，不存在时加入
+     * @param ctx
+     * @return
+     */
+    public synchronized RpcContext getOrAdd(ChannelHandlerContext ctx){
+        RpcContext rpcContext = get(ctx);
+        if(null == rpcContext){
+            rpcContext = new RpcContext();
+            rpcContext.setContext(ctx);
+            rpcContext.setLastHeartbeatTime(new Date());
+            contexts.add(rpcContext);
+        }
+        return rpcContext;
+    }
+
+    public RpcContext get(ChannelHandlerContext ctx){
+        for(RpcContext rpcContext : contexts){
+            if(rpcContext.getContext() == ctx){
+                return rpcContext;
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean remove(ChannelHandlerContext ctx){
+        RpcContext rpcContext = get(ctx);
+        if(null == rpcContext){
+            return false;
+        }
+        return contexts.remove(rpcContext);
+    }
+
+    /**
+     * 选择发送使用的连接
+     * @return 没有可用连接时返回 null
+     */
+    public ChannelHandlerContext select(){
+        List<RpcContext> list = contexts;
+        int size = list.size();
+        if(0 == size){
+            return null;
+        }
+
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        ChannelHandlerContext selected = null;
+        int minPending = Integer.MAX_VALUE;
+        for(int i = 0; i < size; ++i){
+            RpcContext rpcContext;
+            try{
+                rpcContext = list.get((start + i) % size);
+            }catch (IndexOutOfBoundsException e){
+                break;
+            }
+            ChannelHandlerContext ctx = rpcContext.getContext();
+            if(rpcContext.isHeartbeatExpired() || !ctx.channel().isActive() || RpcContext.isDraining(ctx)){
+                continue;
+            }
+
+            int pending = RpcPendingRequests.of(ctx.channel()).size();
+            if(pending < minPending){
+                minPending = pending;
+                selected = ctx;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 是否有心跳未过期且对端未在排空的连接
+     * @return
+     */
+    public boolean isActive(){
+        for(RpcContext rpcContext : contexts){
+            if(!rpcContext.isHeartbeatExpired() && !RpcContext.isDraining(rpcContext.getContext())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 心跳未过期的连接中最小的往返时间
+     * @return 未知时为 -1
+     */
+    public long getRttMicros(){
+        long rtt = -1;
+        for(RpcContext rpcContext : contexts){
+            long r = rpcContext.getRttMicros();
+            if(!rpcContext.isHeartbeatExpired() && r >= 0 && (rtt < 0 || r < rtt)){
+                rtt = r;
+            }
+        }
+        return rtt;
+    }
+
+    public List<ChannelHandlerContext> getChannels(){
+        List<ChannelHandlerContext> list = new ArrayList<>();
+        for(RpcContext rpcContext : contexts){
+            list.add(rpcContext.getContext());
+        }
+        return list;
+    }
+
+    public int size(){
+        return contexts.size();
+    }
+
+    public boolean isEmpty(){
+        return contexts.isEmpty();
+    }
+}
@@ -0,0 +1,156 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合并写，同一连接在一个 event loop 周期内的消息只 flush 一次
+ *
+ * 达到最大批量时立即 flush，否则在本轮任务之后或最大延迟到期时 flush
+ */
+public class RpcChannelWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcChannelWriter.class);
+
+    private static final AttributeKey<RpcChannelWriter> WRITER = AttributeKey.valueOf("rpc-channel-writer");
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final long DEFAULT_MAX_BATCH_DELAY_MICROS = 0;
+
+    private Channel channel;
+    private EventLoop eventLoop;
+    private int maxBatchSize;
+    private long maxBatchDelayMicros;
+
+    // 以下只在 event loop 中访问
+    private int unflushed;
+    private boolean flushScheduled;
+
+    private Runnable flushTask = () -> {
+        flushScheduled = false;
+        flush();
+    };
+
+    private RpcChannelWriter(Channel channel, int maxBatchSize, long maxBatchDelayMicros){
+        this.channel = channel;
+        this.eventLoop = channel.eventLoop();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchDelayMicros = Math.max(0, maxBatchDelayMicros);
+    }
+
+    /**
+     * 在连接初始化时挂到 channel 上
+     * @param channel
+     * @param maxBatchSize
+     * @param maxBatchDelayMicros 0 表示本轮任务之后即 flush
+     * @return
+     */
+    public static RpcChannelWriter attach(Channel channel, int maxBatchSize, long maxBatchDelayMicros){
+        RpcChannelWriter writer = new RpcChannelWriter(channel, maxBatchSize, maxBatchDelayMicros);
+        channel.attr(WRITER).set(writer);
+        return writer;
+    }
+
+    /**
+     * 未挂载时以默认参数挂载，并发挂载时使用先挂上的那个
+     * @param channel
+     * @return
+     */
+    public static RpcChannelWriter of(Channel channel){
+        Attribute<RpcChannelWriter> attr = channel.attr(WRITER);
+        RpcChannelWriter writer = attr.get();
+        if(null == writer){
+            RpcChannelWriter created = new RpcChannelWriter(channel, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_DELAY_MICROS);
+            writer = attr.setIfAbsent(created);
+            if(null == writer){
+                writer = created;
+            }
+        }
+        return writer;
+    }
+
+    public void write(RpcMessage message){
+        write(message, null);
+    }
+
+    /**
+     * 可在任意线程调用，写失败时让对应请求失败
+     * @param message
+     * @param future
+     */
+    public void write(RpcMessage message, RpcFuture future){
+        if(eventLoop.inEventLoop()){
+            writeInLoop(message, future);
+        }else{
+            eventLoop.execute(() -> writeInLoop(message, future));
+        }
+    }
+
+    private void writeInLoop(RpcMessage message, RpcFuture future){
+        ChannelPromise promise = channel.newPromise();
+        promise.addListener(f -> {
+            if(!f.isSuccess()){
+                if(null != future){
+                    future.fail(f.cause());
+                }else{
+                    logger.warn("rpc write message [{}] error: {}", message.getRequestId(), f.cause().toString());
+                }
+            }
+        });
+        channel.write(message, promise);
+
+        if(++unflushed >= maxBatchSize){
+            flush();
+        }else if(!flushScheduled){
+            flushScheduled = true;
+            if(maxBatchDelayMicros > 0){
+                eventLoop.schedule(flushTask, maxBatchDelayMicros, TimeUnit.MICROSECONDS);
+            }else{
+                eventLoop.execute(flushTask);
+            }
+        }
+    }
+
+    /**
+     * 先 flush 已合并的写再关闭连接，排空后最后的响应不会因关闭丢失，可在任意线程调用
+     *
+     * 连接已关闭时直接返回，event loop 正在关闭时不再 flush，直接关闭连接
+     * @return
+     */
+    public ChannelFuture close(){
+        if(!channel.isOpen()){
+            return channel.closeFuture();
+        }
+        if(eventLoop.isShuttingDown()){
+            return channel.close();
+        }
+
+        if(eventLoop.inEventLoop()){
+            flush();
+            channel.close();
+        }else{
+            eventLoop.execute(() -> {
+                flush();
+                channel.close();
+            });
+        }
+        return channel.closeFuture();
+    }
+
+    private void flush(){
+        if(unflushed > 0){
+            unflushed = 0;
+            if(channel.isActive() && !eventLoop.isShuttingDown()){
+                channel.flush();
+            }
+        }
+    }
+}
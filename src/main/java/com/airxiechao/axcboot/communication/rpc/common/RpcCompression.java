@@ -0,0 +1,99 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 负载压缩，格式为 | rawLength(4) | deflate |
+ */
+public class RpcCompression {
+
+    public static final String DEFLATE = "deflate";
+
+    private static final int RAW_LENGTH_LENGTH = 4;
+
+    /**
+     * 压缩负载
+     * @param bytes
+     * @return 压缩后不更小时返回 null
+     */
+    public static byte[] compress(byte[] bytes){
+        if(bytes.length <= RAW_LENGTH_LENGTH){
+            return null;
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try{
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            // 只接受比原文小的结果
+            byte[] out = new byte[bytes.length];
+            writeInt(out, bytes.length);
+            int len = RAW_LENGTH_LENGTH;
+            while(!deflater.finished() && len < out.length){
+                len += deflater.deflate(out, len, out.length - len);
+            }
+            if(!deflater.finished()){
+                return null;
+            }
+
+            byte[] compressed = new byte[len];
+            System.arraycopy(out, 0, compressed, 0, len);
+            return compressed;
+        }finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 解压负载
+     * @param bytes
+     * @param maxLength 解压后允许的最大长度
+     * @return
+     * @throws RpcException
+     */
+    public static byte[] decompress(byte[] bytes, int maxLength){
+        if(bytes.length < RAW_LENGTH_LENGTH){
+            throw new RpcException("rpc compressed payload too short: " + bytes.length);
+        }
+        int rawLength = readInt(bytes);
+        if(rawLength < 0 || rawLength > maxLength){
+            throw new RpcException("rpc compressed payload length invalid: " + rawLength);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try{
+            inflater.setInput(bytes, RAW_LENGTH_LENGTH, bytes.length - RAW_LENGTH_LENGTH);
+            byte[] out = new byte[rawLength];
+            int len = 0;
+            while(len < rawLength){
+                int n = inflater.inflate(out, len, rawLength - len);
+                if(0 == n && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())){
+                    break;
+                }
+                len += n;
+            }
+            if(len != rawLength){
+                throw new RpcException("rpc compressed payload truncated: " + len + "/" + rawLength);
+            }
+            return out;
+        }catch (DataFormatException e){
+            throw new RpcException(e);
+        }finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeInt(byte[] out, int value){
+        out[0] = (byte)(value >>> 24);
+        out[1] = (byte)(value >>> 16);
+        out[2] = (byte)(value >>> 8);
+        out[3] = (byte)value;
+    }
+
+    private static int readInt(byte[] in){
+        return (in[0] & 0xFF) << 24 | (in[1] & 0xFF) << 16 | (in[2] & 0xFF) << 8 | (in[3] & 0xFF);
+    }
+}
@@ -1,15 +1,55 @@
 package com.airxiechao.axcboot.communication.rpc.common;
 
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializerManager;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.local.LocalChannel;
+import io.netty.util.AttributeKey;
 
 import java.util.Date;
+import java.util.Map;
 
 public class RpcContext {
 
     public static final int HEARTBEAT_PERIOD_SECS = 60;
+    // 未指定超时的请求的默认超时，流式请求作为空闲超时，长时间执行的非流式请求应显式传入超时
+    public static final int DEFAULT_REQUEST_TIMEOUT_SECS = 600;
+    public static final int DEFAULT_COMPRESS_THRESHOLD = 8 * 1024;
+    public static final int DEFAULT_DRAIN_GRACE_SECS = 30;
+
+    /**
+     * 流式请求的初始额度，即被调用方可以先行发送的分片数
+     */
+    public static final int STREAM_WINDOW = 256;
+
+    /**
+     * 连接握手时协商的序列化
+     */
+    public static final AttributeKey<RpcSerializer> SERIALIZER = AttributeKey.valueOf("rpc-serializer");
+
+    /**
+     * 服务端连接对应的客户端名称，心跳时设置
+     */
+    public static final AttributeKey<String> CLIENT_NAME = AttributeKey.valueOf("rpc-client-name");
+
+    /**
+     * 握手时对端告知的服务类型编号
+     */
+    public static final AttributeKey<Map<String, Short>> PEER_TYPE_IDS = AttributeKey.valueOf("rpc-peer-type-ids");
+
+    /**
+     * 握手协商压缩后本端的压缩阈值，未设置时不压缩
+     */
+    public static final AttributeKey<Integer> COMPRESS_THRESHOLD = AttributeKey.valueOf("rpc-compress-threshold");
+
+    /**
+     * 对端即将关闭，收到 KIND_DRAIN 时设置，不再在该连接上发送新请求
+     */
+    public static final AttributeKey<Boolean> DRAINING = AttributeKey.valueOf("rpc-draining");
 
     private ChannelHandlerContext context;
     private Date lastHeartbeatTime;
+    private volatile long rttMicros = -1;
 
     public ChannelHandlerContext getContext() {
         return context;
@@ -27,6 +67,18 @@ public class RpcContext {
         this.lastHeartbeatTime = lastHeartbeatTime;
     }
 
+    /**
+     * 最近一次心跳的往返时间
+     * @return 未知时为 -1
+     */
+    public long getRttMicros() {
+        return rttMicros;
+    }
+
+    public void setRttMicros(long rttMicros) {
+        this.rttMicros = rttMicros;
+    }
+
     public boolean isHeartbeatExpired(){
         if(null == lastHeartbeatTime){
             return true;
@@ -40,4 +92,61 @@ public class RpcContext {
 
         return false;
     }
+
+    /**
+     * 是否为进程内的本地传输，本地传输不经过编解码，负载按引用传递
+     * @param ctx
+     * @return
+     */
+    public static boolean isLocal(ChannelHandlerContext ctx){
+        return ctx.channel() instanceof LocalChannel;
+    }
+
+    public static boolean isDraining(ChannelHandlerContext ctx){
+        return Boolean.TRUE.equals(ctx.channel().attr(DRAINING).get());
+    }
+
+    public static void setDraining(ChannelHandlerContext ctx){
+        ctx.channel().attr(DRAINING).set(true);
+    }
+
+    public static RpcSerializer getSerializer(ChannelHandlerContext ctx){
+        RpcSerializer serializer = ctx.channel().attr(SERIALIZER).get();
+        if(null == serializer){
+            serializer = RpcSerializerManager.getInstance().getDefaultSerializer();
+        }
+        return serializer;
+    }
+
+    public static void setSerializer(ChannelHandlerContext ctx, RpcSerializer serializer){
+        ctx.channel().attr(SERIALIZER).set(serializer);
+    }
+
+    public static short getPeerTypeId(ChannelHandlerContext ctx, String type){
+        Map<String, Short> typeIds = ctx.channel().attr(PEER_TYPE_IDS).get();
+        if(null == typeIds){
+            return RpcFrame.TYPE_ID_LITERAL;
+        }
+
+        Short id = typeIds.get(type);
+        return null == id ? RpcFrame.TYPE_ID_LITERAL : id;
+    }
+
+    /**
+     * 本端发送时的压缩阈值
+     * @param ctx
+     * @return 小于等于 0 表示不压缩
+     */
+    public static int getCompressThreshold(ChannelHandlerContext ctx){
+        Integer threshold = ctx.channel().attr(COMPRESS_THRESHOLD).get();
+        return null == threshold ? 0 : threshold;
+    }
+
+    public static void setCompressThreshold(ChannelHandlerContext ctx, int threshold){
+        ctx.channel().attr(COMPRESS_THRESHOLD).set(threshold);
+    }
+
+    public static void setPeerTypeIds(ChannelHandlerContext ctx, Map<String, Short> typeIds){
+        ctx.channel().attr(PEER_TYPE_IDS).set(typeIds);
+    }
 }
@@ -0,0 +1,124 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一端所有连接上排队中、执行中和等待响应的请求计数，用于停止前的排空
+ *
+ * 连接在激活时 bind，RpcRunningRequest 和 RpcPendingRequests 登记和移除请求时更新计数，
+ * 排空后计数归零时完成 drained，不需要轮询
+ */
+public class RpcDrain {
+
+    private static final AttributeKey<RpcDrain> DRAIN = AttributeKey.valueOf("rpc-drain");
+
+    private ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    private AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean draining;
+    private CompletableFuture<Void> drained = new CompletableFuture<>();
+
+    /**
+     * 连接激活时登记，已在排空时立即通知对端
+     * @param channel
+     */
+    public void bind(Channel channel){
+        channel.attr(DRAIN).set(this);
+        channels.add(channel);
+        if(draining){
+            RpcChannelWriter.of(channel).write(RpcUtil.buildDrainMessage());
+        }
+    }
+
+    /**
+     * 进入排空模式，拒绝新请求，并通知对端不再在这些连接上发送新请求
+     */
+    public void drain(){
+        draining = true;
+        for(Channel channel : channels){
+            RpcChannelWriter.of(channel).write(RpcUtil.buildDrainMessage());
+        }
+        if(0 == inFlight.get()){
+            drained.complete(null);
+        }
+    }
+
+    public boolean isDraining(){
+        return draining;
+    }
+
+    /**
+     * 等待排空开始后在途请求全部结束
+     * @param timeout
+     * @param unit
+     * @return 到期仍有请求未结束时返回 false
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit){
+        try {
+            drained.get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 所有连接上排队中、执行中和等待响应的请求数
+     * @return
+     */
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    /**
+     * 关闭所有已登记的连接，连接上未结束的请求随之失败或取消
+     */
+    public void close(){
+        List<ChannelFuture> closeFutures = new ArrayList<>();
+        for(Channel channel : channels){
+            closeFutures.add(RpcChannelWriter.of(channel).close());
+        }
+        for(ChannelFuture closeFuture : closeFutures){
+            closeFuture.awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * 连接上登记了新请求
+     * @param channel
+     */
+    static void onStart(Channel channel){
+        RpcDrain drain = channel.attr(DRAIN).get();
+        if(null != drain){
+            drain.inFlight.incrementAndGet();
+        }
+    }
+
+    /**
+     * 连接上的请求结束
+     * @param channel
+     * @param count
+     */
+    static void onEnd(Channel channel, int count){
+        RpcDrain drain = channel.attr(DRAIN).get();
+        if(null != drain && 0 == drain.inFlight.addAndGet(-count) && drain.draining){
+            drain.drained.complete(null);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+/**
+ * 多个客户端请求的汇总结果，全部客户端返回后完成
+ *
+ * 单个客户端失败或超时不影响其它客户端，其结果为错误响应
+ */
+public class RpcFanoutFuture extends CompletableFuture<Map<String, Response>> {
+
+    private Map<String, RpcClientFuture> futures;
+
+    public RpcFanoutFuture(Map<String, RpcClientFuture> futures){
+        this.futures = Collections.unmodifiableMap(futures);
+
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+            Map<String, Response> results = new LinkedHashMap<>();
+            for(Map.Entry<String, RpcClientFuture> entry : this.futures.entrySet()){
+                results.put(entry.getKey(), toResponse(entry.getValue()));
+            }
+            complete(results);
+        });
+    }
+
+    /**
+     * 各客户端的请求
+     * @return
+     */
+    public Map<String, RpcClientFuture> getFutures(){
+        return futures;
+    }
+
+    /**
+     * 每个客户端返回时回调，回调在 IO 线程上执行
+     * @param listener 参数为客户端和响应
+     * @return
+     */
+    public RpcFanoutFuture onResult(BiConsumer<String, Response> listener){
+        for(Map.Entry<String, RpcClientFuture> entry : futures.entrySet()){
+            String client = entry.getKey();
+            entry.getValue().whenComplete((response, error) -> listener.accept(client, toResponse(response, error)));
+        }
+        return this;
+    }
+
+    private static Response toResponse(RpcClientFuture future){
+        try{
+            return future.join();
+        }catch (Exception e){
+            return toResponse(null, e);
+        }
+    }
+
+    private static Response toResponse(Response response, Throwable error){
+        if(null == error){
+            return response;
+        }
+
+        if(error instanceof CompletionException && null != error.getCause()){
+            error = error.getCause();
+        }
+        Response errorResponse = new Response();
+        errorResponse.error(error.getMessage());
+        return errorResponse;
+    }
+}
@@ -0,0 +1,66 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+/**
+ * RPC 帧格式
+ *
+ * | length(4) | version(1) | kind(1) | flags(1) | serializer(1) | requestId(8) | typeId(2) | [type(2+n)] | [deadline(4)] | payload |
+ *
+ * length 为其后所有字节数，字符串均为 UTF-8 字节长度前缀
+ * typeId 为握手时对端分配的服务类型编号，为 TYPE_ID_LITERAL 时其后跟类型字符串，为 TYPE_ID_NONE 时无类型
+ * flags 含 FLAG_COMPRESSED 时 payload 经 RpcCompression 压缩，请求含 FLAG_STREAM 时为流式请求
+ * 请求含 FLAG_DEADLINE 时带 deadline，为调用方剩余的等待毫秒数，被调用方从收到时开始计时，开始执行前已过期的请求不再执行，
+ * 直接返回含 FLAG_DEADLINE_EXCEEDED 的响应，该响应带有服务类型，供调用方计数
+ *
+ * 流式请求的响应为若干 KIND_STREAM_CHUNK 帧，最后以 KIND_RESPONSE 或 KIND_ERROR 结束，
+ * 调用方处理分片后以 KIND_STREAM_CREDIT 帧补充额度，额度负载为 4 字节整数
+ *
+ * 批量请求为 KIND_BATCH 帧，负载为 | count(4) | frame... |，每项为含长度字段的完整请求帧，各项有自己的 requestId，
+ * 含 FLAG_ORDERED 时被调用方按顺序逐项处理，否则并行处理，全部完成后以一个 KIND_BATCH_RESPONSE 帧返回各项的响应帧
+ *
+ * 调用方取消或超时后发送 KIND_CANCEL 帧，requestId 为要取消的请求，无负载，被调用方中断执行并以含 FLAG_CANCELLED 的响应结束
+ *
+ * 一端停止前发送 KIND_DRAIN 帧，无负载，对端不再在该连接上发送新请求，已发出的请求仍会正常返回，
+ * 发送方等待处理中的请求结束或宽限期到期后关闭连接，不认识该帧的旧对端记录后忽略，因此不改变版本
+ *
+ * 心跳为 KIND_HEARTBEAT 帧，ping 负载为 | timestamp(8) | name |，对端在 IO 线程上原样返回 timestamp 并置 FLAG_PONG，
+ * 服务端收到客户端 ping 后也回 ping 一次，双方各自测量往返时间
+ *
+ * 连接的第一帧不是本格式而是旧客户端的帧时，该连接由 RpcLegacyFrame 按旧格式收发
+ */
+public class RpcFrame {
+
+    public static final int LENGTH_FIELD_LENGTH = 4;
+    public static final int MAX_FRAME_LENGTH = 128 * 1024 * 1024;
+    public static final int MAX_SHORT_STR_LENGTH = 0xFFFF;
+
+    public static final byte VERSION = 6;
+
+    /**
+     * version + kind + flags + serializer + requestId + typeId
+     */
+    public static final int FIXED_HEADER_LENGTH = 14;
+
+    public static final byte KIND_REQUEST = 0;
+    public static final byte KIND_RESPONSE = 1;
+    public static final byte KIND_ERROR = 2;
+    public static final byte KIND_HEARTBEAT = 3;
+    public static final byte KIND_CANCEL = 4;
+    public static final byte KIND_STREAM_CHUNK = 5;
+    public static final byte KIND_HANDSHAKE = 6;
+    public static final byte KIND_STREAM_CREDIT = 7;
+    public static final byte KIND_BATCH = 8;
+    public static final byte KIND_BATCH_RESPONSE = 9;
+    public static final byte KIND_DRAIN = 10;
+
+    public static final byte FLAG_COMPRESSED = 0x01;
+    public static final byte FLAG_STREAM = 0x02;
+    public static final byte FLAG_PONG = 0x04;
+    public static final byte FLAG_ORDERED = 0x08;
+    public static final byte FLAG_DEADLINE = 0x10;
+    public static final byte FLAG_DEADLINE_EXCEEDED = 0x20;
+    public static final byte FLAG_CANCELLED = 0x40;
+
+    public static final short TYPE_ID_NONE = 0;
+    public static final short TYPE_ID_LITERAL = -1;
+
+}
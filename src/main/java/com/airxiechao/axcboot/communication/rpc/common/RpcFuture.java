@@ -2,55 +2,74 @@ package com.airxiechao.axcboot.communication.rpc.common;
 
 import com.airxiechao.axcboot.communication.common.Response;
 
-import java.util.concurrent.*;
+import java.util.concurrent.CompletableFuture;
 
-public class RpcFuture implements Future<Response> {
+/**
+ * RPC 调用结果，在 IO 线程上收到响应时完成，回调不占用等待线程
+ */
+public class RpcFuture extends CompletableFuture<Response> {
 
-    private Response result;
-    private Throwable error;
-    private CountDownLatch latch = new CountDownLatch(1);
+    private volatile RpcServiceMetrics metrics;
+    private volatile Runnable canceller;
 
-    @Override
-    public boolean cancel(boolean mayInterruptIfRunning) {
-        return false;
+    /**
+     * 关联调用方的服务统计，用于记录收到的字节数
+     * @param metrics
+     */
+    public void setMetrics(RpcServiceMetrics metrics) {
+        this.metrics = metrics;
     }
 
-    @Override
-    public boolean isCancelled() {
-        return false;
+    public void recordBytesIn(long bytes){
+        RpcServiceMetrics metrics = this.metrics;
+        if(null != metrics){
+            metrics.addBytesIn(bytes);
+        }
     }
 
-    @Override
-    public boolean isDone() {
-        return result != null || error != null;
+    /**
+     * 请求发出前设置，本端取消或超时时通知被调用方取消
+     * @param canceller
+     */
+    public void setCanceller(Runnable canceller) {
+        this.canceller = canceller;
     }
 
-    public void success(Response result) {
-        this.result = result;
-        latch.countDown();
+    /**
+     * 取消请求并向被调用方发送取消帧，被调用方中断正在执行的服务
+     * @param mayInterruptIfRunning
+     * @return
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if(cancelled){
+            RpcServiceMetrics metrics = this.metrics;
+            if(null != metrics){
+                metrics.onCancelled();
+            }
+            cancelRemote();
+        }
+        return cancelled;
     }
 
-    public void fail(Throwable error) {
-        this.error = error;
-        latch.countDown();
+    /**
+     * 本端已不再等待，通知被调用方取消
+     */
+    public void cancelRemote(){
+        Runnable canceller = this.canceller;
+        if(null != canceller){
+            this.canceller = null;
+            canceller.run();
+        }
     }
 
-    @Override
-    public Response get() throws InterruptedException, ExecutionException {
-        latch.await();
-        if (error != null) {
-            throw new ExecutionException(error);
-        }
-        return result;
+    public void success(Response result) {
+        complete(result);
     }
 
-    @Override
-    public Response get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        latch.await(timeout, unit);
-        if (error != null) {
-            throw new ExecutionException(error);
-        }
-        return result;
+    public void fail(Throwable error) {
+        completeExceptionally(error);
     }
 
 }
@@ -0,0 +1,116 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁对数分桶直方图，每个 2 的幂区间分 8 个桶，相对误差不超过 12.5%，记录时不分配对象
+ */
+public class RpcHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 44;
+    private static final int NUM_BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+
+    private AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private LongAdder count = new LongAdder();
+    private LongAdder sum = new LongAdder();
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个非负值
+     * @param value
+     */
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+
+        buckets.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+
+        long current = max.get();
+        while(value > current && !max.compareAndSet(current, value)){
+            current = max.get();
+        }
+    }
+
+    private static int indexOf(long value){
+        if(value < LINEAR_BUCKETS){
+            return (int) value;
+        }
+
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_EXPONENT);
+        int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶的代表值，取桶区间的中点
+     * @param index
+     * @return
+     */
+    private static long valueOf(int index){
+        if(index < LINEAR_BUCKETS){
+            return index;
+        }
+
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + sub) * width + width / 2;
+    }
+
+    public long getCount(){
+        return count.sum();
+    }
+
+    /**
+     * 分位值
+     * @param quantile 0 到 1
+     * @return 没有记录时为 0
+     */
+    public long getPercentile(double quantile){
+        long total = 0;
+        long[] snapshot = new long[NUM_BUCKETS];
+        for(int i = 0; i < NUM_BUCKETS; ++i){
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for(int i = 0; i < NUM_BUCKETS; ++i){
+            seen += snapshot[i];
+            if(seen >= rank){
+                return Math.min(valueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 汇总：count、mean、p50、p90、p99、max
+     * @return
+     */
+    public Map<String, Long> snapshot(){
+        Map<String, Long> map = new LinkedHashMap<>();
+        long n = count.sum();
+        map.put("count", n);
+        map.put("mean", n == 0 ? 0 : sum.sum() / n);
+        map.put("p50", getPercentile(0.5));
+        map.put("p90", getPercentile(0.9));
+        map.put("p99", getPercentile(0.99));
+        map.put("max", max.get());
+        return map;
+    }
+}
@@ -0,0 +1,197 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+
+/**
+ * 引入帧格式之前的旧客户端的帧，没有总长度和版本
+ *
+ * | requestIdLength(4) | requestId | typeLength(4) | type | payloadLength(4) | payload |
+ *
+ * 长度为其后字符串的 UTF-8 字节数，负载为 JSON，请求号为 UUID 字符串，响应的类型为请求类型加 _response 后缀，
+ * 心跳为 ping 请求，负载含客户端名称
+ *
+ * 旧客户端连接后先发送心跳请求，因此连接的第一帧以 UUID 长度 36 开头且其后为 UUID 字符时按旧格式处理，
+ * 新格式在同一位置为版本号，不会混淆。此后该连接按旧格式收发：收到的请求换成连接内的数字请求号，回复时换回原请求号，
+ * 发出的请求以数字请求号的字符串形式发送，旧格式无法表示的帧（心跳、流分片、批量、排空等）不发送
+ */
+public class RpcLegacyFrame {
+
+    public static final String RESPONSE_SUFFIX = "_response";
+    public static final String PING_TYPE = "ping";
+
+    /**
+     * 旧客户端请求号 UUID 字符串的长度
+     */
+    public static final int UUID_LENGTH = 36;
+
+    private static final int STR_LENGTH_FIELD_LENGTH = 4;
+
+    private static final AttributeKey<RpcLegacyFrame> LEGACY = AttributeKey.valueOf("rpc-legacy-frame");
+
+    private AtomicLong requestIdSeq = new AtomicLong();
+    private Map<Long, String[]> receivedRequests = new ConcurrentHashMap<>();
+
+    /**
+     * 连接是否使用旧格式
+     * @param channel
+     * @return
+     */
+    public static boolean isLegacy(Channel channel){
+        return null != channel.attr(LEGACY).get();
+    }
+
+    private static RpcLegacyFrame of(Channel channel){
+        Attribute<RpcLegacyFrame> attr = channel.attr(LEGACY);
+        RpcLegacyFrame legacy = attr.get();
+        if(null == legacy){
+            RpcLegacyFrame created = new RpcLegacyFrame();
+            legacy = attr.setIfAbsent(created);
+            if(null == legacy){
+                legacy = created;
+            }
+        }
+        return legacy;
+    }
+
+    /**
+     * 判断连接的第一帧是否为旧格式，至少需要 5 个可读字节，不移动读位置
+     * @param in
+     * @return
+     */
+    public static boolean isLegacyStart(ByteBuf in){
+        int start = in.readerIndex();
+        return UUID_LENGTH == in.getInt(start) && isUuidChar(in.getByte(start + STR_LENGTH_FIELD_LENGTH));
+    }
+
+    private static boolean isUuidChar(byte b){
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F') || '-' == b;
+    }
+
+    /**
+     * 是否已收到一个完整的旧格式帧，不移动读位置
+     * @param in
+     * @return
+     */
+    public static boolean isComplete(ByteBuf in){
+        long offset = in.readerIndex();
+        for(int i = 0; i < 3; ++i){
+            if(in.writerIndex() - offset < STR_LENGTH_FIELD_LENGTH){
+                return false;
+            }
+            int len = in.getInt((int)offset);
+            if(len < 0 || len > MAX_FRAME_LENGTH){
+                throw new CorruptedFrameException("rpc legacy frame string length invalid: " + len);
+            }
+            offset += STR_LENGTH_FIELD_LENGTH + len;
+        }
+        return offset <= in.writerIndex();
+    }
+
+    /**
+     * 解析一个完整的旧格式帧，须先由 isComplete 确认，并将连接标记为旧格式
+     * @param channel
+     * @param in
+     * @return 无法对应到等待中请求的响应返回 null
+     */
+    public static RpcMessage decode(Channel channel, ByteBuf in){
+        RpcLegacyFrame legacy = of(channel);
+        String requestId = readStr(in);
+        String type = readStr(in);
+        int payloadLength = in.readInt();
+        byte[] payload = ByteBufUtil.getBytes(in, in.readerIndex(), payloadLength);
+        in.skipBytes(payloadLength);
+
+        if(type.endsWith(RESPONSE_SUFFIX)){
+            long id;
+            try{
+                id = Long.parseLong(requestId);
+            }catch (NumberFormatException e){
+                return null;
+            }
+            type = type.substring(0, type.length() - RESPONSE_SUFFIX.length());
+            return new RpcMessage(KIND_RESPONSE, id, type, JsonRpcSerializer.ID, payload);
+        }
+
+        long id = legacy.requestIdSeq.incrementAndGet();
+        legacy.receivedRequests.put(id, new String[]{ requestId, type });
+        return new RpcMessage(KIND_REQUEST, id, type, JsonRpcSerializer.ID, payload);
+    }
+
+    /**
+     * 按旧格式编码
+     * @param alloc
+     * @param channel
+     * @param message
+     * @return 旧格式无法表示时返回 null
+     */
+    public static ByteBuf encode(ByteBufAllocator alloc, Channel channel, RpcMessage message){
+        RpcLegacyFrame legacy = of(channel);
+        String requestId;
+        String type;
+        byte[] payload = message.getPayload();
+        switch (message.getKind()){
+            case KIND_REQUEST:
+                requestId = String.valueOf(message.getRequestId());
+                type = message.getType();
+                break;
+            case KIND_RESPONSE:
+            case KIND_ERROR:
+                String[] request = legacy.receivedRequests.remove(message.getRequestId());
+                if(null == request){
+                    return null;
+                }
+                requestId = request[0];
+                type = request[1] + RESPONSE_SUFFIX;
+                if(KIND_ERROR == message.getKind()){
+                    // 旧客户端只能解析 JSON 的 Response
+                    Response response = new Response();
+                    response.error(RpcUtil.getErrorMessage(message));
+                    payload = JSON.toJSONBytes(response);
+                }
+                break;
+            default:
+                return null;
+        }
+
+        byte[] requestIdBytes = requestId.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        long length = 3L * STR_LENGTH_FIELD_LENGTH + requestIdBytes.length + typeBytes.length + payload.length;
+        if(length > MAX_FRAME_LENGTH){
+            throw new EncoderException("rpc legacy frame too large: " + length);
+        }
+
+        ByteBuf buf = alloc.ioBuffer((int)length);
+        buf.writeInt(requestIdBytes.length);
+        buf.writeBytes(requestIdBytes);
+        buf.writeInt(typeBytes.length);
+        buf.writeBytes(typeBytes);
+        buf.writeInt(payload.length);
+        buf.writeBytes(payload);
+        return buf;
+    }
+
+    private static String readStr(ByteBuf in) {
+        int len = in.readInt();
+        String s = in.toString(in.readerIndex(), len, StandardCharsets.UTF_8);
+        in.skipBytes(len);
+        return s;
+    }
+}
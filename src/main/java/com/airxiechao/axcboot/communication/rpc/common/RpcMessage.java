@@ -1,22 +1,119 @@
 package com.airxiechao.axcboot.communication.rpc.common;
 
-public class RpcMessage {
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
 
-    public static final String RESPONSE_SUFFIX = "_response";
+public class RpcMessage {
 
-    private String requestId;
+    private byte kind;
+    private byte flags;
+    private long requestId;
+    private short typeId;
     private String type;
-    private String payload;
+    private byte serializer;
+    private byte[] payload;
+    private int deadlineMillis;
+    private long deadlineNanos;
+
+    /**
+     * 本地传输时按引用传递的负载，未序列化，payload 为空
+     */
+    private Object value;
 
-    public RpcMessage(String requestId, String type, String payload){
+    public RpcMessage(byte kind, long requestId, String type, byte serializer, byte[] payload){
 
+        this.kind = kind;
         this.requestId = requestId;
         this.type = type;
+        this.serializer = serializer;
         this.payload = payload;
     }
 
     public boolean isResponse(){
-        return type.endsWith(RESPONSE_SUFFIX);
+        return KIND_RESPONSE == kind || KIND_ERROR == kind;
+    }
+
+    public boolean isHandshake(){
+        return KIND_HANDSHAKE == kind;
+    }
+
+    public boolean isCompressed(){
+        return 0 != (flags & FLAG_COMPRESSED);
+    }
+
+    public boolean isStream(){
+        return 0 != (flags & FLAG_STREAM);
+    }
+
+    public boolean isPong(){
+        return 0 != (flags & FLAG_PONG);
+    }
+
+    public boolean isOrdered(){
+        return 0 != (flags & FLAG_ORDERED);
+    }
+
+    public boolean hasDeadline(){
+        return 0 != (flags & FLAG_DEADLINE);
+    }
+
+    /**
+     * 响应是否为被调用方因请求过期而丢弃
+     * @return
+     */
+    public boolean isDeadlineExceeded(){
+        return 0 != (flags & FLAG_DEADLINE_EXCEEDED);
+    }
+
+    /**
+     * 响应是否为被调用方因请求被取消而结束
+     * @return
+     */
+    public boolean isCancelled(){
+        return 0 != (flags & FLAG_CANCELLED);
+    }
+
+    /**
+     * 被调用方收到请求时按 deadline 计算本地的截止时间
+     * @param receivedNanos 收到时的 System.nanoTime()
+     */
+    public void startDeadline(long receivedNanos){
+        if(hasDeadline()){
+            deadlineNanos = receivedNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        }
+    }
+
+    /**
+     * 请求是否已过截止时间，须先调用 startDeadline
+     * @return
+     */
+    public boolean isExpired(){
+        return hasDeadline() && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    public byte getKind() {
+        return kind;
+    }
+
+    public void setKind(byte kind) {
+        this.kind = kind;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    public void setFlags(byte flags) {
+        this.flags = flags;
+    }
+
+    public short getTypeId() {
+        return typeId;
+    }
+
+    public void setTypeId(short typeId) {
+        this.typeId = typeId;
     }
 
     public String getType() {
@@ -27,19 +124,54 @@ public class RpcMessage {
         this.type = type;
     }
 
-    public String getRequestId() {
+    public long getRequestId() {
         return requestId;
     }
 
-    public void setRequestId(String requestId) {
+    public void setRequestId(long requestId) {
         this.requestId = requestId;
     }
 
-    public String getPayload() {
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
+
+    public byte[] getPayload() {
         return payload;
     }
 
-    public void setPayload(String payload) {
+    public void setPayload(byte[] payload) {
         this.payload = payload;
     }
+
+    public int getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * 设置请求的 deadline，小于等于 0 表示没有
+     * @param deadlineMillis
+     */
+    public void setDeadlineMillis(long deadlineMillis) {
+        if(deadlineMillis <= 0){
+            this.deadlineMillis = 0;
+            this.flags = (byte)(flags & ~FLAG_DEADLINE);
+            return;
+        }
+
+        this.deadlineMillis = (int)Math.min(deadlineMillis, Integer.MAX_VALUE);
+        this.flags = (byte)(flags | FLAG_DEADLINE);
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
 }
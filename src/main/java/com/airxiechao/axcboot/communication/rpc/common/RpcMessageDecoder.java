@@ -1,31 +1,115 @@
 package com.airxiechao.axcboot.communication.rpc.common;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.Charset;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 
-public class RpcMessageDecoder extends ReplayingDecoder<RpcMessage> {
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
 
+public class RpcMessageDecoder extends LengthFieldBasedFrameDecoder {
 
     private static Logger logger = LoggerFactory.getLogger(RpcMessageDecoder.class);
 
+    /**
+     * 连接的第一帧是否已判断过格式，以及是否为旧格式
+     */
+    private boolean formatChecked;
+    private boolean legacy;
+
+    public RpcMessageDecoder(){
+        super(MAX_FRAME_LENGTH, 0, LENGTH_FIELD_LENGTH, 0, LENGTH_FIELD_LENGTH);
+    }
+
     @Override
-    protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) throws Exception {
-        String requestId = readStr(byteBuf);
-        String type = readStr(byteBuf);
-        String content = readStr(byteBuf);
-        list.add(new RpcMessage(requestId, type, content));
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        if(!formatChecked){
+            if(in.readableBytes() < LENGTH_FIELD_LENGTH + 1){
+                return null;
+            }
+            formatChecked = true;
+            legacy = RpcLegacyFrame.isLegacyStart(in);
+        }
+
+        if(legacy){
+            if(!RpcLegacyFrame.isComplete(in)){
+                return null;
+            }
+            return RpcLegacyFrame.decode(ctx.channel(), in);
+        }
+
+        ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+        if(null == frame){
+            return null;
+        }
+
+        try{
+            return decodeFrame(frame);
+        }finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * 解析去掉长度字段后的帧，批量消息的各项也按此格式解析
+     * @param frame
+     * @return
+     */
+    public static RpcMessage decodeFrame(ByteBuf frame){
+        if(frame.readableBytes() < FIXED_HEADER_LENGTH){
+            throw new CorruptedFrameException("rpc frame too short: " + frame.readableBytes());
+        }
+
+        byte version = frame.readByte();
+        if(version != VERSION){
+            throw new CorruptedFrameException("unsupported rpc frame version: " + version);
+        }
+        byte kind = frame.readByte();
+        byte flags = frame.readByte();
+        byte serializer = frame.readByte();
+        long requestId = frame.readLong();
+
+        short typeId = frame.readShort();
+        String type = null;
+        if(TYPE_ID_LITERAL == typeId){
+            type = readShortStr(frame);
+        }
+
+        int deadlineMillis = 0;
+        if(0 != (flags & FLAG_DEADLINE)){
+            if(frame.readableBytes() < 4){
+                throw new CorruptedFrameException("rpc frame deadline truncated");
+            }
+            deadlineMillis = frame.readInt();
+        }
+
+        // 负载有意复制出池化的帧：消息会交给工作线程、汇入批量响应或延后到流分片处理时才反序列化，
+        // 持有池化 buffer 需要在每条路径上 release，而序列化、压缩和扇出共享负载都以 byte[] 为单位，这里只复制这一次
+        byte[] payload = ByteBufUtil.getBytes(frame);
+
+        RpcMessage message = new RpcMessage(kind, requestId, type, serializer, payload);
+        message.setFlags(flags);
+        message.setTypeId(typeId);
+        message.setDeadlineMillis(deadlineMillis);
+        return message;
     }
 
-    private String readStr(ByteBuf in) {
-        int len = in.readInt();
-        byte[] bytes = new byte[len];
-        in.readBytes(bytes);
-        return new String(bytes, Charset.forName("UTF-8"));
+    private static String readShortStr(ByteBuf frame) {
+        if(frame.readableBytes() < 2){
+            throw new CorruptedFrameException("rpc frame string length truncated");
+        }
+        int len = frame.readUnsignedShort();
+        if(len > frame.readableBytes()){
+            throw new CorruptedFrameException("rpc frame string length exceeds frame: " + len);
+        }
+
+        String s = frame.toString(frame.readerIndex(), len, StandardCharsets.UTF_8);
+        frame.skipBytes(len);
+        return s;
     }
 }
@@ -1,32 +1,119 @@
 package com.airxiechao.axcboot.communication.rpc.common;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.Charset;
 import java.util.List;
 
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+
 @Sharable
 public class RpcMessageEncoder extends MessageToMessageEncoder<RpcMessage> {
 
     private static Logger logger = LoggerFactory.getLogger(RpcMessageEncoder.class);
 
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, RpcMessage message, List<Object> list) throws Exception {
-        ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
-        writeStr(buf, message.getRequestId());
-        writeStr(buf, message.getType());
-        writeStr(buf, message.getPayload());
+    protected void encode(ChannelHandlerContext ctx, RpcMessage message, List<Object> list) throws Exception {
+        if(RpcLegacyFrame.isLegacy(ctx.channel())){
+            ByteBuf legacy = RpcLegacyFrame.encode(ctx.alloc(), ctx.channel(), message);
+            list.add(null == legacy ? Unpooled.EMPTY_BUFFER : legacy);
+            return;
+        }
+
+        ByteBuf buf = ctx.alloc().ioBuffer(frameLength(message));
+        try{
+            writeFrame(buf, message);
+        }catch (Exception e){
+            buf.release();
+            throw e;
+        }
+
         list.add(buf);
     }
 
-    private void writeStr(ByteBuf buf, String s) {
-        buf.writeInt(s.length());
-        buf.writeBytes(s.getBytes(Charset.forName("UTF-8")));
+    /**
+     * 帧的总字节数，包括长度字段
+     * @param message
+     * @return
+     */
+    public static int frameLength(RpcMessage message){
+        short typeId = resolveTypeId(message);
+        return LENGTH_FIELD_LENGTH + bodyLength(message, typeId, typeBytes(message, typeId));
+    }
+
+    /**
+     * 写入一个完整的帧，批量消息的各项也按此格式写入负载
+     * @param buf
+     * @param message
+     */
+    public static void writeFrame(ByteBuf buf, RpcMessage message){
+        short typeId = resolveTypeId(message);
+        String type = message.getType();
+        byte[] payload = message.getPayload();
+        int typeLength = typeBytes(message, typeId);
+
+        buf.writeInt(bodyLength(message, typeId, typeLength));
+        buf.writeByte(VERSION);
+        buf.writeByte(message.getKind());
+        buf.writeByte(message.getFlags());
+        buf.writeByte(message.getSerializer());
+        buf.writeLong(message.getRequestId());
+        buf.writeShort(typeId);
+        if(TYPE_ID_LITERAL == typeId){
+            buf.writeShort(typeLength);
+            ByteBufUtil.reserveAndWriteUtf8(buf, type, typeLength);
+        }
+        if(message.hasDeadline()){
+            buf.writeInt(message.getDeadlineMillis());
+        }
+        buf.writeBytes(payload);
+    }
+
+    /**
+     * 长度字段之后的字节数，frameLength 和 writeFrame 共用
+     * @param message
+     * @param typeId
+     * @param typeLength 类型字符串的字节数，非字面类型时为 0
+     * @return
+     */
+    private static int bodyLength(RpcMessage message, short typeId, int typeLength){
+        long bodyLength = (long)FIXED_HEADER_LENGTH + message.getPayload().length;
+        if(TYPE_ID_LITERAL == typeId){
+            bodyLength += 2 + typeLength;
+        }
+        if(message.hasDeadline()){
+            bodyLength += 4;
+        }
+        if(bodyLength > MAX_FRAME_LENGTH){
+            throw new EncoderException("rpc frame too large: " + bodyLength);
+        }
+        return (int)bodyLength;
+    }
+
+    private static int typeBytes(RpcMessage message, short typeId){
+        return TYPE_ID_LITERAL == typeId ? shortStrBytes(message.getType()) : 0;
+    }
+
+    private static short resolveTypeId(RpcMessage message){
+        short typeId = message.getTypeId();
+        if(typeId <= 0){
+            typeId = null == message.getType() ? TYPE_ID_NONE : TYPE_ID_LITERAL;
+        }
+        return typeId;
+    }
+
+    private static int shortStrBytes(String s){
+        int len = ByteBufUtil.utf8Bytes(s);
+        if(len > MAX_SHORT_STR_LENGTH){
+            throw new EncoderException("rpc frame string too long: " + len);
+        }
+        return len;
     }
 }
@@ -0,0 +1,60 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按服务类型统计的 RPC 指标，served 为本端处理的请求，called 为本端发出的请求
+ */
+public class RpcMetrics {
+
+    /**
+     * 保留的指标服务类型，服务端和客户端都默认注册
+     */
+    public static final String SERVICE_TYPE = "metrics";
+
+    /**
+     * 未注册的服务类型归入该类型，避免对端发送任意类型导致统计无限增长
+     */
+    public static final String UNKNOWN_TYPE = "<unknown>";
+
+    private Map<String, RpcServiceMetrics> served = new ConcurrentHashMap<>();
+    private Map<String, RpcServiceMetrics> called = new ConcurrentHashMap<>();
+
+    public RpcServiceMetrics served(String type){
+        return served.computeIfAbsent(null == type ? UNKNOWN_TYPE : type, t -> new RpcServiceMetrics());
+    }
+
+    public RpcServiceMetrics called(String type){
+        return called.computeIfAbsent(type, t -> new RpcServiceMetrics());
+    }
+
+    public Map<String, Object> snapshot(){
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("served", snapshot(served));
+        map.put("called", snapshot(called));
+        return map;
+    }
+
+    private static Map<String, Object> snapshot(Map<String, RpcServiceMetrics> metrics){
+        Map<String, Object> map = new TreeMap<>();
+        for(Map.Entry<String, RpcServiceMetrics> entry : metrics.entrySet()){
+            map.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return map;
+    }
+
+    /**
+     * 指标服务的响应
+     * @return
+     */
+    public Response toResponse(){
+        Response response = new Response();
+        response.setData(snapshot());
+        return response;
+    }
+}
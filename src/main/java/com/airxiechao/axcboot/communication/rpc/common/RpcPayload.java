@@ -0,0 +1,37 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+/**
+ * 已序列化的负载，压缩只计算一次，可在多个连接的消息间共享
+ */
+public class RpcPayload {
+
+    private byte serializer;
+    private byte[] bytes;
+    private byte[] compressed;
+    private boolean compressTried;
+
+    public RpcPayload(byte serializer, byte[] bytes){
+        this.serializer = serializer;
+        this.bytes = bytes;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * 压缩后的负载
+     * @return 压缩后不更小时返回 null
+     */
+    public synchronized byte[] getCompressed(){
+        if(!compressTried){
+            compressTried = true;
+            compressed = RpcCompression.compress(bytes);
+        }
+        return compressed;
+    }
+}
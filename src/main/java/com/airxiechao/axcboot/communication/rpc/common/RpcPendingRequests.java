@@ -0,0 +1,135 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.collection.LongObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个连接上等待响应的请求，挂在 channel 属性上，断开时只需处理本连接
+ *
+ * 请求号在连接内单调递增，等待表只在 channel 的 event loop 中读写，不加锁
+ */
+public class RpcPendingRequests {
+
+    private static final AttributeKey<RpcPendingRequests> PENDING_REQUESTS = AttributeKey.valueOf("rpc-pending-requests");
+
+    private Channel channel;
+    private AtomicLong requestIdSeq = new AtomicLong();
+    private LongObjectHashMap<RpcFuture> futures = new LongObjectHashMap<>();
+    private volatile int size;
+
+    private RpcPendingRequests(Channel channel){
+        this.channel = channel;
+    }
+
+    public static RpcPendingRequests of(Channel channel){
+        Attribute<RpcPendingRequests> attr = channel.attr(PENDING_REQUESTS);
+        RpcPendingRequests pendingRequests = attr.get();
+        if(null == pendingRequests){
+            RpcPendingRequests created = new RpcPendingRequests(channel);
+            pendingRequests = attr.setIfAbsent(created);
+            if(null == pendingRequests){
+                pendingRequests = created;
+            }
+        }
+        return pendingRequests;
+    }
+
+    public long nextRequestId(){
+        return requestIdSeq.incrementAndGet();
+    }
+
+    /**
+     * 须在 event loop 中调用
+     * @param requestId
+     * @param future
+     */
+    public void put(long requestId, RpcFuture future){
+        if(null == futures.put(requestId, future)){
+            RpcDrain.onStart(channel);
+        }
+        size = futures.size();
+    }
+
+    /**
+     * 须在 event loop 中调用
+     * @param requestId
+     * @return
+     */
+    public RpcFuture get(long requestId){
+        return futures.get(requestId);
+    }
+
+    /**
+     * 须在 event loop 中调用
+     * @param requestId
+     * @return
+     */
+    public RpcFuture remove(long requestId){
+        RpcFuture future = futures.remove(requestId);
+        size = futures.size();
+        if(null != future){
+            RpcDrain.onEnd(channel, 1);
+        }
+        return future;
+    }
+
+    /**
+     * 超时、取消等非响应完成时移除，可在任意线程调用
+     * @param requestId
+     * @param future
+     */
+    public void remove(long requestId, RpcFuture future){
+        runInEventLoop(() -> {
+            if(futures.get(requestId) == future){
+                remove(requestId);
+            }
+        });
+    }
+
+    /**
+     * 连接断开时让所有等待中的请求失败，可在任意线程调用
+     * @param error
+     */
+    public void failAll(Throwable error){
+        runInEventLoop(() -> {
+            List<RpcFuture> list = new ArrayList<>(futures.values());
+            futures.clear();
+            size = 0;
+            if(!list.isEmpty()){
+                RpcDrain.onEnd(channel, list.size());
+            }
+            for(RpcFuture future : list){
+                future.fail(error);
+            }
+        });
+    }
+
+    /**
+     * 等待响应的请求数，可在任意线程调用
+     * @return
+     */
+    public int size(){
+        return size;
+    }
+
+    private void runInEventLoop(Runnable task){
+        if(channel.eventLoop().inEventLoop()){
+            task.run();
+            return;
+        }
+
+        try{
+            channel.eventLoop().execute(task);
+        }catch (RejectedExecutionException e){
+            // event loop 已关闭，不再有并发访问
+            task.run();
+        }
+    }
+}
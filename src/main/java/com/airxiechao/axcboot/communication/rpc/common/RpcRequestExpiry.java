@@ -0,0 +1,106 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 等待中请求的超时跟踪，到期以 RpcTimeoutException 失败并按服务类型计数，开启 cancelOnTimeout 时同时通知被调用方取消
+ *
+ * 同一进程内的所有服务端和客户端共享一个计时器线程
+ */
+public class RpcRequestExpiry {
+
+    private static final HashedWheelTimer timer = new HashedWheelTimer(new ThreadFactoryBuilder()
+            .setNameFormat("rpc-expiry")
+            .setDaemon(true)
+            .build(),
+            100, TimeUnit.MILLISECONDS, 512);
+
+    private Map<String, LongAdder> timeoutCounts = new ConcurrentHashMap<>();
+    private volatile boolean cancelOnTimeout;
+
+    /**
+     * 超时后是否向被调用方发送取消帧，默认不发送，被调用方继续执行到结束，流式请求超时总是发送
+     * @param cancelOnTimeout
+     */
+    public void setCancelOnTimeout(boolean cancelOnTimeout){
+        this.cancelOnTimeout = cancelOnTimeout;
+    }
+
+    public void track(RpcFuture future, String type, long requestId, long timeoutMillis){
+        if(timeoutMillis <= 0 || future.isDone()){
+            return;
+        }
+
+        Timeout timeout = timer.newTimeout(t -> expire(future, type, requestId, timeoutMillis),
+                timeoutMillis, TimeUnit.MILLISECONDS);
+
+        future.whenComplete((response, error) -> timeout.cancel());
+    }
+
+    /**
+     * 流式请求按空闲时间超时，每次收到或处理分片都重新计时，持续产生分片的流不会过期
+     * @param future
+     * @param type
+     * @param requestId
+     * @param idleMillis 小于等于 0 不超时
+     */
+    public void trackIdle(RpcStreamFuture future, String type, long requestId, long idleMillis){
+        if(idleMillis <= 0 || future.isDone()){
+            return;
+        }
+
+        AtomicReference<Timeout> current = new AtomicReference<>();
+        scheduleIdle(future, type, requestId, idleMillis, idleMillis, current);
+        future.whenComplete((response, error) -> current.get().cancel());
+    }
+
+    /**
+     * 到期时若期间有活动则按剩余的空闲时间重新计时，不在每个分片上重建定时任务
+     */
+    private void scheduleIdle(RpcStreamFuture future, String type, long requestId, long idleMillis, long delayMillis,
+                              AtomicReference<Timeout> current){
+        current.set(timer.newTimeout(t -> {
+            if(future.isDone()){
+                return;
+            }
+            long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - future.getLastActiveNanos());
+            if(idle < idleMillis){
+                scheduleIdle(future, type, requestId, idleMillis, idleMillis - idle, current);
+                return;
+            }
+            expire(future, type, requestId, idleMillis);
+        }, delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    private void expire(RpcFuture future, String type, long requestId, long timeoutMillis){
+        // 先计数再完成，调用方被唤醒时计数已可见
+        LongAdder count = timeoutCounts.computeIfAbsent(type, k -> new LongAdder());
+        count.increment();
+        if(!future.completeExceptionally(new RpcTimeoutException(type, requestId, timeoutMillis))){
+            count.decrement();
+            return;
+        }
+        if(cancelOnTimeout){
+            future.cancelRemote();
+        }
+    }
+
+    /**
+     * 各服务类型的超时次数
+     * @return
+     */
+    public Map<String, Long> getTimeoutCounts(){
+        Map<String, Long> counts = new HashMap<>();
+        timeoutCounts.forEach((type, count) -> counts.put(type, count.sum()));
+        return counts;
+    }
+}
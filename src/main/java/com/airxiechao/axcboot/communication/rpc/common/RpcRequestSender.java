@@ -0,0 +1,166 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 调用方的请求发送，客户端和服务端共用：分配请求号，登记等待响应、超时、取消和指标，在 IO 线程上写出
+ */
+public class RpcRequestSender {
+
+    private RpcMetrics metrics;
+    private RpcRequestExpiry expiry;
+
+    /**
+     * @param metrics 按服务类型记录 called 指标
+     * @param expiry 请求超时，流式请求按空闲时间超时
+     */
+    public RpcRequestSender(RpcMetrics metrics, RpcRequestExpiry expiry){
+        this.metrics = metrics;
+        this.expiry = expiry;
+    }
+
+    public interface MessageBuilder {
+        RpcMessage build(long requestId) throws Exception;
+    }
+
+    /**
+     * 发送请求，超时或完成后从等待列表移除，构建消息失败时 future 以该异常失败
+     * @param ctx
+     * @param future 为 RpcStreamFuture 时以流式请求发送
+     * @param type
+     * @param builder 按分配的请求号构建消息
+     * @param timeoutMillis 小于等于 0 不超时
+     * @return 传入的 future
+     */
+    public <F extends RpcFuture> F send(ChannelHandlerContext ctx, F future, String type, MessageBuilder builder, long timeoutMillis){
+        RpcPendingRequests pendingRequests = RpcPendingRequests.of(ctx.channel());
+        long requestId = pendingRequests.nextRequestId();
+
+        RpcMessage message;
+        try{
+            message = builder.build(requestId);
+        }catch (Exception e){
+            future.fail(e);
+            return future;
+        }
+        message.setDeadlineMillis(timeoutMillis);
+        if(future instanceof RpcStreamFuture){
+            ((RpcStreamFuture) future).bind(ctx.channel(), requestId);
+            message.setFlags((byte)(message.getFlags() | RpcFrame.FLAG_STREAM));
+        }
+
+        register(ctx, pendingRequests, future, type, message, timeoutMillis);
+
+        ctx.channel().eventLoop().execute(() -> {
+            if(future.isDone()){
+                return;
+            }
+            if(!ctx.channel().isActive()){
+                future.fail(new Exception("rpc connection closed before request sent"));
+                return;
+            }
+            pendingRequests.put(requestId, future);
+            RpcChannelWriter.of(ctx.channel()).write(message, future);
+        });
+
+        return future;
+    }
+
+    /**
+     * 在一个帧中发送批量请求，每项有独立的请求号、超时和结果，写失败时批量中的所有请求失败
+     * @param ctx
+     * @param batch
+     * @param futures 与批量中各项顺序一致
+     * @param timeoutMillis 小于等于 0 不超时
+     * @return 传入的 futures
+     */
+    public <F extends RpcFuture> List<F> sendBatch(ChannelHandlerContext ctx, RpcBatch batch, List<F> futures, long timeoutMillis){
+        RpcPendingRequests pendingRequests = RpcPendingRequests.of(ctx.channel());
+        List<RpcMessage> messages = new ArrayList<>();
+        List<F> sent = new ArrayList<>();
+        for(int i = 0; i < batch.size(); ++i){
+            RpcBatch.Item item = batch.getItems().get(i);
+            F future = futures.get(i);
+            long requestId = pendingRequests.nextRequestId();
+
+            RpcMessage message;
+            try{
+                message = RpcUtil.buildBatchItemMessage(ctx, requestId, item.getType(), item.getPayload());
+            }catch (Exception e){
+                future.fail(e);
+                continue;
+            }
+            message.setDeadlineMillis(timeoutMillis);
+
+            register(ctx, pendingRequests, future, item.getType(), message, timeoutMillis);
+
+            messages.add(message);
+            sent.add(future);
+        }
+
+        if(messages.isEmpty()){
+            return futures;
+        }
+
+        RpcMessage batchMessage;
+        try{
+            batchMessage = RpcUtil.buildBatchMessage(ctx, pendingRequests.nextRequestId(), messages, batch.isOrdered());
+        }catch (Exception e){
+            sent.forEach(future -> future.fail(e));
+            return futures;
+        }
+
+        RpcFuture writeFuture = new RpcFuture();
+        writeFuture.whenComplete((response, error) -> sent.forEach(future -> future.fail(error)));
+
+        ctx.channel().eventLoop().execute(() -> {
+            if(!ctx.channel().isActive()){
+                writeFuture.fail(new Exception("rpc connection closed before request sent"));
+                return;
+            }
+            for(int i = 0; i < messages.size(); ++i){
+                if(!sent.get(i).isDone()){
+                    pendingRequests.put(messages.get(i).getRequestId(), sent.get(i));
+                }
+            }
+            RpcChannelWriter.of(ctx.channel()).write(batchMessage, writeFuture);
+        });
+
+        return futures;
+    }
+
+    /**
+     * 登记指标、取消和超时，完成后从等待列表移除
+     */
+    private void register(ChannelHandlerContext ctx, RpcPendingRequests pendingRequests, RpcFuture future, String type,
+                          RpcMessage message, long timeoutMillis){
+        long requestId = message.getRequestId();
+
+        RpcServiceMetrics serviceMetrics = metrics.called(type);
+        serviceMetrics.onRequest();
+        serviceMetrics.addBytesOut(message.getPayload().length);
+        long startNanos = serviceMetrics.onStart();
+        future.setMetrics(serviceMetrics);
+
+        future.setCanceller(() -> cancelRemote(ctx, requestId));
+        if(future instanceof RpcStreamFuture){
+            expiry.trackIdle((RpcStreamFuture) future, type, requestId, timeoutMillis);
+        }else{
+            expiry.track(future, type, requestId, timeoutMillis);
+        }
+        future.whenComplete((response, error) -> {
+            pendingRequests.remove(requestId, future);
+            serviceMetrics.onEnd(startNanos, null == error && null != response && response.isSuccess());
+        });
+    }
+
+    private static void cancelRemote(ChannelHandlerContext ctx, long requestId){
+        if(ctx.channel().isActive()){
+            RpcChannelWriter.of(ctx.channel()).write(RpcUtil.buildCancelMessage(requestId));
+        }
+    }
+}
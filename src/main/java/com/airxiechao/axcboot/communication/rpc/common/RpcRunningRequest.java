@@ -0,0 +1,188 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 被调用方排队中和执行中的请求，挂在 channel 属性上，收到取消帧时中断执行线程、销毁关联的进程并解除流的阻塞
+ *
+ * 排队中被取消的请求不再执行，服务可通过 attach 关联启动的子进程
+ */
+public class RpcRunningRequest {
+
+    private static final AttributeKey<Map<Long, RpcRunningRequest>> RUNNING_REQUESTS = AttributeKey.valueOf("rpc-running-requests");
+
+    private static final ThreadLocal<RpcRunningRequest> CURRENT = new ThreadLocal<>();
+
+    private Channel channel;
+    private long requestId;
+    private Thread thread;
+    private Process process;
+    private volatile boolean cancelled;
+    private boolean finished;
+
+    private RpcRunningRequest(Channel channel, long requestId){
+        this.channel = channel;
+        this.requestId = requestId;
+    }
+
+    /**
+     * 收到请求时登记，已登记时返回原记录，处理结束后须调用 finish
+     * @param channel
+     * @param requestId
+     * @return
+     */
+    public static RpcRunningRequest register(Channel channel, long requestId){
+        Map<Long, RpcRunningRequest> requests = requests(channel);
+        RpcRunningRequest request = requests.get(requestId);
+        if(null == request){
+            RpcRunningRequest created = new RpcRunningRequest(channel, requestId);
+            request = requests.putIfAbsent(requestId, created);
+            if(null == request){
+                request = created;
+                RpcDrain.onStart(channel);
+            }
+        }
+        return request;
+    }
+
+    public static boolean isRegistered(Channel channel, long requestId){
+        return requests(channel).containsKey(requestId);
+    }
+
+    /**
+     * 收到取消帧，请求已结束或不存在时忽略
+     * @param channel
+     * @param requestId
+     * @return 是否取消了请求
+     */
+    public static boolean cancel(Channel channel, long requestId){
+        RpcRunningRequest request = requests(channel).get(requestId);
+        if(null == request){
+            return false;
+        }
+
+        request.cancel();
+        RpcStreamEmitter.cancel(channel, requestId);
+        return true;
+    }
+
+    /**
+     * 连接关闭后没有调用方在等待，取消该连接上的所有请求
+     * @param channel
+     */
+    public static void cancelAll(Channel channel){
+        for(Long requestId : requests(channel).keySet()){
+            cancel(channel, requestId);
+        }
+    }
+
+    /**
+     * 连接上排队中和执行中的请求数
+     * @param channel
+     * @return
+     */
+    public static int count(Channel channel){
+        return requests(channel).size();
+    }
+
+    /**
+     * 当前线程正在执行的请求
+     * @return 不在执行请求时为 null
+     */
+    public static RpcRunningRequest current(){
+        return CURRENT.get();
+    }
+
+    /**
+     * 当前线程正在执行的请求是否已被取消，取消引起的中断等异常不必作为错误记录
+     * @return
+     */
+    public static boolean isCurrentCancelled(){
+        RpcRunningRequest request = current();
+        return null != request && request.isCancelled();
+    }
+
+    /**
+     * 将子进程关联到当前线程正在执行的请求，请求取消时销毁该进程
+     * @param process
+     */
+    public static void attachCurrent(Process process){
+        RpcRunningRequest request = current();
+        if(null != request){
+            request.attach(process);
+        }
+    }
+
+    private static Map<Long, RpcRunningRequest> requests(Channel channel){
+        Attribute<Map<Long, RpcRunningRequest>> attr = channel.attr(RUNNING_REQUESTS);
+        Map<Long, RpcRunningRequest> requests = attr.get();
+        if(null == requests){
+            Map<Long, RpcRunningRequest> created = new ConcurrentHashMap<>();
+            requests = attr.setIfAbsent(created);
+            if(null == requests){
+                requests = created;
+            }
+        }
+        return requests;
+    }
+
+    /**
+     * 在工作线程上开始执行
+     * @return 已被取消时返回 false，不应再执行
+     */
+    public synchronized boolean begin(){
+        if(cancelled){
+            return false;
+        }
+
+        thread = Thread.currentThread();
+        CURRENT.set(this);
+        return true;
+    }
+
+    public synchronized void attach(Process process){
+        this.process = process;
+        if(cancelled){
+            process.destroyForcibly();
+        }
+    }
+
+    private synchronized void cancel(){
+        if(finished){
+            return;
+        }
+
+        cancelled = true;
+        if(null != thread){
+            thread.interrupt();
+        }
+        if(null != process){
+            process.destroyForcibly();
+        }
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * 处理结束，清除执行线程上因取消留下的中断状态，线程可继续处理其它请求
+     */
+    public synchronized void finish(){
+        finished = true;
+        if(requests(channel).remove(requestId, this)){
+            RpcDrain.onEnd(channel, 1);
+        }
+        if(thread == Thread.currentThread()){
+            CURRENT.remove();
+            Thread.interrupted();
+        }
+        thread = null;
+        process = null;
+    }
+}
@@ -0,0 +1,280 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 被调用方的请求分发，客户端和服务端共用：按服务进入线程池，处理过期、取消、繁忙和排空，批量请求汇总为一个批量响应
+ */
+public class RpcServiceDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcServiceDispatcher.class);
+
+    private String name;
+    private RpcBulkhead executor;
+    private Map<String, RpcBulkhead> serviceBulkheads;
+    private RpcMetrics metrics;
+    private RpcTypeRegistry typeRegistry;
+    private Predicate<String> registered;
+    private ServiceInvoker invoker;
+    private RpcDrain drain;
+
+    /**
+     * @param name 日志和繁忙响应中的名称，如 rpc-server-[name]
+     * @param executor 没有单独线程池的服务使用的线程池
+     * @param serviceBulkheads
+     * @param metrics
+     * @param typeRegistry 解析批量中各项的服务类型编号
+     * @param registered 服务是否已注册，未注册的服务计入 RpcMetrics.UNKNOWN_TYPE
+     * @param invoker 在线程池中执行服务
+     * @param drain 排空时拒绝新请求，已登记的请求继续执行
+     */
+    public RpcServiceDispatcher(String name, RpcBulkhead executor, Map<String, RpcBulkhead> serviceBulkheads, RpcMetrics metrics,
+                                RpcTypeRegistry typeRegistry, Predicate<String> registered, ServiceInvoker invoker, RpcDrain drain){
+        this.name = name;
+        this.executor = executor;
+        this.serviceBulkheads = serviceBulkheads;
+        this.metrics = metrics;
+        this.typeRegistry = typeRegistry;
+        this.registered = registered;
+        this.invoker = invoker;
+        this.drain = drain;
+    }
+
+    public interface ServiceInvoker {
+        Response invoke(ChannelHandlerContext ctx, RpcMessage message);
+    }
+
+    /**
+     * 在服务的线程池中处理请求，线程池已满时直接返回繁忙响应，不在 IO 线程上执行服务
+     * @param ctx
+     * @param message
+     */
+    public void dispatch(ChannelHandlerContext ctx, RpcMessage message){
+        dispatch(ctx, message, RpcChannelWriter.of(ctx.channel())::write);
+    }
+
+    /**
+     * 在服务的线程池中处理请求，响应消息交给 responder
+     * @param ctx
+     * @param message
+     * @param responder
+     */
+    public void dispatch(ChannelHandlerContext ctx, RpcMessage message, Consumer<RpcMessage> responder){
+        RpcBulkhead bulkhead = null == message.getType() ? null : serviceBulkheads.get(message.getType());
+        if(null == bulkhead){
+            bulkhead = executor;
+        }
+
+        RpcServiceMetrics serviceMetrics = metrics.served(isRegistered(message.getType()) ? message.getType() : RpcMetrics.UNKNOWN_TYPE);
+        serviceMetrics.onRequest();
+        serviceMetrics.addBytesIn(message.getPayload().length);
+        // 排空前收到的批量中的项已经登记，继续执行
+        boolean accepted = RpcRunningRequest.isRegistered(ctx.channel(), message.getRequestId());
+        RpcRunningRequest running = RpcRunningRequest.register(ctx.channel(), message.getRequestId());
+        if(drain.isDraining() && !accepted){
+            running.finish();
+            logger.warn("{} draining, reject request [{}]", name, message.getRequestId());
+            serviceMetrics.onBusy();
+
+            Response response = new Response();
+            response.busy(name + " draining");
+            responder.accept(buildResponseMessage(ctx, message, response));
+            return;
+        }
+
+        long queuedNanos = System.nanoTime();
+        try{
+            bulkhead.execute(() -> {
+                try{
+                    this.handle(ctx, message, serviceMetrics, queuedNanos, running, responder);
+                }finally {
+                    running.finish();
+                }
+            });
+        }catch (RejectedExecutionException e){
+            running.finish();
+            logger.warn("service [{}] busy, reject request [{}]", message.getType(), message.getRequestId());
+            serviceMetrics.onBusy();
+
+            Response response = new Response();
+            response.busy("service [" + message.getType() + "] busy");
+            responder.accept(buildResponseMessage(ctx, message, response));
+        }
+    }
+
+    /**
+     * 处理批量请求，各项按服务分别进入线程池，全部完成后以一个批量响应返回，有序时前一项完成后再分发下一项
+     * @param ctx
+     * @param message
+     */
+    public void dispatchBatch(ChannelHandlerContext ctx, RpcMessage message){
+        List<RpcMessage> items = RpcUtil.getBatchItems(message);
+        RpcBatchCollector collector = new RpcBatchCollector(items.size(), responses -> {
+            RpcChannelWriter.of(ctx.channel()).write(RpcUtil.buildBatchResponseMessage(ctx, message.getRequestId(), responses));
+        });
+
+        long receivedNanos = System.nanoTime();
+        for(RpcMessage item : items){
+            RpcUtil.resolveType(item, typeRegistry);
+            item.startDeadline(receivedNanos);
+            // 有序批量中尚未分发的项也可以被取消，排空时也会继续执行
+            if(!drain.isDraining()){
+                RpcRunningRequest.register(ctx.channel(), item.getRequestId());
+            }
+        }
+
+        if(message.isOrdered()){
+            dispatchOrdered(ctx, items, 0, collector);
+            return;
+        }
+
+        for(int i = 0; i < items.size(); ++i){
+            dispatch(ctx, items.get(i), collector.slot(i));
+        }
+    }
+
+    private void dispatchOrdered(ChannelHandlerContext ctx, List<RpcMessage> items, int index, RpcBatchCollector collector){
+        if(index >= items.size()){
+            return;
+        }
+
+        Consumer<RpcMessage> slot = collector.slot(index);
+        dispatch(ctx, items.get(index), response -> {
+            slot.accept(response);
+            dispatchOrdered(ctx, items, index + 1, collector);
+        });
+    }
+
+    private boolean isRegistered(String type){
+        return null != type && registered.test(type);
+    }
+
+    /**
+     * 处理请求消息
+     * @param ctx
+     * @param message
+     * @param serviceMetrics
+     * @param queuedNanos 入队时间
+     * @param running 收到取消时中断
+     * @param responder
+     */
+    private void handle(ChannelHandlerContext ctx, RpcMessage message, RpcServiceMetrics serviceMetrics, long queuedNanos,
+                        RpcRunningRequest running, Consumer<RpcMessage> responder){
+        if(message.isExpired()){
+            responder.accept(buildExpiredMessage(ctx, message, serviceMetrics));
+            return;
+        }
+        if(!running.begin()){
+            responder.accept(buildCancelledMessage(ctx, message, serviceMetrics));
+            return;
+        }
+
+        long startNanos = serviceMetrics.onStart(queuedNanos);
+        Response response = invoker.invoke(ctx, message);
+        serviceMetrics.onEnd(startNanos, null != response && response.isSuccess());
+
+        RpcMessage responseMessage = buildResponseMessage(ctx, message, response);
+        if(running.isCancelled()){
+            responseMessage = buildCancelledMessage(ctx, message, serviceMetrics);
+        }
+        serviceMetrics.addBytesOut(responseMessage.getPayload().length);
+        responder.accept(responseMessage);
+    }
+
+    /**
+     * 执行普通服务，method 优先，都没有时返回无此服务的错误响应
+     * @param ctx
+     * @param message
+     * @param method
+     * @param handler
+     * @return
+     */
+    public static Response invokeHandler(ChannelHandlerContext ctx, RpcMessage message, RpcServiceMethod method, IRpcMessageHandler handler){
+        Response response;
+        if(null != method || null != handler){
+            try {
+                if(null != method){
+                    response = method.invoke(ctx, message, null);
+                }else{
+                    Map payloadMap = RpcUtil.deserializePayload(message, Map.class);
+                    response = handler.handle(ctx, payloadMap);
+                }
+            }catch (Throwable e){
+                if(!RpcRunningRequest.isCurrentCancelled()){
+                    logger.error("handle service [{}] error", message.getType(), e);
+                }
+
+                response = new Response();
+                response.error(e.getMessage());
+            }
+        }else{
+            response = new Response();
+            response.error("no service [" + message.getType() + "]");
+        }
+
+        return response;
+    }
+
+    /**
+     * 请求在排队中已过期，不再执行，返回带服务类型的丢弃响应
+     * @param ctx
+     * @param message
+     * @param serviceMetrics
+     * @return
+     */
+    private RpcMessage buildExpiredMessage(ChannelHandlerContext ctx, RpcMessage message, RpcServiceMetrics serviceMetrics){
+        logger.warn("service [{}] deadline exceeded, drop request [{}]", message.getType(), message.getRequestId());
+        serviceMetrics.onExpired();
+
+        Response response = new Response();
+        response.deadlineExceeded("service [" + message.getType() + "] deadline exceeded");
+        RpcMessage expiredMessage = buildResponseMessage(ctx, message, response);
+        expiredMessage.setType(message.getType());
+        expiredMessage.setFlags((byte)(expiredMessage.getFlags() | RpcFrame.FLAG_DEADLINE_EXCEEDED));
+        return expiredMessage;
+    }
+
+    /**
+     * 请求已被调用方取消，调用方不再等待，只用于结束批量请求中的该项
+     * @param ctx
+     * @param message
+     * @param serviceMetrics
+     * @return
+     */
+    private RpcMessage buildCancelledMessage(ChannelHandlerContext ctx, RpcMessage message, RpcServiceMetrics serviceMetrics){
+        logger.info("service [{}] request [{}] cancelled", message.getType(), message.getRequestId());
+        serviceMetrics.onCancelled();
+
+        Response response = new Response();
+        response.error("service [" + message.getType() + "] cancelled");
+        RpcMessage cancelledMessage = buildResponseMessage(ctx, message, response);
+        cancelledMessage.setFlags((byte)(cancelledMessage.getFlags() | RpcFrame.FLAG_CANCELLED));
+        return cancelledMessage;
+    }
+
+    /**
+     * 序列化响应，失败时返回错误消息
+     * @param ctx
+     * @param message
+     * @param response
+     * @return
+     */
+    public static RpcMessage buildResponseMessage(ChannelHandlerContext ctx, RpcMessage message, Response response){
+        try{
+            return RpcUtil.buildResponseMessage(ctx, message.getRequestId(), response);
+        }catch (Exception e){
+            logger.error("serialize service [{}] response error", message.getType(), e);
+            return RpcUtil.buildErrorMessage(message.getRequestId(), "serialize response error: " + e.getMessage());
+        }
+    }
+}
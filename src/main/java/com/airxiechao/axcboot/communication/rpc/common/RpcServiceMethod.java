@@ -0,0 +1,135 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.annotation.RpcService;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 注解声明的服务方法，注册时解析为统一签名 (ctx, payload, emitter) 的 MethodHandle，
+ * 调用时负载直接反序列化为参数类型，不经过 Map
+ */
+public class RpcServiceMethod {
+
+    private static final MethodType INVOKE_TYPE = MethodType.methodType(
+            Response.class, ChannelHandlerContext.class, Object.class, RpcStreamEmitter.class);
+
+    private String type;
+    private Type payloadType;
+    private boolean stream;
+    private MethodHandle handle;
+    private int maxConcurrency;
+    private int maxQueueSize;
+
+    private RpcServiceMethod(String type, Type payloadType, boolean stream, MethodHandle handle, int maxConcurrency, int maxQueueSize){
+        this.type = type;
+        this.payloadType = payloadType;
+        this.stream = stream;
+        this.handle = handle;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * 解析类中所有 @RpcService 方法
+     * @param cls
+     * @return
+     */
+    public static List<RpcServiceMethod> resolve(Class<?> cls){
+        List<RpcServiceMethod> methods = new ArrayList<>();
+        for(Method method : cls.getDeclaredMethods()){
+            RpcService service = method.getAnnotation(RpcService.class);
+            if(null != service){
+                methods.add(resolve(method, service));
+            }
+        }
+        return methods;
+    }
+
+    private static RpcServiceMethod resolve(Method method, RpcService service){
+        String name = method.getDeclaringClass().getName() + "." + method.getName();
+        if(!Modifier.isStatic(method.getModifiers())){
+            throw new IllegalArgumentException("rpc service method [" + name + "] must be static");
+        }
+        if(!Response.class.equals(method.getReturnType())){
+            throw new IllegalArgumentException("rpc service method [" + name + "] must return Response");
+        }
+
+        // 参数位置映射到统一签名中的位置
+        Class<?>[] paramTypes = method.getParameterTypes();
+        int[] reorder = new int[paramTypes.length];
+        Class<?>[] castTypes = new Class<?>[paramTypes.length];
+        Type payloadType = null;
+        boolean stream = false;
+        for(int i = 0; i < paramTypes.length; ++i){
+            if(ChannelHandlerContext.class.equals(paramTypes[i])){
+                reorder[i] = 0;
+                castTypes[i] = ChannelHandlerContext.class;
+            }else if(RpcStreamEmitter.class.equals(paramTypes[i])){
+                reorder[i] = 2;
+                castTypes[i] = RpcStreamEmitter.class;
+                stream = true;
+            }else if(null == payloadType){
+                reorder[i] = 1;
+                castTypes[i] = Object.class;
+                payloadType = method.getGenericParameterTypes()[i];
+            }else{
+                throw new IllegalArgumentException("rpc service method [" + name + "] has more than one payload parameter");
+            }
+        }
+
+        MethodHandle handle;
+        try {
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("rpc service method [" + name + "] is not accessible", e);
+        }
+        handle = handle.asType(MethodType.methodType(Response.class, castTypes));
+        handle = MethodHandles.permuteArguments(handle, INVOKE_TYPE, reorder);
+
+        return new RpcServiceMethod(service.value(), payloadType, stream, handle, service.maxConcurrency(), service.maxQueueSize());
+    }
+
+    /**
+     * 反序列化负载并调用
+     * @param ctx
+     * @param message
+     * @param emitter 非流式服务为 null
+     * @return
+     * @throws Throwable
+     */
+    public Response invoke(ChannelHandlerContext ctx, RpcMessage message, RpcStreamEmitter emitter) throws Throwable {
+        Object payload = null == payloadType ? null : RpcUtil.deserializePayload(message, payloadType);
+        return (Response) handle.invokeExact(ctx, payload, emitter);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public Type getPayloadType() {
+        return payloadType;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+}
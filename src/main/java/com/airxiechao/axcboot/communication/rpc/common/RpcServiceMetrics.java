@@ -0,0 +1,111 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个服务类型的统计，时间单位为微秒
+ */
+public class RpcServiceMetrics {
+
+    private LongAdder requests = new LongAdder();
+    private LongAdder errors = new LongAdder();
+    private LongAdder busy = new LongAdder();
+    private LongAdder expired = new LongAdder();
+    private LongAdder cancelled = new LongAdder();
+    private LongAdder bytesIn = new LongAdder();
+    private LongAdder bytesOut = new LongAdder();
+    private AtomicInteger inFlight = new AtomicInteger();
+    private RpcHistogram queueWait = new RpcHistogram();
+    private RpcHistogram latency = new RpcHistogram();
+
+    public void onRequest(){
+        requests.increment();
+    }
+
+    /**
+     * 线程池已满被拒绝
+     */
+    public void onBusy(){
+        busy.increment();
+    }
+
+    /**
+     * 请求过期未执行，被调用方在开始执行前丢弃，调用方在收到丢弃响应时计数
+     */
+    public void onExpired(){
+        expired.increment();
+    }
+
+    /**
+     * 请求被取消，调用方在取消时计数，被调用方在取消排队中或执行中的请求时计数
+     */
+    public void onCancelled(){
+        cancelled.increment();
+    }
+
+    /**
+     * 开始处理，记录排队时间
+     * @param queuedNanos 入队时的 System.nanoTime()
+     * @return 开始时间
+     */
+    public long onStart(long queuedNanos){
+        long now = System.nanoTime();
+        queueWait.record(TimeUnit.NANOSECONDS.toMicros(now - queuedNanos));
+        inFlight.incrementAndGet();
+        return now;
+    }
+
+    /**
+     * 开始处理，不记录排队时间
+     * @return 开始时间
+     */
+    public long onStart(){
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void onEnd(long startNanos, boolean success){
+        latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        inFlight.decrementAndGet();
+        if(!success){
+            errors.increment();
+        }
+    }
+
+    public void addBytesIn(long bytes){
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes){
+        bytesOut.add(bytes);
+    }
+
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    public RpcHistogram getLatency(){
+        return latency;
+    }
+
+    public Map<String, Object> snapshot(){
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("requests", requests.sum());
+        map.put("errors", errors.sum());
+        map.put("busy", busy.sum());
+        map.put("expired", expired.sum());
+        map.put("cancelled", cancelled.sum());
+        map.put("inFlight", (long) inFlight.get());
+        map.put("bytesIn", bytesIn.sum());
+        map.put("bytesOut", bytesOut.sum());
+        if(queueWait.getCount() > 0){
+            map.put("queueWaitMicros", queueWait.snapshot());
+        }
+        map.put("latencyMicros", latency.snapshot());
+        return map;
+    }
+}
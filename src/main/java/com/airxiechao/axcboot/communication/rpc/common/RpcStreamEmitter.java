@@ -0,0 +1,130 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 流式服务的分片发送，额度用尽时阻塞到调用方补充额度或连接关闭
+ */
+public class RpcStreamEmitter {
+
+    private static final AttributeKey<Map<Long, RpcStreamEmitter>> STREAM_EMITTERS = AttributeKey.valueOf("rpc-stream-emitters");
+
+    private static final long CREDIT_WAIT_MILLIS = 1000;
+
+    private ChannelHandlerContext ctx;
+    private long requestId;
+    private int credits;
+    private volatile boolean cancelled;
+
+    private RpcStreamEmitter(ChannelHandlerContext ctx, long requestId, int credits){
+        this.ctx = ctx;
+        this.requestId = requestId;
+        this.credits = credits;
+    }
+
+    /**
+     * 打开请求对应的流，服务结束后须调用 close
+     * @param ctx
+     * @param requestId
+     * @return
+     */
+    public static RpcStreamEmitter open(ChannelHandlerContext ctx, long requestId){
+        RpcStreamEmitter emitter = new RpcStreamEmitter(ctx, requestId, RpcContext.STREAM_WINDOW);
+        emitters(ctx.channel()).put(requestId, emitter);
+
+        // 打开前已收到取消
+        RpcRunningRequest running = RpcRunningRequest.current();
+        if(null != running && running.isCancelled()){
+            emitter.cancel();
+        }
+        return emitter;
+    }
+
+    /**
+     * 收到调用方的额度
+     * @param channel
+     * @param requestId
+     * @param credits
+     */
+    public static void grant(Channel channel, long requestId, int credits){
+        RpcStreamEmitter emitter = emitters(channel).get(requestId);
+        if(null != emitter){
+            emitter.grant(credits);
+        }
+    }
+
+    /**
+     * 调用方取消请求，之后的分片不再发送，等待额度的 emit 立即返回
+     * @param channel
+     * @param requestId
+     */
+    public static void cancel(Channel channel, long requestId){
+        RpcStreamEmitter emitter = emitters(channel).get(requestId);
+        if(null != emitter){
+            emitter.cancel();
+        }
+    }
+
+    private static Map<Long, RpcStreamEmitter> emitters(Channel channel){
+        Attribute<Map<Long, RpcStreamEmitter>> attr = channel.attr(STREAM_EMITTERS);
+        Map<Long, RpcStreamEmitter> emitters = attr.get();
+        if(null == emitters){
+            Map<Long, RpcStreamEmitter> created = new ConcurrentHashMap<>();
+            emitters = attr.setIfAbsent(created);
+            if(null == emitters){
+                emitters = created;
+            }
+        }
+        return emitters;
+    }
+
+    /**
+     * 发送一个分片，没有额度时阻塞
+     * @param chunk
+     * @throws Exception 连接关闭、请求被取消或等待被中断
+     */
+    public void emit(Object chunk) throws Exception {
+        synchronized (this){
+            while(credits <= 0 && !cancelled){
+                if(!ctx.channel().isActive()){
+                    throw new RpcException("rpc connection closed while streaming [" + requestId + "]");
+                }
+                wait(CREDIT_WAIT_MILLIS);
+            }
+            if(cancelled){
+                throw new RpcException("rpc stream cancelled [" + requestId + "]");
+            }
+            --credits;
+        }
+
+        if(!ctx.channel().isActive()){
+            throw new RpcException("rpc connection closed while streaming [" + requestId + "]");
+        }
+        RpcChannelWriter.of(ctx.channel()).write(RpcUtil.buildStreamChunkMessage(ctx, requestId, chunk));
+    }
+
+    private synchronized void grant(int credits){
+        this.credits += credits;
+        notifyAll();
+    }
+
+    private synchronized void cancel(){
+        cancelled = true;
+        notifyAll();
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    public void close(){
+        emitters(ctx.channel()).remove(requestId);
+    }
+}
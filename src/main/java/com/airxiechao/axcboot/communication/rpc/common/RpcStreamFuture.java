@@ -0,0 +1,123 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.Channel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 流式请求的结果
+ *
+ * 分片按到达顺序在工作线程上交给 consumer，每处理半个窗口向被调用方补充额度，
+ * 结束响应在所有分片处理完后才完成，收到或处理完分片时记录活动时间，用于空闲超时，
+ * 异常结束时通知被调用方取消
+ */
+public class RpcStreamFuture extends RpcClientFuture {
+
+    private Consumer<Object> consumer;
+    private Executor executor;
+    private Channel channel;
+    private long requestId;
+
+    private Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private AtomicBoolean draining = new AtomicBoolean();
+    private volatile long lastActiveNanos = System.nanoTime();
+    // 只在 drain 中访问
+    private int consumed;
+
+    public RpcStreamFuture(Consumer<Object> consumer, Executor executor){
+        this.consumer = consumer;
+        this.executor = executor;
+    }
+
+    public void bind(Channel channel, long requestId){
+        this.channel = channel;
+        this.requestId = requestId;
+    }
+
+    /**
+     * 流以异常结束时总是通知被调用方取消，包括 consumer 抛出异常和空闲超时，
+     * 否则不再补充额度，被调用方的 emit 会一直等待额度
+     * @param ex
+     * @return
+     */
+    @Override
+    public boolean completeExceptionally(Throwable ex) {
+        boolean completed = super.completeExceptionally(ex);
+        if(completed){
+            cancelRemote();
+        }
+        return completed;
+    }
+
+    /**
+     * 收到分片，在 IO 线程上调用
+     * @param message
+     */
+    public void onChunk(RpcMessage message){
+        lastActiveNanos = System.nanoTime();
+        enqueue(() -> deliver(message));
+    }
+
+    /**
+     * 最近一次收到或处理完分片的 System.nanoTime()，未收到分片时为创建时间
+     * @return
+     */
+    public long getLastActiveNanos(){
+        return lastActiveNanos;
+    }
+
+    /**
+     * 收到结束响应，在之前的分片都处理后执行
+     * @param completion
+     */
+    public void onEnd(Runnable completion){
+        enqueue(completion);
+    }
+
+    private void deliver(RpcMessage message){
+        if(isDone()){
+            return;
+        }
+
+        try{
+            consumer.accept(RpcUtil.deserializePayload(message, Object.class));
+        }catch (Exception e){
+            fail(e);
+            return;
+        }
+        lastActiveNanos = System.nanoTime();
+
+        if(++consumed >= RpcContext.STREAM_WINDOW / 2){
+            RpcChannelWriter.of(channel).write(RpcUtil.buildStreamCreditMessage(requestId, consumed));
+            consumed = 0;
+        }
+    }
+
+    private void enqueue(Runnable task){
+        tasks.add(task);
+        if(draining.compareAndSet(false, true)){
+            try{
+                executor.execute(this::drain);
+            }catch (RejectedExecutionException e){
+                draining.set(false);
+                fail(e);
+            }
+        }
+    }
+
+    private void drain(){
+        do{
+            Runnable task;
+            while(null != (task = tasks.poll())){
+                task.run();
+            }
+            draining.set(false);
+        }while(!tasks.isEmpty() && draining.compareAndSet(false, true));
+    }
+}
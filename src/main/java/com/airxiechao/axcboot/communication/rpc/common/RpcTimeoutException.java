@@ -0,0 +1,23 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+public class RpcTimeoutException extends RpcException {
+
+    private static final long serialVersionUID = 1L;
+
+    private String type;
+    private long timeoutMillis;
+
+    public RpcTimeoutException(String type, long requestId, long timeoutMillis) {
+        super("rpc request [" + type + "][" + requestId + "] timeout after " + timeoutMillis + " ms");
+        this.type = type;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
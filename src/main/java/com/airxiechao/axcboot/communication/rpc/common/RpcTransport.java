@@ -0,0 +1,98 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 传输层选择，请求 native 时优先使用 epoll，不可用时回退到 NIO
+ */
+public class RpcTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcTransport.class);
+
+    /**
+     * 当前平台是否可以使用 epoll
+     * @return
+     */
+    public static boolean isNativeAvailable(){
+        return Epoll.isAvailable();
+    }
+
+    /**
+     * 是否实际使用 epoll
+     * @param nativeTransport
+     * @param name 用于日志
+     * @return
+     */
+    public static boolean useNative(boolean nativeTransport, String name){
+        if(!nativeTransport){
+            return false;
+        }
+
+        if(!isNativeAvailable()){
+            logger.warn("[{}] native epoll transport unavailable, falls back to nio [{}]", name, Epoll.unavailabilityCause().toString());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 外部传入的 group 是否为 epoll
+     * @param group
+     * @return
+     */
+    public static boolean isNative(EventLoopGroup group){
+        return group instanceof EpollEventLoopGroup;
+    }
+
+    /**
+     * group 中的 IO 线程数
+     * @param group
+     * @return
+     */
+    public static int countEventLoops(EventLoopGroup group){
+        int count = 0;
+        for(EventExecutor ignored : group){
+            ++count;
+        }
+        return count;
+    }
+
+    public static EventLoopGroup newEventLoopGroup(boolean useNative, int numThreads){
+        if(useNative){
+            return new EpollEventLoopGroup(numThreads);
+        }else{
+            return new NioEventLoopGroup(numThreads);
+        }
+    }
+
+    public static Class<? extends ServerChannel> serverChannelClass(boolean useNative){
+        return useNative ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    public static Class<? extends SocketChannel> socketChannelClass(boolean useNative){
+        return useNative ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * 进程内本地传输的地址，按端口区分同一进程内的多个服务端
+     * @param port
+     * @return
+     */
+    public static LocalAddress localAddress(int port){
+        return new LocalAddress("rpc:" + port);
+    }
+}
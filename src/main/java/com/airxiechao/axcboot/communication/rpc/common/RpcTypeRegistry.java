@@ -0,0 +1,55 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本端服务类型到短整型编号的映射，握手时发给对端，对端请求时只需写编号
+ *
+ * 编号在进程内只增不减，已发出的映射始终有效
+ */
+public class RpcTypeRegistry {
+
+    public static final int MAX_TYPE_ID = Short.MAX_VALUE;
+
+    private Map<String, Short> ids = new ConcurrentHashMap<>();
+    private volatile String[] types = new String[16];
+    private short nextId = 1;
+
+    public synchronized short intern(String type){
+        Short id = ids.get(type);
+        if(null != id){
+            return id;
+        }
+
+        if(nextId > MAX_TYPE_ID || nextId <= 0){
+            return RpcFrame.TYPE_ID_LITERAL;
+        }
+
+        id = nextId++;
+        String[] current = types;
+        if(id >= current.length){
+            String[] grown = new String[Math.min(current.length * 2, MAX_TYPE_ID + 1)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        }
+        current[id] = type;
+        types = current;
+        ids.put(type, id);
+
+        return id;
+    }
+
+    public String getType(short id){
+        String[] current = types;
+        if(id <= 0 || id >= current.length){
+            return null;
+        }
+        return current[id];
+    }
+
+    public Map<String, Short> getIds(){
+        return new HashMap<>(ids);
+    }
+}
@@ -0,0 +1,496 @@
+package com.airxiechao.axcboot.communication.rpc.serializer;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.parser.ParserConfig;
+import com.alibaba.fastjson.parser.deserializer.JavaBeanDeserializer;
+import com.alibaba.fastjson.serializer.JavaBeanSerializer;
+import com.alibaba.fastjson.serializer.SerializeConfig;
+import com.alibaba.fastjson.util.FieldInfo;
+import com.alibaba.fastjson.util.JavaBeanInfo;
+import com.alibaba.fastjson.util.TypeUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑二进制序列化
+ *
+ * 每个值为 tag(1) + 内容，整数使用 zigzag varint，字符串和容器使用 varint 长度前缀。
+ * Java Bean 按 fastjson 识别的属性直接写成 map，属性读写经按类缓存的 MethodHandle，不生成中间的 JSONObject；
+ * 反序列化到有无参构造方法的 Bean 时直接按属性赋值，其余目标类型经 fastjson 转换。
+ */
+public class BinaryRpcSerializer implements RpcSerializer {
+
+    public static final byte ID = 2;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_TRUE = 1;
+    private static final byte TAG_FALSE = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_FLOAT = 5;
+    private static final byte TAG_DOUBLE = 6;
+    private static final byte TAG_DECIMAL = 7;
+    private static final byte TAG_BIGINT = 8;
+    private static final byte TAG_STRING = 9;
+    private static final byte TAG_BYTES = 10;
+    private static final byte TAG_DATE = 11;
+    private static final byte TAG_MAP = 12;
+    private static final byte TAG_LIST = 13;
+
+    private static final int MAX_DEPTH = 64;
+
+    private static final ClassValue<BeanWriter> BEAN_WRITERS = new ClassValue<BeanWriter>() {
+        @Override
+        protected BeanWriter computeValue(Class<?> type) {
+            return BeanWriter.of(type);
+        }
+    };
+
+    private static final ClassValue<BeanReader> BEAN_READERS = new ClassValue<BeanReader>() {
+        @Override
+        protected BeanReader computeValue(Class<?> type) {
+            return BeanReader.of(type);
+        }
+    };
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public byte[] serialize(Object obj) throws Exception {
+        ByteBuf buf = PooledByteBufAllocator.DEFAULT.heapBuffer(256);
+        try{
+            writeValue(buf, obj, 0);
+            return ByteBufUtil.getBytes(buf);
+        }finally {
+            buf.release();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Type type) throws Exception {
+        ByteBuf buf = Unpooled.wrappedBuffer(bytes);
+        Object value = readTyped(buf, type, 0);
+        if(buf.isReadable()){
+            throw new IllegalArgumentException("binary payload has trailing bytes: " + buf.readableBytes());
+        }
+        return (T)value;
+    }
+
+    private void writeValue(ByteBuf buf, Object value, int depth){
+        if(depth > MAX_DEPTH){
+            throw new IllegalArgumentException("binary payload nests too deep");
+        }
+
+        if(null == value){
+            buf.writeByte(TAG_NULL);
+        }else if(value instanceof String){
+            buf.writeByte(TAG_STRING);
+            writeString(buf, (String)value);
+        }else if(value instanceof Boolean){
+            buf.writeByte((Boolean)value ? TAG_TRUE : TAG_FALSE);
+        }else if(value instanceof Integer || value instanceof Short || value instanceof Byte){
+            buf.writeByte(TAG_INT);
+            writeVarLong(buf, zigzag(((Number)value).intValue()));
+        }else if(value instanceof Long){
+            buf.writeByte(TAG_LONG);
+            writeVarLong(buf, zigzag((Long)value));
+        }else if(value instanceof Double){
+            buf.writeByte(TAG_DOUBLE);
+            buf.writeDouble((Double)value);
+        }else if(value instanceof Float){
+            buf.writeByte(TAG_FLOAT);
+            buf.writeFloat((Float)value);
+        }else if(value instanceof BigDecimal){
+            buf.writeByte(TAG_DECIMAL);
+            writeString(buf, value.toString());
+        }else if(value instanceof BigInteger){
+            buf.writeByte(TAG_BIGINT);
+            writeString(buf, value.toString());
+        }else if(value instanceof Number){
+            buf.writeByte(TAG_LONG);
+            writeVarLong(buf, zigzag(((Number)value).longValue()));
+        }else if(value instanceof Character || value instanceof Enum){
+            buf.writeByte(TAG_STRING);
+            writeString(buf, value instanceof Enum ? ((Enum)value).name() : value.toString());
+        }else if(value instanceof byte[]){
+            byte[] bytes = (byte[])value;
+            buf.writeByte(TAG_BYTES);
+            writeVarLong(buf, bytes.length);
+            buf.writeBytes(bytes);
+        }else if(value instanceof Date){
+            buf.writeByte(TAG_DATE);
+            writeVarLong(buf, zigzag(((Date)value).getTime()));
+        }else if(value instanceof Map){
+            Map<?, ?> map = (Map<?, ?>)value;
+            buf.writeByte(TAG_MAP);
+            writeVarLong(buf, map.size());
+            for(Map.Entry<?, ?> entry : map.entrySet()){
+                writeValue(buf, entry.getKey(), depth + 1);
+                writeValue(buf, entry.getValue(), depth + 1);
+            }
+        }else if(value instanceof Collection){
+            Collection<?> list = (Collection<?>)value;
+            buf.writeByte(TAG_LIST);
+            writeVarLong(buf, list.size());
+            for(Object item : list){
+                writeValue(buf, item, depth + 1);
+            }
+        }else if(value.getClass().isArray()){
+            int length = Array.getLength(value);
+            buf.writeByte(TAG_LIST);
+            writeVarLong(buf, length);
+            for(int i = 0; i < length; ++i){
+                writeValue(buf, Array.get(value, i), depth + 1);
+            }
+        }else{
+            BeanWriter writer = BEAN_WRITERS.get(value.getClass());
+            if(null != writer){
+                writer.write(this, buf, value, depth);
+                return;
+            }
+
+            Object json = JSON.toJSON(value);
+            if(json == value){
+                throw new IllegalArgumentException("binary payload unsupported type: " + value.getClass().getName());
+            }
+            writeValue(buf, json, depth);
+        }
+    }
+
+    /**
+     * 按目标类型读取值，map 读到 Bean 时直接赋值
+     * @param buf
+     * @param type
+     * @param depth
+     * @return
+     */
+    private Object readTyped(ByteBuf buf, Type type, int depth){
+        if(type instanceof Class && buf.isReadable() && TAG_MAP == buf.getByte(buf.readerIndex())){
+            BeanReader reader = BEAN_READERS.get((Class<?>)type);
+            if(null != reader){
+                if(depth > MAX_DEPTH){
+                    throw new IllegalArgumentException("binary payload nests too deep");
+                }
+                buf.skipBytes(1);
+                return reader.read(this, buf, depth);
+            }
+        }
+
+        Object value = readValue(buf, depth);
+        if(null == value || (type instanceof Class && ((Class<?>)type).isInstance(value))){
+            return value;
+        }
+        return TypeUtils.cast(value, type, ParserConfig.getGlobalInstance());
+    }
+
+    private Object readValue(ByteBuf buf, int depth){
+        if(depth > MAX_DEPTH){
+            throw new IllegalArgumentException("binary payload nests too deep");
+        }
+
+        byte tag = buf.readByte();
+        switch (tag){
+            case TAG_NULL:
+                return null;
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_INT:
+                return (int)unzigzag(readVarLong(buf));
+            case TAG_LONG:
+                return unzigzag(readVarLong(buf));
+            case TAG_FLOAT:
+                return buf.readFloat();
+            case TAG_DOUBLE:
+                return buf.readDouble();
+            case TAG_DECIMAL:
+                return new BigDecimal(readString(buf));
+            case TAG_BIGINT:
+                return new BigInteger(readString(buf));
+            case TAG_STRING:
+                return readString(buf);
+            case TAG_BYTES:
+                byte[] bytes = new byte[readLength(buf)];
+                buf.readBytes(bytes);
+                return bytes;
+            case TAG_DATE:
+                return new Date(unzigzag(readVarLong(buf)));
+            case TAG_MAP:
+                int mapSize = readLength(buf);
+                JSONObject map = new JSONObject(Math.max(16, mapSize * 4 / 3 + 1));
+                for(int i = 0; i < mapSize; ++i){
+                    Object key = readValue(buf, depth + 1);
+                    map.put(null == key ? null : key.toString(), readValue(buf, depth + 1));
+                }
+                return map;
+            case TAG_LIST:
+                int listSize = readLength(buf);
+                List<Object> list = new JSONArray(listSize);
+                for(int i = 0; i < listSize; ++i){
+                    list.add(readValue(buf, depth + 1));
+                }
+                return list;
+            default:
+                throw new IllegalArgumentException("binary payload unknown tag: " + tag);
+        }
+    }
+
+    private void writeString(ByteBuf buf, String s){
+        int len = ByteBufUtil.utf8Bytes(s);
+        writeVarLong(buf, len);
+        ByteBufUtil.reserveAndWriteUtf8(buf, s, len);
+    }
+
+    private String readString(ByteBuf buf){
+        int len = readLength(buf);
+        String s = buf.toString(buf.readerIndex(), len, StandardCharsets.UTF_8);
+        buf.skipBytes(len);
+        return s;
+    }
+
+    private int readLength(ByteBuf buf){
+        long len = readVarLong(buf);
+        if(len < 0 || len > buf.readableBytes()){
+            throw new IllegalArgumentException("binary payload length out of range: " + len);
+        }
+        return (int)len;
+    }
+
+    private static long zigzag(long v){
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v){
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(ByteBuf buf, long v){
+        while((v & ~0x7FL) != 0){
+            buf.writeByte((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.writeByte((int)v);
+    }
+
+    private static long readVarLong(ByteBuf buf){
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            byte b = buf.readByte();
+            result |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("binary payload malformed varint");
+    }
+
+    private static MethodHandle unreflect(AccessibleObject member, boolean setter) throws IllegalAccessException {
+        member.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if(member instanceof java.lang.reflect.Method){
+            return lookup.unreflect((java.lang.reflect.Method)member);
+        }
+        java.lang.reflect.Field field = (java.lang.reflect.Field)member;
+        return setter ? lookup.unreflectSetter(field) : lookup.unreflectGetter(field);
+    }
+
+    /**
+     * Bean 的属性名和取值方法，属性名预先编码为 UTF-8
+     */
+    private static class BeanWriter {
+
+        private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+        private final byte[][] names;
+        private final MethodHandle[] getters;
+
+        private BeanWriter(byte[][] names, MethodHandle[] getters){
+            this.names = names;
+            this.getters = getters;
+        }
+
+        /**
+         * 仅处理 fastjson 按 Bean 序列化的类，其余返回 null
+         * @param type
+         * @return
+         */
+        static BeanWriter of(Class<?> type){
+            if(!(SerializeConfig.getGlobalInstance().getObjectWriter(type) instanceof JavaBeanSerializer)){
+                return null;
+            }
+
+            try{
+                List<FieldInfo> fields = TypeUtils.computeGetters(type, null);
+                byte[][] names = new byte[fields.size()][];
+                MethodHandle[] getters = new MethodHandle[fields.size()];
+                for(int i = 0; i < fields.size(); ++i){
+                    FieldInfo field = fields.get(i);
+                    names[i] = field.name.getBytes(StandardCharsets.UTF_8);
+                    AccessibleObject member = null != field.method ? field.method : field.field;
+                    getters[i] = unreflect(member, false).asType(GETTER_TYPE);
+                }
+                return new BeanWriter(names, getters);
+            }catch (Exception e){
+                return null;
+            }
+        }
+
+        void write(BinaryRpcSerializer serializer, ByteBuf buf, Object bean, int depth){
+            Object[] values = new Object[getters.length];
+            int size = 0;
+            for(int i = 0; i < getters.length; ++i){
+                try{
+                    values[i] = getters[i].invokeExact(bean);
+                }catch (Throwable e){
+                    throw new IllegalArgumentException("binary payload read property [" +
+                            new String(names[i], StandardCharsets.UTF_8) + "] error", e);
+                }
+                if(null != values[i]){
+                    ++size;
+                }
+            }
+
+            // 与 fastjson 一致，不写出 null 属性
+            buf.writeByte(TAG_MAP);
+            writeVarLong(buf, size);
+            for(int i = 0; i < values.length; ++i){
+                if(null == values[i]){
+                    continue;
+                }
+                buf.writeByte(TAG_STRING);
+                writeVarLong(buf, names[i].length);
+                buf.writeBytes(names[i]);
+                serializer.writeValue(buf, values[i], depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Bean 的无参构造方法和按属性名索引的赋值方法
+     */
+    private static class BeanReader {
+
+        private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+        private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+        private final MethodHandle constructor;
+        private final Map<String, Property> properties;
+
+        private BeanReader(MethodHandle constructor, Map<String, Property> properties){
+            this.constructor = constructor;
+            this.properties = properties;
+        }
+
+        /**
+         * 仅处理 fastjson 按 Bean 反序列化且有无参构造方法的类，其余返回 null
+         * @param type
+         * @return
+         */
+        static BeanReader of(Class<?> type){
+            if(type.isInterface() || !(ParserConfig.getGlobalInstance().getDeserializer(type) instanceof JavaBeanDeserializer)){
+                return null;
+            }
+
+            try{
+                JavaBeanInfo info = JavaBeanInfo.build(type, type, null);
+                if(null == info.defaultConstructor || 0 != info.defaultConstructorParameterSize){
+                    return null;
+                }
+                info.defaultConstructor.setAccessible(true);
+                MethodHandle constructor = MethodHandles.lookup()
+                        .unreflectConstructor(info.defaultConstructor).asType(CONSTRUCTOR_TYPE);
+
+                Map<String, Property> properties = new HashMap<>();
+                for(FieldInfo field : info.fields){
+                    if(field.getOnly){
+                        continue;
+                    }
+                    AccessibleObject member = null != field.method ? field.method : field.field;
+                    MethodHandle setter = unreflect(member, true).asType(SETTER_TYPE);
+                    properties.put(field.name, new Property(field.fieldType, field.fieldClass.isPrimitive(), setter));
+                }
+                return new BeanReader(constructor, properties);
+            }catch (Exception e){
+                return null;
+            }
+        }
+
+        /**
+         * 读取 map 的内容并赋值到新建的 Bean，未知属性跳过
+         * @param serializer
+         * @param buf 已读过 map 的 tag
+         * @param depth
+         * @return
+         */
+        Object read(BinaryRpcSerializer serializer, ByteBuf buf, int depth){
+            Object bean;
+            try{
+                bean = constructor.invokeExact();
+            }catch (Throwable e){
+                throw new IllegalArgumentException("binary payload create bean error", e);
+            }
+
+            int size = serializer.readLength(buf);
+            for(int i = 0; i < size; ++i){
+                Object key = serializer.readValue(buf, depth + 1);
+                Property property = null == key ? null : properties.get(key.toString());
+                if(null == property){
+                    serializer.readValue(buf, depth + 1);
+                    continue;
+                }
+
+                Object value = serializer.readTyped(buf, property.type, depth + 1);
+                if(null == value && property.primitive){
+                    continue;
+                }
+                try{
+                    property.setter.invokeExact(bean, value);
+                }catch (Throwable e){
+                    throw new IllegalArgumentException("binary payload write property [" + key + "] error", e);
+                }
+            }
+            return bean;
+        }
+    }
+
+    private static class Property {
+
+        private final Type type;
+        private final boolean primitive;
+        private final MethodHandle setter;
+
+        private Property(Type type, boolean primitive, MethodHandle setter){
+            this.type = type;
+            this.primitive = primitive;
+            this.setter = setter;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.airxiechao.axcboot.communication.rpc.serializer;
+
+import com.alibaba.fastjson.JSON;
+
+import java.lang.reflect.Type;
+
+public class JsonRpcSerializer implements RpcSerializer {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "json";
+    }
+
+    @Override
+    public byte[] serialize(Object obj) throws Exception {
+        return JSON.toJSONBytes(obj);
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Type type) throws Exception {
+        return JSON.parseObject(bytes, type);
+    }
+}
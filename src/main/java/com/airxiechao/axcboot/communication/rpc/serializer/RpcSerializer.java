@@ -0,0 +1,21 @@
+package com.airxiechao.axcboot.communication.rpc.serializer;
+
+import java.lang.reflect.Type;
+
+/**
+ * RPC 负载序列化
+ */
+public interface RpcSerializer {
+
+    /**
+     * 帧中的序列化标识
+     * @return
+     */
+    byte getId();
+
+    String getName();
+
+    byte[] serialize(Object obj) throws Exception;
+
+    <T> T deserialize(byte[] bytes, Type type) throws Exception;
+}
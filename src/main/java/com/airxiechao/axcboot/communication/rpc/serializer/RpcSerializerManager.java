@@ -0,0 +1,38 @@
+package com.airxiechao.axcboot.communication.rpc.serializer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class RpcSerializerManager {
+
+    private static RpcSerializerManager ourInstance = new RpcSerializerManager();
+
+    public static RpcSerializerManager getInstance() {
+        return ourInstance;
+    }
+
+    private Map<Byte, RpcSerializer> serializers = new ConcurrentHashMap<>();
+    private RpcSerializer defaultSerializer;
+
+    private RpcSerializerManager() {
+        defaultSerializer = new JsonRpcSerializer();
+        register(defaultSerializer);
+        register(new BinaryRpcSerializer());
+    }
+
+    public void register(RpcSerializer serializer){
+        serializers.put(serializer.getId(), serializer);
+    }
+
+    public RpcSerializer getSerializer(byte id){
+        return serializers.get(id);
+    }
+
+    /**
+     * 未协商时使用的序列化，兼容旧客户端
+     * @return
+     */
+    public RpcSerializer getDefaultSerializer(){
+        return defaultSerializer;
+    }
+}
@@ -0,0 +1,76 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 新连接的令牌桶限流，位于监听 channel 上，超出速率的连接在注册到 IO 线程前直接关闭
+ */
+@Sharable
+public class RpcAcceptLimiter extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RpcAcceptLimiter.class);
+
+    private String name;
+    private double permitsPerNano;
+    private double maxPermits;
+    private double permits;
+    private long lastRefillNanos = System.nanoTime();
+    private AtomicLong accepted = new AtomicLong();
+    private AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name 用于日志
+     * @param permitsPerSecond 每秒接受的连接数
+     * @param burst 可突发接受的连接数
+     */
+    public RpcAcceptLimiter(String name, int permitsPerSecond, int burst){
+        this.name = name;
+        this.permitsPerNano = permitsPerSecond / 1e9;
+        this.maxPermits = Math.max(1, burst);
+        this.permits = this.maxPermits;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        Channel child = (Channel) msg;
+        if(!tryAcquire()){
+            long count = rejected.incrementAndGet();
+            if(count % 1000 == 1){
+                logger.warn("rpc-server-[{}] accept rate exceeded, rejected {} connections", name, count);
+            }
+            child.unsafe().closeForcibly();
+            return;
+        }
+
+        accepted.incrementAndGet();
+        ctx.fireChannelRead(msg);
+    }
+
+    private synchronized boolean tryAcquire(){
+        long now = System.nanoTime();
+        permits = Math.min(maxPermits, permits + (now - lastRefillNanos) * permitsPerNano);
+        lastRefillNanos = now;
+
+        if(permits < 1){
+            return false;
+        }
+
+        permits -= 1;
+        return true;
+    }
+
+    public long getAccepted(){
+        return accepted.get();
+    }
+
+    public long getRejected(){
+        return rejected.get();
+    }
+}
@@ -1,25 +1,35 @@
 package com.airxiechao.axcboot.communication.rpc.server;
 
-import com.airxiechao.axcboot.communication.common.RequestId;
 import com.airxiechao.axcboot.communication.common.Response;
 import com.airxiechao.axcboot.communication.rpc.common.*;
-import com.alibaba.fastjson.JSON;
+import com.airxiechao.axcboot.communication.rpc.serializer.BinaryRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializerManager;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class RpcServer {
     private static final Logger logger = LoggerFactory.getLogger(RpcServer.class);
@@ -30,9 +40,24 @@ public class RpcServer {
     private int numIoThreads;
     private int numWorkerThreads;
     private ServerBootstrap serverBootstrap;
+    private EventLoopGroup acceptorGroup;
     private EventLoopGroup serverGroup;
-    private Channel serverChannel;
+    private List<Channel> serverChannels = new ArrayList<>();
+    private boolean nativeTransport;
+    private boolean localTransport;
+    private int numAcceptors = 1;
+    private RpcAcceptLimiter acceptLimiter;
     private Map<String, IRpcMessageHandler> serviceHandlers = new HashMap<>();
+    private Map<String, RpcServiceMethod> serviceMethods = new HashMap<>();
+    private Map<String, RpcBulkhead> serviceBulkheads = new ConcurrentHashMap<>();
+    private Map<Byte, RpcSerializer> serializers = new ConcurrentHashMap<>();
+    private RpcTypeRegistry typeRegistry = new RpcTypeRegistry();
+    private long requestTimeoutMillis = TimeUnit.SECONDS.toMillis(RpcContext.DEFAULT_REQUEST_TIMEOUT_SECS);
+    private boolean cancelOnTimeout;
+    private long drainGraceMillis = TimeUnit.SECONDS.toMillis(RpcContext.DEFAULT_DRAIN_GRACE_SECS);
+    private int writeBatchSize = RpcChannelWriter.DEFAULT_MAX_BATCH_SIZE;
+    private long writeBatchDelayMicros = RpcChannelWriter.DEFAULT_MAX_BATCH_DELAY_MICROS;
+    private int compressThreshold = RpcContext.DEFAULT_COMPRESS_THRESHOLD;
     private RpcServerMessageRouter router;
 
     public RpcServer(String name, String ip, int port, int numIoThreads, int numWorkerThreads){
@@ -42,6 +67,11 @@ public class RpcServer {
         this.serverPort = port;
         this.numIoThreads = numIoThreads;
         this.numWorkerThreads = numWorkerThreads;
+
+        registerSerializer(RpcSerializerManager.getInstance().getSerializer(BinaryRpcSerializer.ID));
+        registerSerializer(RpcSerializerManager.getInstance().getSerializer(JsonRpcSerializer.ID));
+
+        registerService(RpcMetrics.SERVICE_TYPE, (ctx, payload) -> router.getMetrics().toResponse());
     }
 
     public String getName(){
@@ -53,18 +83,31 @@ public class RpcServer {
     }
 
     public void start(){
-
-        registerHeartbeatService();
+        boolean useNative = RpcTransport.useNative(this.nativeTransport, "rpc-server-[" + this.name + "]");
+        boolean reusePort = useNative && this.numAcceptors > 1;
 
         serverBootstrap = new ServerBootstrap();
-        serverGroup = new NioEventLoopGroup(this.numIoThreads);
-        serverBootstrap.group(serverGroup);
+        serverGroup = RpcTransport.newEventLoopGroup(useNative, this.numIoThreads);
+        if(reusePort){
+            // 每个 acceptor 绑定一个 SO_REUSEPORT 监听，由内核分发新连接
+            acceptorGroup = RpcTransport.newEventLoopGroup(true, this.numAcceptors);
+            serverBootstrap.group(acceptorGroup, serverGroup);
+            serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }else{
+            serverBootstrap.group(serverGroup);
+        }
+        if(null != acceptLimiter){
+            serverBootstrap.handler(acceptLimiter);
+        }
         RpcMessageEncoder encoder = new RpcMessageEncoder();
-        router = new RpcServerMessageRouter(serviceHandlers, this.numWorkerThreads, this);
-        serverBootstrap.channel(NioServerSocketChannel.class).childHandler(
+        router = new RpcServerMessageRouter(serviceHandlers, serviceMethods, serviceBulkheads, this.numWorkerThreads, this);
+        router.setCancelOnTimeout(cancelOnTimeout);
+        serverBootstrap.channel(RpcTransport.serverChannelClass(useNative)).childHandler(
                 new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel socketChannel) throws Exception {
+                        RpcChannelWriter.attach(socketChannel, writeBatchSize, writeBatchDelayMicros);
+
                         ChannelPipeline pipe = socketChannel.pipeline();
                         pipe.addLast(new ReadTimeoutHandler(RpcContext.HEARTBEAT_PERIOD_SECS * 2));
                         pipe.addLast(new RpcMessageDecoder());
@@ -74,48 +117,397 @@ public class RpcServer {
                 }
         );
 
-        serverChannel = serverBootstrap.bind(this.serverIp, this.serverPort).channel();
-        logger.info("rpc-server-[{}] has started at {}:{}", this.name, this.serverIp, this.serverPort);
+        int numBinds = reusePort ? this.numAcceptors : 1;
+        for(int i = 0; i < numBinds; ++i){
+            serverChannels.add(serverBootstrap.bind(this.serverIp, this.serverPort).channel());
+        }
+        logger.info("rpc-server-[{}] has started at {}:{} with {} transport and {} acceptors",
+                this.name, this.serverIp, this.serverPort, useNative ? "epoll" : "nio", numBinds);
+
+        if(localTransport){
+            startLocal();
+        }
     }
 
+    /**
+     * 在同一 IO 线程组上绑定进程内本地传输，连接上不经过编解码，消息按引用传递
+     */
+    private void startLocal(){
+        ServerBootstrap localBootstrap = new ServerBootstrap();
+        localBootstrap.group(serverGroup).channel(LocalServerChannel.class).childHandler(
+                new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel localChannel) throws Exception {
+                        RpcChannelWriter.attach(localChannel, writeBatchSize, writeBatchDelayMicros);
+
+                        ChannelPipeline pipe = localChannel.pipeline();
+                        pipe.addLast(new ReadTimeoutHandler(RpcContext.HEARTBEAT_PERIOD_SECS * 2));
+                        pipe.addLast(router);
+                    }
+                }
+        );
+
+        serverChannels.add(localBootstrap.bind(RpcTransport.localAddress(this.serverPort)).syncUninterruptibly().channel());
+        logger.info("rpc-server-[{}] has started local transport at {}", this.name, RpcTransport.localAddress(this.serverPort));
+    }
+
+    /**
+     * 排空后停止，最多等待 setDrainGracePeriod 设置的宽限期
+     */
     public void stop(){
-        serverChannel.close();
-        serverGroup.shutdownGracefully();
+        stop(drainGraceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 排空后停止：不再接受新连接和新请求，通知客户端不再发送新请求，
+     * 等待处理中的请求和发给客户端的请求结束，到期后关闭连接，未结束的请求随之取消或失败
+     * @param gracePeriod 为 0 时立即关闭
+     * @param unit
+     */
+    public void stop(long gracePeriod, TimeUnit unit){
+        List<ChannelFuture> listenerCloseFutures = new ArrayList<>();
+        for(Channel serverChannel : serverChannels){
+            listenerCloseFutures.add(serverChannel.close());
+        }
+        serverChannels.clear();
+
+        RpcDrain drain = router.getDrain();
+        drain.drain();
+        if(!drain.awaitDrained(gracePeriod, unit)){
+            logger.warn("rpc-server-[{}] drain timeout, close with {} requests in flight", this.name, drain.getInFlight());
+        }
+        drain.close();
         router.closeGracefully();
+
+        // 监听关闭后停止才返回，同一端口或本地地址可立即重新绑定
+        for(ChannelFuture closeFuture : listenerCloseFutures){
+            closeFuture.awaitUninterruptibly();
+        }
+
+        if(null != acceptorGroup){
+            acceptorGroup.shutdownGracefully();
+        }
+        serverGroup.shutdownGracefully();
+        logger.info("rpc-server-[{}] has stopped", this.name);
+    }
+
+    /**
+     * 使用 native epoll 传输，不可用时自动回退到 NIO，需在 start 前设置
+     * @param nativeTransport
+     * @return
+     */
+    public RpcServer setNativeTransport(boolean nativeTransport){
+        this.nativeTransport = nativeTransport;
+        return this;
+    }
+
+    /**
+     * 同时监听进程内本地传输，供同一进程内的客户端连接，需在 start 前设置
+     * @param localTransport
+     * @return
+     */
+    public RpcServer setLocalTransport(boolean localTransport){
+        this.localTransport = localTransport;
+        return this;
+    }
+
+    /**
+     * 使用 SO_REUSEPORT 绑定多个监听，每个监听一个 acceptor 线程，仅 epoll 传输有效，需在 start 前设置
+     * @param numAcceptors
+     * @return
+     */
+    public RpcServer setReusePort(int numAcceptors){
+        this.numAcceptors = Math.max(1, numAcceptors);
+        return this;
+    }
+
+    /**
+     * 限制接受新连接的速率，超出的连接直接关闭，由客户端退避后重连，需在 start 前设置
+     * @param permitsPerSecond 每秒接受的连接数
+     * @param burst 可突发接受的连接数
+     * @return
+     */
+    public RpcServer setAcceptRate(int permitsPerSecond, int burst){
+        this.acceptLimiter = new RpcAcceptLimiter(this.name, permitsPerSecond, burst);
+        return this;
     }
 
     public RpcServer registerService(String type, IRpcMessageHandler handler){
+        typeRegistry.intern(type);
         serviceHandlers.put(type, handler);
         return this;
     }
 
-    private void registerHeartbeatService(){
-        registerService("ping", (ctx, payload) -> {
-            String clientName = (String)payload.get("name");
+    /**
+     * 注册服务，使用独立的线程池，与其它服务隔离
+     * @param type
+     * @param handler
+     * @param maxConcurrency 最大并发数
+     * @param maxQueueSize 最大排队数，超出时返回繁忙响应
+     * @return
+     */
+    public RpcServer registerService(String type, IRpcMessageHandler handler, int maxConcurrency, int maxQueueSize){
+        serviceBulkheads.put(type, new RpcBulkhead("rpc-server-["+this.name+"]-"+type, maxConcurrency, maxQueueSize));
+        return registerService(type, handler);
+    }
+
+    /**
+     * 注册类中 @RpcService 注解的静态方法，负载按参数类型反序列化
+     * @param cls
+     * @return
+     */
+    public RpcServer registerHandler(Class<?> cls){
+        for(RpcServiceMethod method : RpcServiceMethod.resolve(cls)){
+            if(method.isStream()){
+                throw new IllegalArgumentException("rpc-server-[" + this.name + "] does not support stream service [" + method.getType() + "]");
+            }
+
+            typeRegistry.intern(method.getType());
+            serviceMethods.put(method.getType(), method);
+            if(method.getMaxConcurrency() > 0){
+                serviceBulkheads.put(method.getType(), new RpcBulkhead("rpc-server-["+this.name+"]-"+method.getType(),
+                        method.getMaxConcurrency(), method.getMaxQueueSize()));
+            }
+        }
+        return this;
+    }
+
+    public RpcTypeRegistry getTypeRegistry(){
+        return typeRegistry;
+    }
+
+    /**
+     * 注册客户端握手时可以选择的序列化
+     * @param serializer
+     * @return
+     */
+    public RpcServer registerSerializer(RpcSerializer serializer){
+        RpcSerializerManager.getInstance().register(serializer);
+        serializers.put(serializer.getId(), serializer);
+        return this;
+    }
+
+    public RpcSerializer getSerializer(byte id){
+        return serializers.get(id);
+    }
+
+    /**
+     * 合并写的最大批量和最大延迟，延迟为 0 时在当前 event loop 周期结束前 flush
+     * @param maxBatchSize
+     * @param maxDelay
+     * @param unit
+     * @return
+     */
+    public RpcServer setWriteBatch(int maxBatchSize, long maxDelay, TimeUnit unit){
+        this.writeBatchSize = maxBatchSize;
+        this.writeBatchDelayMicros = unit.toMicros(maxDelay);
+        return this;
+    }
+
+    /**
+     * 协商压缩后，序列化后达到该字节数的负载压缩发送，小于等于 0 不压缩
+     * @param threshold
+     * @return
+     */
+    public RpcServer setCompressThreshold(int threshold){
+        this.compressThreshold = threshold;
+        return this;
+    }
 
-            logger.info("rpc-server-[{}] receives heartbeat from [{}]", this.name, clientName);
-            router.updateRpcContext(clientName, ctx, new Date());
+    public int getCompressThreshold(){
+        return compressThreshold;
+    }
 
-            Response resp = new Response();
-            resp.success();
+    /**
+     * stop 时等待处理中的请求结束的宽限期
+     * @param gracePeriod
+     * @param unit
+     * @return
+     */
+    public RpcServer setDrainGracePeriod(long gracePeriod, TimeUnit unit){
+        this.drainGraceMillis = unit.toMillis(gracePeriod);
+        return this;
+    }
 
-            return resp;
-        });
+    /**
+     * 未指定超时的请求使用的默认超时，也是未指定空闲超时的流式请求的空闲超时，
+     * 默认 RpcContext.DEFAULT_REQUEST_TIMEOUT_SECS，小于等于 0 不超时
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public RpcServer setRequestTimeout(long timeout, TimeUnit unit){
+        this.requestTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    /**
+     * 请求超时后是否通知被调用方取消，默认只在本端放弃等待，流式请求超时总是通知，需在 start 前设置
+     * @param cancelOnTimeout
+     * @return
+     */
+    public RpcServer setCancelOnTimeout(boolean cancelOnTimeout){
+        this.cancelOnTimeout = cancelOnTimeout;
+        return this;
+    }
+
+    /**
+     * 在线客户端最近一次心跳的往返时间，未知时为 -1
+     * @return
+     */
+    public Map<String, Long> getClientRtts(){
+        return router.getClientRtts();
+    }
+
+    /**
+     * 各服务类型的请求超时次数
+     * @return
+     */
+    public Map<String, Long> getTimeoutCounts(){
+        return router.getTimeoutCounts();
+    }
+
+    /**
+     * 按服务类型的请求数、错误数、繁忙数、处理中数、字节数、排队和处理耗时分布（微秒）
+     * @return served 为本端处理的请求，called 为本端发出的请求
+     */
+    public Map<String, Object> getMetrics(){
+        return router.getMetrics().snapshot();
+    }
+
+    /**
+     * 接受和因限流拒绝的连接数，未设置限流时为空
+     * @return
+     */
+    public Map<String, Long> getAcceptCounts(){
+        Map<String, Long> counts = new HashMap<>();
+        if(null != acceptLimiter){
+            counts.put("accepted", acceptLimiter.getAccepted());
+            counts.put("rejected", acceptLimiter.getRejected());
+        }
+        return counts;
     }
 
     public Response sendToClient(String client, String type, Map payload){
-        return sendToClient(client, type, JSON.toJSONString(payload));
+        return RpcUtil.await(sendToClientAsync(client, type, payload));
     }
 
     public Response sendToClient(String client, String type, String payload){
-        try{
-            String requestId = RequestId.next();
-            RpcMessage message = new RpcMessage(requestId, type, payload);
-            RpcFuture future = this.router.sendToClient(client, message);
-            return future.get();
-        }catch (Exception e) {
-            throw new RpcException(e);
-        }
+        return RpcUtil.await(sendToClientAsync(client, type, payload));
+    }
+
+    public Response sendToClient(String client, String type, Map payload, long timeout, TimeUnit unit){
+        return RpcUtil.await(sendToClientAsync(client, type, payload, timeout, unit));
+    }
+
+    public Response sendToClient(String client, String type, String payload, long timeout, TimeUnit unit){
+        return RpcUtil.await(sendToClientAsync(client, type, payload, timeout, unit));
+    }
+
+    public CompletableFuture<Response> sendToClientAsync(String client, String type, Map payload){
+        return doSendToClientAsync(client, type, payload, 0);
+    }
+
+    public CompletableFuture<Response> sendToClientAsync(String client, String type, String payload){
+        return doSendToClientAsync(client, type, payload, 0);
+    }
+
+    public CompletableFuture<Response> sendToClientAsync(String client, String type, Map payload, long timeout, TimeUnit unit){
+        return doSendToClientAsync(client, type, payload, unit.toMillis(timeout));
+    }
+
+    public CompletableFuture<Response> sendToClientAsync(String client, String type, String payload, long timeout, TimeUnit unit){
+        return doSendToClientAsync(client, type, payload, unit.toMillis(timeout));
+    }
+
+    public RpcFanoutFuture sendToClients(Collection<String> clients, String type, Map payload){
+        return this.router.sendToClients(clients, type, payload, requestTimeoutMillis);
+    }
+
+    public RpcFanoutFuture sendToClients(Collection<String> clients, String type, String payload){
+        return this.router.sendToClients(clients, type, payload, requestTimeoutMillis);
+    }
+
+    public RpcFanoutFuture sendToClients(Collection<String> clients, String type, Map payload, long timeout, TimeUnit unit){
+        return this.router.sendToClients(clients, type, payload, unit.toMillis(timeout));
+    }
+
+    public RpcFanoutFuture sendToClients(Collection<String> clients, String type, String payload, long timeout, TimeUnit unit){
+        return this.router.sendToClients(clients, type, payload, unit.toMillis(timeout));
+    }
+
+    /**
+     * 在一个帧中向客户端发送批量请求，客户端全部处理后以一个帧返回
+     * @param client
+     * @param batch
+     * @return 与批量中各项顺序一致，每项独立完成
+     */
+    public List<CompletableFuture<Response>> sendBatchToClient(String client, RpcBatch batch){
+        return new ArrayList<>(this.router.sendBatchToClient(client, batch, requestTimeoutMillis));
+    }
+
+    public List<CompletableFuture<Response>> sendBatchToClient(String client, RpcBatch batch, long timeout, TimeUnit unit){
+        return new ArrayList<>(this.router.sendBatchToClient(client, batch, unit.toMillis(timeout)));
+    }
+
+    /**
+     * 调用客户端的流式服务，分片按顺序在工作线程上交给 consumer，consumer 处理较慢时客户端暂停发送
+     * @param client
+     * @param type
+     * @param payload
+     * @param consumer
+     * @return 所有分片处理后以结束响应完成，空闲超时为 setRequestTimeout 设置的默认超时
+     */
+    public CompletableFuture<Response> sendStreamToClient(String client, String type, Map payload, Consumer<Object> consumer){
+        return this.router.sendStreamToClient(client, type, payload, consumer, requestTimeoutMillis);
+    }
+
+    /**
+     * 调用客户端的流式服务，超过空闲时间没有收到或处理完分片时超时，持续输出的流不受总时长限制
+     * @param client
+     * @param type
+     * @param payload
+     * @param consumer
+     * @param idleTimeout
+     * @param unit
+     * @return
+     */
+    public CompletableFuture<Response> sendStreamToClient(String client, String type, Map payload, Consumer<Object> consumer, long idleTimeout, TimeUnit unit){
+        return this.router.sendStreamToClient(client, type, payload, consumer, unit.toMillis(idleTimeout));
+    }
+
+    /**
+     * 向所有在线客户端发送
+     * @param type
+     * @param payload
+     * @return
+     */
+    public RpcFanoutFuture broadcast(String type, Map payload){
+        return sendToClients(getActiveClients(), type, payload);
+    }
+
+    public RpcFanoutFuture broadcast(String type, String payload){
+        return sendToClients(getActiveClients(), type, payload);
+    }
+
+    public RpcFanoutFuture broadcast(String type, Map payload, long timeout, TimeUnit unit){
+        return sendToClients(getActiveClients(), type, payload, timeout, unit);
+    }
+
+    public RpcFanoutFuture broadcast(String type, String payload, long timeout, TimeUnit unit){
+        return sendToClients(getActiveClients(), type, payload, timeout, unit);
+    }
+
+    /**
+     * 异步发送，回调在 IO 线程上执行，耗时回调应使用 *Async 方法切换线程
+     * @param client
+     * @param type
+     * @param payload
+     * @param timeoutMillis
+     * @return
+     */
+    private CompletableFuture<Response> doSendToClientAsync(String client, String type, Object payload, long timeoutMillis){
+        return this.router.sendToClient(client, type, payload, timeoutMillis > 0 ? timeoutMillis : requestTimeoutMillis);
     }
 
 }
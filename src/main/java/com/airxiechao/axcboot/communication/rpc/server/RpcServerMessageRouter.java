@@ -2,7 +2,8 @@ package com.airxiechao.axcboot.communication.rpc.server;
 
 import com.airxiechao.axcboot.communication.common.Response;
 import com.airxiechao.axcboot.communication.rpc.common.*;
-import com.alibaba.fastjson.JSON;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -11,78 +12,83 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-
-import static com.airxiechao.axcboot.communication.rpc.util.RpcUtil.buildResponseType;
+import java.util.function.Consumer;
 
 @Sharable
 public class RpcServerMessageRouter extends ChannelInboundHandlerAdapter {
     private static final Logger logger = LoggerFactory.getLogger(RpcServerMessageRouter.class);
 
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
     private Map<String, IRpcMessageHandler> serviceHandlers;
-    private ThreadPoolExecutor executor;
-    private Map<String, RpcContext> contexts = new ConcurrentHashMap<>();
-    private Map<String, RpcClientFuture> pendingRequests = new ConcurrentHashMap<>();
+    private Map<String, RpcServiceMethod> serviceMethods;
+    private RpcBulkhead executor;
+    private RpcBulkhead streamExecutor;
+    private Map<String, RpcBulkhead> serviceBulkheads;
+    private Map<String, RpcChannelPool> contexts = new ConcurrentHashMap<>();
+    private RpcDrain drain = new RpcDrain();
+    private RpcServiceDispatcher dispatcher;
+    private RpcRequestExpiry expiry;
+    private RpcRequestSender sender;
+    private RpcMetrics metrics = new RpcMetrics();
     private RpcServer rpcServer;
 
-    public RpcServerMessageRouter(Map<String, IRpcMessageHandler> serviceHandlers, int numWorkerThreads, RpcServer rpcServer){
+    public RpcServerMessageRouter(Map<String, IRpcMessageHandler> serviceHandlers, Map<String, RpcServiceMethod> serviceMethods,
+                                  Map<String, RpcBulkhead> serviceBulkheads, int numWorkerThreads, RpcServer rpcServer){
         this.serviceHandlers = serviceHandlers;
+        this.serviceMethods = serviceMethods;
+        this.serviceBulkheads = serviceBulkheads;
         this.rpcServer = rpcServer;
 
-        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(1000);
-        ThreadFactory factory = new ThreadFactory() {
-
-            AtomicInteger seq = new AtomicInteger();
-
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread t = new Thread(r);
-                t.setName("rpc-server-["+rpcServer.getName()+"]-" + seq.getAndIncrement());
-                t.setDaemon(true);
-                return t;
-            }
+        this.executor = new RpcBulkhead("rpc-server-["+rpcServer.getName()+"]", numWorkerThreads, DEFAULT_QUEUE_SIZE);
+        // 流的分片在单独的线程池上交给 consumer，不与请求处理争用，每个流同时只有一个分发任务
+        this.streamExecutor = new RpcBulkhead("rpc-server-["+rpcServer.getName()+"]-stream", numWorkerThreads);
+        this.dispatcher = new RpcServiceDispatcher("rpc-server-["+rpcServer.getName()+"]", executor, serviceBulkheads, metrics,
+                rpcServer.getTypeRegistry(), this::isRegistered, this::invokeService, drain);
 
-        };
-        this.executor = new ThreadPoolExecutor(numWorkerThreads, numWorkerThreads * 100, 30, TimeUnit.SECONDS,
-                queue, factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.expiry = new RpcRequestExpiry();
+        this.sender = new RpcRequestSender(metrics, expiry);
     }
 
     public List<String> getActiveClients(){
         List<String> clients = new ArrayList<>();
-        for(Map.Entry<String, RpcContext> entry : contexts.entrySet()){
+        for(Map.Entry<String, RpcChannelPool> entry : contexts.entrySet()){
             String name = entry.getKey();
-            RpcContext context = entry.getValue();
+            RpcChannelPool pool = entry.getValue();
 
-            if(!context.isHeartbeatExpired()){
+            if(pool.isActive()){
                 clients.add(name);
             }
         }
         return clients;
     }
 
+    /**
+     * 在线客户端最近一次心跳的往返时间，未知时为 -1
+     * @return
+     */
+    public Map<String, Long> getClientRtts(){
+        Map<String, Long> rtts = new HashMap<>();
+        for(Map.Entry<String, RpcChannelPool> entry : contexts.entrySet()){
+            if(entry.getValue().isActive()){
+                rtts.put(entry.getKey(), entry.getValue().getRttMicros());
+            }
+        }
+        return rtts;
+    }
+
     /**
      * 获取客户端
      * @param ctx
      * @return
      */
     private String getClientByContext(ChannelHandlerContext ctx){
-        Optional<String> opt = contexts.entrySet().stream()
-                .filter(c->ctx.equals(c.getValue().getContext()))
-                .map(c->c.getKey())
-                .findFirst();
-
-        String client = null;
-        if(opt.isPresent()) {
-            client = opt.get();
-        }
-
-        return client;
+        return ctx.channel().attr(RpcContext.CLIENT_NAME).get();
     }
 
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
-
+        drain.bind(ctx.channel());
     }
 
     @Override
@@ -92,9 +98,7 @@ public class RpcServerMessageRouter extends ChannelInboundHandlerAdapter {
 
         logger.info("[{}] inactive", client);
 
-        if(null != client){
-            closeClient(client);
-        }
+        closeClient(ctx, client);
     }
 
     @Override
@@ -105,13 +109,135 @@ public class RpcServerMessageRouter extends ChannelInboundHandlerAdapter {
 
         RpcMessage message = (RpcMessage) msg;
 
-        if(message.isResponse()){
-            this.handleResponseMessage(ctx, message);
+        switch (message.getKind()){
+            case RpcFrame.KIND_HANDSHAKE:
+                this.handleHandshakeMessage(ctx, message);
+                break;
+            case RpcFrame.KIND_RESPONSE:
+            case RpcFrame.KIND_ERROR:
+                this.handleResponseMessage(ctx, message);
+                break;
+            case RpcFrame.KIND_REQUEST:
+                if(RpcLegacyFrame.PING_TYPE.equals(message.getType()) && RpcLegacyFrame.isLegacy(ctx.channel())){
+                    this.handleLegacyHeartbeatMessage(ctx, message);
+                    break;
+                }
+                RpcUtil.resolveType(message, rpcServer.getTypeRegistry());
+                message.startDeadline(System.nanoTime());
+                dispatcher.dispatch(ctx, message);
+                break;
+            case RpcFrame.KIND_HEARTBEAT:
+                this.handleHeartbeatMessage(ctx, message);
+                break;
+            case RpcFrame.KIND_BATCH:
+                dispatcher.dispatchBatch(ctx, message);
+                break;
+            case RpcFrame.KIND_CANCEL:
+                RpcRunningRequest.cancel(ctx.channel(), message.getRequestId());
+                break;
+            case RpcFrame.KIND_DRAIN:
+                logger.info("rpc-server-[{}] peer draining, stop sending new requests on [{}]", rpcServer.getName(), ctx.channel().remoteAddress());
+                RpcContext.setDraining(ctx);
+                break;
+            case RpcFrame.KIND_BATCH_RESPONSE:
+                for(RpcMessage item : RpcUtil.getBatchItems(message)){
+                    this.handleResponseMessage(ctx, item);
+                }
+                break;
+            case RpcFrame.KIND_STREAM_CHUNK:
+                this.handleStreamChunkMessage(ctx, message);
+                break;
+            default:
+                logger.warn("unsupported rpc message kind [{}]", message.getKind());
+                break;
+        }
+    }
+
+    /**
+     * 处理握手消息，从客户端提供的序列化中选择第一个支持的，协商压缩，并交换双方的服务类型编号
+     * @param ctx
+     * @param message
+     */
+    private void handleHandshakeMessage(ChannelHandlerContext ctx, RpcMessage message) throws Exception {
+        Map payload = RpcUtil.deserializePayload(message, Map.class);
+
+        RpcSerializer chosen = null;
+        Object ids = payload.get("serializers");
+        if(ids instanceof Collection){
+            for(Object id : (Collection)ids){
+                if(id instanceof Number){
+                    chosen = rpcServer.getSerializer(((Number) id).byteValue());
+                    if(null != chosen){
+                        break;
+                    }
+                }
+            }
+        }
+
+        if(null == chosen){
+            chosen = RpcContext.getSerializer(ctx);
+        }
+        RpcContext.setSerializer(ctx, chosen);
+        RpcContext.setPeerTypeIds(ctx, RpcUtil.parseTypeIds(payload.get("types")));
+
+        Map<String, Object> reply = new HashMap<>();
+        Object compressions = payload.get("compressions");
+        if(compressions instanceof Collection && ((Collection)compressions).contains(RpcCompression.DEFLATE)){
+            RpcContext.setCompressThreshold(ctx, rpcServer.getCompressThreshold());
+            reply.put("compression", RpcCompression.DEFLATE);
+        }
+        reply.put("serializer", chosen.getId());
+        reply.put("types", rpcServer.getTypeRegistry().getIds());
+        ctx.writeAndFlush(RpcUtil.buildHandshakeMessage(message.getRequestId(), reply));
+    }
+
+    /**
+     * 在 IO 线程上处理客户端心跳，立即返回 pong 并回 ping 一次以测量往返时间
+     * @param ctx
+     * @param message
+     */
+    private void handleHeartbeatMessage(ChannelHandlerContext ctx, RpcMessage message){
+        if(message.isPong()){
+            String clientName = getClientByContext(ctx);
+            RpcChannelPool pool = null == clientName ? null : contexts.get(clientName);
+            RpcContext rpcContext = null == pool ? null : pool.get(ctx);
+            if(null != rpcContext){
+                rpcContext.setRttMicros(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - RpcUtil.getHeartbeatTimestamp(message)));
+            }
+            return;
+        }
+
+        String clientName = RpcUtil.getPingName(message);
+        if(null == clientName){
+            logger.warn("rpc-server-[{}] receives heartbeat without client name", rpcServer.getName());
+            return;
+        }
+
+        logger.debug("rpc-server-[{}] receives heartbeat from [{}]", rpcServer.getName(), clientName);
+        updateRpcContext(clientName, ctx, new Date());
+
+        RpcChannelWriter writer = RpcChannelWriter.of(ctx.channel());
+        writer.write(RpcUtil.buildPongMessage(message));
+        writer.write(RpcUtil.buildPingMessage(System.nanoTime(), rpcServer.getName()));
+    }
+
+    /**
+     * 旧客户端的心跳为 ping 请求，负载含客户端名称
+     * @param ctx
+     * @param message
+     */
+    private void handleLegacyHeartbeatMessage(ChannelHandlerContext ctx, RpcMessage message) throws Exception {
+        Map payload = RpcUtil.deserializePayload(message, Map.class);
+        Object clientName = null == payload ? null : payload.get("name");
+
+        Response response = new Response();
+        if(clientName instanceof String){
+            logger.debug("rpc-server-[{}] receives legacy heartbeat from [{}]", rpcServer.getName(), clientName);
+            updateRpcContext((String)clientName, ctx, new Date());
         }else{
-            this.executor.execute(() -> {
-                this.handleServiceMessage(ctx, message);
-            });
+            response.error("no client name");
         }
+        RpcChannelWriter.of(ctx.channel()).write(RpcServiceDispatcher.buildResponseMessage(ctx, message, response));
     }
 
     /**
@@ -120,14 +246,43 @@ public class RpcServerMessageRouter extends ChannelInboundHandlerAdapter {
      * @param message
      */
     private void handleResponseMessage(ChannelHandlerContext ctx, RpcMessage message) throws Exception {
-        RpcClientFuture clientFuture = pendingRequests.remove(message.getRequestId());
+        if(message.isDeadlineExceeded()){
+            metrics.called(null == message.getType() ? RpcMetrics.UNKNOWN_TYPE : message.getType()).onExpired();
+        }
+
+        RpcFuture clientFuture = RpcPendingRequests.of(ctx.channel()).remove(message.getRequestId());
         if (clientFuture == null) {
-            logger.error("future not found with type {}", message.getType());
+            if(message.isDeadlineExceeded() || message.isCancelled()){
+                // 调用方已超时或取消，被调用方随后丢弃或中断了该请求
+                return;
+            }
+            logger.error("future not found with request id {}", message.getRequestId());
+            return;
+        }
+
+        if(clientFuture instanceof RpcStreamFuture){
+            ((RpcStreamFuture) clientFuture).onEnd(() -> {
+                try{
+                    completeResponse(clientFuture, message);
+                }catch (Exception e){
+                    // 已在 completeResponse 中让请求失败
+                }
+            });
+            return;
+        }
+
+        completeResponse(clientFuture, message);
+    }
+
+    private void completeResponse(RpcFuture clientFuture, RpcMessage message) throws Exception {
+        clientFuture.recordBytesIn(message.getPayload().length);
+        if(RpcFrame.KIND_ERROR == message.getKind()){
+            clientFuture.fail(new RpcException(RpcUtil.getErrorMessage(message)));
             return;
         }
 
         try{
-            Response response = JSON.parseObject(message.getPayload(), Response.class);
+            Response response = RpcUtil.deserializePayload(message, Response.class);
             clientFuture.success(response);
         }catch (Exception e){
             logger.error("parse response message error", e);
@@ -138,78 +293,214 @@ public class RpcServerMessageRouter extends ChannelInboundHandlerAdapter {
     }
 
     /**
-     * 处理请求消息
+     * 处理流式响应的分片
      * @param ctx
      * @param message
      */
-    private void handleServiceMessage(ChannelHandlerContext ctx, RpcMessage message){
-        IRpcMessageHandler handler = serviceHandlers.get(message.getType());
-        Response response;
-        if(null != handler){
-            try {
-                String payload = message.getPayload();
-                Map payloadMap = JSON.parseObject(payload, Map.class);
-                response = handler.handle(ctx, payloadMap);
-            }catch (Exception e){
-                logger.error("handle service [{}] error", message.getType(), e);
-
-                response = new Response();
-                response.error(e.getMessage());
-            }
-        }else{
-            response = new Response();
-            response.error("no service [" + message.getType() + "]");
+    private void handleStreamChunkMessage(ChannelHandlerContext ctx, RpcMessage message){
+        RpcFuture clientFuture = RpcPendingRequests.of(ctx.channel()).get(message.getRequestId());
+        if(!(clientFuture instanceof RpcStreamFuture)){
+            logger.warn("stream not found with request id {}", message.getRequestId());
+            return;
         }
 
-        ctx.writeAndFlush(new RpcMessage(message.getRequestId(), buildResponseType(message.getType()), JSON.toJSONString(response)));
+        clientFuture.recordBytesIn(message.getPayload().length);
+        ((RpcStreamFuture) clientFuture).onChunk(message);
     }
 
+    private boolean isRegistered(String type){
+        return serviceHandlers.containsKey(type) || serviceMethods.containsKey(type);
+    }
+
+    private Response invokeService(ChannelHandlerContext ctx, RpcMessage message){
+        return RpcServiceDispatcher.invokeHandler(ctx, message, serviceMethods.get(message.getType()), serviceHandlers.get(message.getType()));
+    }
+
+    /**
+     * 记录客户端连接的心跳，同一客户端可以有多个连接
+     * @param name
+     * @param ctx
+     * @param date
+     */
     public void updateRpcContext(String name, ChannelHandlerContext ctx, Date date){
-        RpcContext rpcContext = contexts.get(name);
-        if(null == rpcContext){
-            rpcContext = new RpcContext();
+        ctx.channel().attr(RpcContext.CLIENT_NAME).set(name);
+
+        // 在 map 的锁内加入，避免与 closeClient 移除空连接池交错
+        contexts.compute(name, (k, pool) -> {
+            if(null == pool){
+                pool = new RpcChannelPool();
+            }
+            RpcContext rpcContext = pool.getOrAdd(ctx);
+            if(null != date){
+                rpcContext.setLastHeartbeatTime(date);
+            }
+            return pool;
+        });
+    }
+
+    /**
+     * 发送请求，超时或完成后从等待列表移除
+     * @param client
+     * @param type
+     * @param payload
+     * @param timeoutMillis 小于等于 0 不超时，到期以 RpcTimeoutException 失败
+     * @return
+     */
+    public RpcClientFuture sendToClient(String client, String type, Object payload, long timeoutMillis) {
+        ChannelHandlerContext ctx = getActiveContext(client);
+        if(null == ctx){
+            return failedFuture(client, new Exception("rpc-client-["+client+"] connection not active"));
         }
 
-        rpcContext.setContext(ctx);
-        if(null != date){
-            rpcContext.setLastHeartbeatTime(date);
+        RpcPayload rpcPayload;
+        try{
+            rpcPayload = RpcUtil.serializeRequestPayload(RpcUtil.getRequestSerializer(ctx, payload), payload);
+        }catch (Exception e){
+            return failedFuture(client, e);
+        }
+
+        return send(ctx, client, type, rpcPayload, timeoutMillis);
+    }
+
+    /**
+     * 发送流式请求，分片按顺序在工作线程上交给 consumer
+     * @param client
+     * @param type
+     * @param payload
+     * @param consumer
+     * @param timeoutMillis 空闲超时，小于等于 0 不超时，每次收到或处理完分片都重新计时
+     * @return 所有分片处理后以结束响应完成
+     */
+    public RpcStreamFuture sendStreamToClient(String client, String type, Object payload, Consumer<Object> consumer, long timeoutMillis) {
+        RpcStreamFuture streamFuture = new RpcStreamFuture(consumer, streamExecutor);
+        streamFuture.setClientName(client);
+
+        ChannelHandlerContext ctx = getActiveContext(client);
+        if(null == ctx){
+            streamFuture.fail(new Exception("rpc-client-["+client+"] connection not active"));
+            return streamFuture;
         }
 
-        this.contexts.put(name, rpcContext);
+        RpcPayload rpcPayload;
+        try{
+            rpcPayload = RpcUtil.serializeRequestPayload(RpcUtil.getRequestSerializer(ctx, payload), payload);
+        }catch (Exception e){
+            streamFuture.fail(e);
+            return streamFuture;
+        }
+
+        send(ctx, streamFuture, type, rpcPayload, timeoutMillis);
+        return streamFuture;
     }
 
-    public RpcFuture sendToClient(String client, RpcMessage message) {
+    /**
+     * 向多个客户端发送同一请求，每种序列化只序列化和压缩一次，各连接共享序列化后的负载
+     * @param clients
+     * @param type
+     * @param payload
+     * @param timeoutMillis 小于等于 0 不超时
+     * @return
+     */
+    public RpcFanoutFuture sendToClients(Collection<String> clients, String type, Object payload, long timeoutMillis) {
+        Map<Byte, RpcPayload> encoded = new HashMap<>();
+        Map<String, RpcClientFuture> futures = new LinkedHashMap<>();
+        for(String client : clients){
+            ChannelHandlerContext ctx = getActiveContext(client);
+            if(null == ctx){
+                futures.put(client, failedFuture(client, new Exception("rpc-client-["+client+"] connection not active")));
+                continue;
+            }
 
-        ChannelHandlerContext ctx = null;
-        RpcContext rpcContext = this.contexts.get(client);
-        if(null != rpcContext){
-            if(!rpcContext.isHeartbeatExpired()){
-                ctx = rpcContext.getContext();
+            RpcSerializer serializer = RpcUtil.getRequestSerializer(ctx, payload);
+            RpcPayload rpcPayload = encoded.get(serializer.getId());
+            if(null == rpcPayload){
+                try{
+                    rpcPayload = RpcUtil.serializeRequestPayload(serializer, payload);
+                }catch (Exception e){
+                    futures.put(client, failedFuture(client, e));
+                    continue;
+                }
+                encoded.put(serializer.getId(), rpcPayload);
             }
+
+            futures.put(client, send(ctx, client, type, rpcPayload, timeoutMillis));
+        }
+
+        return new RpcFanoutFuture(futures);
+    }
+
+    private ChannelHandlerContext getActiveContext(String client){
+        RpcChannelPool pool = this.contexts.get(client);
+        if(null == pool){
+            return null;
         }
+        return pool.select();
+    }
+
+    private RpcClientFuture failedFuture(String client, Throwable error){
+        RpcClientFuture clientFuture = new RpcClientFuture();
+        clientFuture.setClientName(client);
+        clientFuture.fail(error);
+        return clientFuture;
+    }
 
+    private RpcClientFuture send(ChannelHandlerContext ctx, String client, String type, RpcPayload payload, long timeoutMillis){
         RpcClientFuture clientFuture = new RpcClientFuture();
-        ChannelHandlerContext ctx1 = ctx;
-        if (ctx1 != null) {
+        clientFuture.setClientName(client);
+        return send(ctx, clientFuture, type, payload, timeoutMillis);
+    }
+
+    private RpcClientFuture send(ChannelHandlerContext ctx, RpcClientFuture clientFuture, String type, RpcPayload payload, long timeoutMillis){
+        return sender.send(ctx, clientFuture, type, requestId -> RpcUtil.buildMessage(ctx, requestId, type, payload), timeoutMillis);
+    }
 
+    /**
+     * 在一个帧中向客户端发送批量请求，每项有独立的请求号、超时和结果
+     * @param client
+     * @param batch
+     * @param timeoutMillis 小于等于 0 不超时
+     * @return 与批量中各项顺序一致
+     */
+    public List<RpcClientFuture> sendBatchToClient(String client, RpcBatch batch, long timeoutMillis) {
+        List<RpcClientFuture> futures = new ArrayList<>();
+        for(int i = 0; i < batch.size(); ++i){
+            RpcClientFuture clientFuture = new RpcClientFuture();
             clientFuture.setClientName(client);
-            ctx1.channel().eventLoop().execute(() -> {
-                pendingRequests.put(message.getRequestId(), clientFuture);
-                ctx1.writeAndFlush(message);
-            });
-        } else {
-            clientFuture.fail(new Exception("rpc-client-["+client+"] connection not active"));
+            futures.add(clientFuture);
         }
-        return clientFuture;
+
+        ChannelHandlerContext ctx = getActiveContext(client);
+        if(null == ctx){
+            Exception error = new Exception("rpc-client-["+client+"] connection not active");
+            futures.forEach(clientFuture -> clientFuture.fail(error));
+            return futures;
+        }
+
+        return sender.sendBatch(ctx, batch, futures, timeoutMillis);
+    }
+
+    public Map<String, Long> getTimeoutCounts(){
+        return expiry.getTimeoutCounts();
+    }
+
+    public void setCancelOnTimeout(boolean cancelOnTimeout){
+        expiry.setCancelOnTimeout(cancelOnTimeout);
+    }
+
+    public RpcMetrics getMetrics(){
+        return metrics;
+    }
+
+    public RpcDrain getDrain(){
+        return drain;
     }
 
     public void closeGracefully() {
-        this.executor.shutdown();
-        try {
-            this.executor.awaitTermination(10, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
+        this.executor.shutdown(10, TimeUnit.SECONDS);
+        this.streamExecutor.shutdown(10, TimeUnit.SECONDS);
+        for(RpcBulkhead bulkhead : serviceBulkheads.values()){
+            bulkhead.shutdown(10, TimeUnit.SECONDS);
         }
-        this.executor.shutdownNow();
     }
 
     @Override
@@ -221,21 +512,22 @@ public class RpcServerMessageRouter extends ChannelInboundHandlerAdapter {
     }
 
     /**
-     * 关闭客户端连接
+     * 关闭客户端连接，只处理该连接上的请求，客户端的其它连接不受影响
+     * @param ctx
      * @param client
      */
-    private void closeClient(String client){
-        List<String> futureKeys = pendingRequests.entrySet().stream()
-                .filter(c->client.equals(c.getValue().getClientName()))
-                .map(c->c.getKey())
-                .collect(Collectors.toList());
+    private void closeClient(ChannelHandlerContext ctx, String client){
+        RpcRunningRequest.cancelAll(ctx.channel());
+        RpcPendingRequests.of(ctx.channel()).failAll(new Exception("rpc-client-["+client+"] connection not active error"));
 
-        for(String key : futureKeys){
-            RpcClientFuture future = pendingRequests.get(key);
-            future.fail(new Exception("rpc-client-["+client+"] connection not active error"));
-            pendingRequests.remove(key);
+        if(null == client){
+            return;
         }
 
-        updateRpcContext(client, null, null);
+        RpcChannelPool pool = contexts.get(client);
+        if(null != pool){
+            pool.remove(ctx);
+            contexts.computeIfPresent(client, (k, v) -> v.isEmpty() ? null : v);
+        }
     }
 }
@@ -1,11 +1,411 @@
 package com.airxiechao.axcboot.communication.rpc.util;
 
-import static com.airxiechao.axcboot.communication.rpc.common.RpcMessage.RESPONSE_SUFFIX;
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.common.RpcCompression;
+import com.airxiechao.axcboot.communication.rpc.common.RpcContext;
+import com.airxiechao.axcboot.communication.rpc.common.RpcException;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessage;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessageDecoder;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessageEncoder;
+import com.airxiechao.axcboot.communication.rpc.common.RpcPayload;
+import com.airxiechao.axcboot.communication.rpc.common.RpcTypeRegistry;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializerManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
 
 public class RpcUtil {
 
-    public static String buildResponseType(String requestType){
-        return requestType + RESPONSE_SUFFIX;
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+
+    /**
+     * 阻塞等待异步调用结果
+     * @param future
+     * @return
+     */
+    public static Response await(CompletableFuture<Response> future){
+        try{
+            return future.get();
+        }catch (ExecutionException e){
+            if(e.getCause() instanceof RpcException){
+                throw (RpcException)e.getCause();
+            }
+            throw new RpcException(e.getCause());
+        }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new RpcException(e);
+        }
+    }
+
+    /**
+     * 使用连接协商的序列化构造请求，String 负载视为已序列化的 JSON 文本
+     * @param ctx
+     * @param requestId
+     * @param type
+     * @param payload
+     * @return
+     * @throws Exception
+     */
+    public static RpcMessage buildMessage(ChannelHandlerContext ctx, long requestId, String type, Object payload) throws Exception {
+        if(RpcContext.isLocal(ctx) && !(payload instanceof String)){
+            RpcMessage message = new RpcMessage(KIND_REQUEST, requestId, type, RpcContext.getSerializer(ctx).getId(), EMPTY_PAYLOAD);
+            message.setValue(payload);
+            return message;
+        }
+        return buildMessage(ctx, requestId, type, serializeRequestPayload(getRequestSerializer(ctx, payload), payload));
+    }
+
+    /**
+     * 使用已序列化的负载构造请求，多个连接可共享同一负载
+     * @param ctx
+     * @param requestId
+     * @param type
+     * @param payload
+     * @return
+     */
+    public static RpcMessage buildMessage(ChannelHandlerContext ctx, long requestId, String type, RpcPayload payload){
+        RpcMessage message = new RpcMessage(KIND_REQUEST, requestId, type, payload.getSerializer(), payload.getBytes());
+        message.setTypeId(RpcContext.getPeerTypeId(ctx, type));
+        compressPayload(ctx, message, payload);
+        return message;
+    }
+
+    public static RpcSerializer getRequestSerializer(ChannelHandlerContext ctx, Object payload){
+        if(payload instanceof String){
+            return RpcSerializerManager.getInstance().getSerializer(JsonRpcSerializer.ID);
+        }
+        return RpcContext.getSerializer(ctx);
+    }
+
+    public static RpcPayload serializeRequestPayload(RpcSerializer serializer, Object payload) throws Exception {
+        if(payload instanceof String){
+            return new RpcPayload(serializer.getId(), ((String) payload).getBytes(StandardCharsets.UTF_8));
+        }
+        return new RpcPayload(serializer.getId(), serializer.serialize(payload));
+    }
+
+    public static RpcMessage buildResponseMessage(ChannelHandlerContext ctx, long requestId, Response response) throws Exception {
+        RpcSerializer serializer = RpcContext.getSerializer(ctx);
+        if(RpcContext.isLocal(ctx)){
+            RpcMessage message = new RpcMessage(KIND_RESPONSE, requestId, null, serializer.getId(), EMPTY_PAYLOAD);
+            message.setValue(response);
+            return message;
+        }
+
+        RpcPayload payload = new RpcPayload(serializer.getId(), serializer.serialize(response));
+        RpcMessage message = new RpcMessage(KIND_RESPONSE, requestId, null, payload.getSerializer(), payload.getBytes());
+        compressPayload(ctx, message, payload);
+        return message;
+    }
+
+    /**
+     * 流式响应的分片，使用连接协商的序列化
+     * @param ctx
+     * @param requestId
+     * @param chunk
+     * @return
+     * @throws Exception
+     */
+    public static RpcMessage buildStreamChunkMessage(ChannelHandlerContext ctx, long requestId, Object chunk) throws Exception {
+        RpcSerializer serializer = RpcContext.getSerializer(ctx);
+        if(RpcContext.isLocal(ctx)){
+            RpcMessage message = new RpcMessage(KIND_STREAM_CHUNK, requestId, null, serializer.getId(), EMPTY_PAYLOAD);
+            message.setValue(chunk);
+            return message;
+        }
+
+        RpcPayload payload = new RpcPayload(serializer.getId(), serializer.serialize(chunk));
+        RpcMessage message = new RpcMessage(KIND_STREAM_CHUNK, requestId, null, payload.getSerializer(), payload.getBytes());
+        compressPayload(ctx, message, payload);
+        return message;
+    }
+
+    /**
+     * 批量请求中的一项，不单独压缩，由批量帧整体压缩
+     * @param ctx
+     * @param requestId
+     * @param type
+     * @param payload
+     * @return
+     * @throws Exception
+     */
+    public static RpcMessage buildBatchItemMessage(ChannelHandlerContext ctx, long requestId, String type, Object payload) throws Exception {
+        if(RpcContext.isLocal(ctx) && !(payload instanceof String)){
+            return buildMessage(ctx, requestId, type, payload);
+        }
+
+        RpcPayload rpcPayload = serializeRequestPayload(getRequestSerializer(ctx, payload), payload);
+        RpcMessage message = new RpcMessage(KIND_REQUEST, requestId, type, rpcPayload.getSerializer(), rpcPayload.getBytes());
+        message.setTypeId(RpcContext.getPeerTypeId(ctx, type));
+        return message;
+    }
+
+    public static RpcMessage buildBatchMessage(ChannelHandlerContext ctx, long requestId, List<RpcMessage> items, boolean ordered){
+        RpcMessage message = buildBatchFrame(ctx, KIND_BATCH, requestId, items);
+        if(ordered){
+            message.setFlags((byte)(message.getFlags() | FLAG_ORDERED));
+        }
+        return message;
+    }
+
+    public static RpcMessage buildBatchResponseMessage(ChannelHandlerContext ctx, long requestId, List<RpcMessage> responses){
+        return buildBatchFrame(ctx, KIND_BATCH_RESPONSE, requestId, responses);
+    }
+
+    /**
+     * 批量帧的负载为 | count(4) | frame... |，本地传输时直接引用各项消息
+     * @param ctx
+     * @param kind
+     * @param requestId
+     * @param items
+     * @return
+     */
+    private static RpcMessage buildBatchFrame(ChannelHandlerContext ctx, byte kind, long requestId, List<RpcMessage> items){
+        byte serializer = RpcContext.getSerializer(ctx).getId();
+        if(RpcContext.isLocal(ctx)){
+            RpcMessage message = new RpcMessage(kind, requestId, null, serializer, EMPTY_PAYLOAD);
+            message.setValue(items);
+            return message;
+        }
+
+        long length = 4;
+        for(RpcMessage item : items){
+            length += RpcMessageEncoder.frameLength(item);
+        }
+        if(length > MAX_FRAME_LENGTH){
+            throw new RpcException("rpc batch too large: " + length);
+        }
+
+        ByteBuf buf = Unpooled.buffer((int)length);
+        buf.writeInt(items.size());
+        for(RpcMessage item : items){
+            RpcMessageEncoder.writeFrame(buf, item);
+        }
+
+        RpcPayload payload = new RpcPayload(serializer, buf.array());
+        RpcMessage message = new RpcMessage(kind, requestId, null, serializer, payload.getBytes());
+        compressPayload(ctx, message, payload);
+        return message;
+    }
+
+    /**
+     * 解析批量帧中的各项消息
+     * @param message
+     * @return
+     */
+    public static List<RpcMessage> getBatchItems(RpcMessage message){
+        if(message.getValue() instanceof List){
+            return (List<RpcMessage>) message.getValue();
+        }
+
+        ByteBuf buf = Unpooled.wrappedBuffer(getPayloadBytes(message));
+        int count = buf.readableBytes() < 4 ? -1 : buf.readInt();
+        if(count < 0 || count > buf.readableBytes() / (LENGTH_FIELD_LENGTH + FIXED_HEADER_LENGTH)){
+            throw new RpcException("rpc batch count invalid: " + count);
+        }
+
+        List<RpcMessage> items = new ArrayList<>(count);
+        for(int i = 0; i < count; ++i){
+            int length = buf.readableBytes() < LENGTH_FIELD_LENGTH ? -1 : buf.readInt();
+            if(length < FIXED_HEADER_LENGTH || length > buf.readableBytes()){
+                throw new RpcException("rpc batch item length invalid: " + length);
+            }
+            items.add(RpcMessageDecoder.decodeFrame(buf.readSlice(length)));
+        }
+        return items;
+    }
+
+    public static RpcMessage buildDrainMessage(){
+        return new RpcMessage(KIND_DRAIN, 0, null, JsonRpcSerializer.ID, EMPTY_PAYLOAD);
+    }
+
+    public static RpcMessage buildCancelMessage(long requestId){
+        return new RpcMessage(KIND_CANCEL, requestId, null, JsonRpcSerializer.ID, EMPTY_PAYLOAD);
+    }
+
+    public static RpcMessage buildStreamCreditMessage(long requestId, int credits){
+        byte[] payload = new byte[]{
+                (byte)(credits >>> 24), (byte)(credits >>> 16), (byte)(credits >>> 8), (byte)credits
+        };
+        return new RpcMessage(KIND_STREAM_CREDIT, requestId, null, JsonRpcSerializer.ID, payload);
+    }
+
+    public static int getStreamCredits(RpcMessage message){
+        byte[] payload = message.getPayload();
+        if(payload.length < 4){
+            return 0;
+        }
+        return (payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16 | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF);
+    }
+
+    /**
+     * 心跳 ping，不经过序列化
+     * @param timestamp 发送时的 System.nanoTime()
+     * @param name 发送方名称
+     * @return
+     */
+    public static RpcMessage buildPingMessage(long timestamp, String name){
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + nameBytes.length);
+        payload.putLong(timestamp).put(nameBytes);
+        return new RpcMessage(KIND_HEARTBEAT, 0, null, JsonRpcSerializer.ID, payload.array());
+    }
+
+    /**
+     * 心跳 pong，返回 ping 的时间戳
+     * @param ping
+     * @return
+     */
+    public static RpcMessage buildPongMessage(RpcMessage ping){
+        byte[] payload = new byte[8];
+        System.arraycopy(ping.getPayload(), 0, payload, 0, Math.min(8, ping.getPayload().length));
+        RpcMessage message = new RpcMessage(KIND_HEARTBEAT, ping.getRequestId(), null, JsonRpcSerializer.ID, payload);
+        message.setFlags(FLAG_PONG);
+        return message;
+    }
+
+    public static long getHeartbeatTimestamp(RpcMessage message){
+        return message.getPayload().length < 8 ? 0 : ByteBuffer.wrap(message.getPayload()).getLong(0);
+    }
+
+    public static String getPingName(RpcMessage message){
+        byte[] payload = message.getPayload();
+        if(payload.length <= 8){
+            return null;
+        }
+        return new String(payload, 8, payload.length - 8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 连接已协商压缩且负载达到阈值时使用压缩后的负载
+     * @param ctx
+     * @param message
+     * @param payload
+     */
+    private static void compressPayload(ChannelHandlerContext ctx, RpcMessage message, RpcPayload payload){
+        int threshold = RpcContext.getCompressThreshold(ctx);
+        if(threshold <= 0 || payload.getBytes().length < threshold){
+            return;
+        }
+
+        byte[] compressed = payload.getCompressed();
+        if(null != compressed){
+            message.setPayload(compressed);
+            message.setFlags((byte)(message.getFlags() | FLAG_COMPRESSED));
+        }
+    }
+
+    /**
+     * 无法构造响应时的协议级错误，负载为 UTF-8 错误信息
+     * @param requestId
+     * @param error
+     * @return
+     */
+    public static RpcMessage buildErrorMessage(long requestId, String error){
+        byte[] payload = (null == error ? "" : error).getBytes(StandardCharsets.UTF_8);
+        return new RpcMessage(KIND_ERROR, requestId, null, JsonRpcSerializer.ID, payload);
+    }
+
+    public static String getErrorMessage(RpcMessage message){
+        return new String(getPayloadBytes(message), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 握手消息固定使用 JSON，保证双方都能解析
+     * @param requestId
+     * @param payload
+     * @return
+     * @throws Exception
+     */
+    public static RpcMessage buildHandshakeMessage(long requestId, Map<String, Object> payload) throws Exception {
+        RpcSerializer serializer = RpcSerializerManager.getInstance().getSerializer(JsonRpcSerializer.ID);
+        return new RpcMessage(KIND_HANDSHAKE, requestId, null, serializer.getId(), serializer.serialize(payload));
+    }
+
+    /**
+     * 解析握手中对端的服务类型编号
+     * @param value
+     * @return
+     */
+    public static Map<String, Short> parseTypeIds(Object value){
+        Map<String, Short> typeIds = new HashMap<>();
+        if(value instanceof Map){
+            ((Map<?, ?>) value).forEach((type, id) -> {
+                if(null != type && id instanceof Number){
+                    typeIds.put(type.toString(), ((Number) id).shortValue());
+                }
+            });
+        }
+        return typeIds;
+    }
+
+    /**
+     * 按本端服务类型编号还原请求的服务类型
+     * @param message
+     * @param registry
+     * @return
+     */
+    public static String resolveType(RpcMessage message, RpcTypeRegistry registry){
+        if(null == message.getType() && message.getTypeId() > 0){
+            message.setType(registry.getType(message.getTypeId()));
+        }
+        return message.getType();
+    }
+
+    /**
+     * 消息负载，压缩的负载先解压，本地传输的负载在此时序列化
+     * @param message
+     * @return
+     */
+    public static byte[] getPayloadBytes(RpcMessage message){
+        if(null != message.getValue()){
+            try {
+                return RpcSerializerManager.getInstance().getSerializer(message.getSerializer()).serialize(message.getValue());
+            } catch (Exception e) {
+                throw new RpcException("serialize local payload error", e);
+            }
+        }
+        if(message.isCompressed()){
+            return RpcCompression.decompress(message.getPayload(), MAX_FRAME_LENGTH);
+        }
+        return message.getPayload();
+    }
+
+    /**
+     * 按消息帧中的序列化标识反序列化负载
+     * @param message
+     * @param type
+     * @param <T>
+     * @return
+     * @throws Exception
+     */
+    public static <T> T deserializePayload(RpcMessage message, Type type) throws Exception {
+        // 本地传输的负载类型匹配时直接返回引用
+        Object value = message.getValue();
+        if(null != value && type instanceof Class && ((Class<?>) type).isInstance(value)){
+            return (T) value;
+        }
+
+        RpcSerializer serializer = RpcSerializerManager.getInstance().getSerializer(message.getSerializer());
+        if(null == serializer){
+            throw new RpcException("unknown rpc serializer [" + message.getSerializer() + "]");
+        }
+
+        return serializer.deserialize(getPayloadBytes(message), type);
     }
 
 }
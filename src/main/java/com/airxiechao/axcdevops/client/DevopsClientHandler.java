@@ -0,0 +1,114 @@
+package com.airxiechao.axcdevops.client;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.annotation.RpcService;
+import com.airxiechao.axcboot.communication.rpc.common.RpcRunningRequest;
+import com.airxiechao.axcboot.communication.rpc.common.RpcStreamEmitter;
+import com.airxiechao.axcdevops.util.CmdUtil;
+import com.airxiechao.axcdevops.util.HttpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端 RPC 服务
+ */
+public class DevopsClientHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(DevopsClientHandler.class);
+
+    @RpcService(value = "download", maxConcurrency = 2, maxQueueSize = 16)
+    public static Response download(DownloadParam param) throws Exception {
+        logger.info("download [{}] to [{}/{}]...", param.getUrl(), param.getDir(), param.getFileName());
+
+        HttpUtil.download(param.getUrl(), param.getDir(), param.getFileName());
+
+        logger.info("download [{}] to [{}/{}] complete.", param.getUrl(), param.getDir(), param.getFileName());
+
+        return new Response();
+    }
+
+    public static final String EXECUTE_STREAM = "execute-stream";
+
+    /**
+     * 执行命令，结束后一次返回全部输出
+     * @param param
+     * @return data 为输出
+     * @throws Exception
+     */
+    @RpcService(value = "execute", maxConcurrency = 4, maxQueueSize = 16)
+    public static Response execute(ExecuteParam param) throws Exception {
+        logger.info("execute [{}]...", param.getCmd());
+
+        List<String> output = new ArrayList<>();
+        CmdUtil.execute(param.getCmd(), output::add, RpcRunningRequest::attachCurrent);
+
+        logger.info("execute [{}] complete.", param.getCmd());
+
+        Response resp = new Response();
+        resp.setData(String.join("\n", output));
+        return resp;
+    }
+
+    /**
+     * 执行命令，输出逐行以流的分片返回
+     * @param param
+     * @param emitter
+     * @return
+     * @throws Exception
+     */
+    @RpcService(value = EXECUTE_STREAM, maxConcurrency = 4, maxQueueSize = 16)
+    public static Response executeStream(ExecuteParam param, RpcStreamEmitter emitter) throws Exception {
+        logger.info("execute [{}]...", param.getCmd());
+
+        CmdUtil.execute(param.getCmd(), emitter::emit, RpcRunningRequest::attachCurrent);
+
+        logger.info("execute [{}] complete.", param.getCmd());
+
+        return new Response();
+    }
+
+    public static class DownloadParam {
+        private String url;
+        private String dir;
+        private String fileName;
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getDir() {
+            return dir;
+        }
+
+        public void setDir(String dir) {
+            this.dir = dir;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public void setFileName(String fileName) {
+            this.fileName = fileName;
+        }
+    }
+
+    public static class ExecuteParam {
+        private String cmd;
+
+        public String getCmd() {
+            return cmd;
+        }
+
+        public void setCmd(String cmd) {
+            this.cmd = cmd;
+        }
+    }
+}
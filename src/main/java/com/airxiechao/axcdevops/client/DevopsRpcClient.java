@@ -1,17 +1,10 @@
 package com.airxiechao.axcdevops.client;
 
-import com.airxiechao.axcboot.communication.common.Response;
 import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
 import com.airxiechao.axcboot.util.ConfigUtil;
-import com.airxiechao.axcdevops.util.CmdUtil;
-import com.airxiechao.axcdevops.util.HttpUtil;
-import com.google.common.primitives.Chars;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URLEncoder;
-import java.nio.charset.Charset;
-
 public class DevopsRpcClient {
 
     private static final Logger logger = LoggerFactory.getLogger(DevopsRpcClient.class);
@@ -26,34 +19,7 @@ public class DevopsRpcClient {
     }
 
     private void initServices(){
-        // downlaod
-        rpcClient.registerService("download", (ctx, payload) -> {
-            String url = (String)payload.get("url");
-            String dir = (String)payload.get("dir");
-            String fileName = (String)payload.get("fileName");
-            logger.info("download [{}] to [{}/{}]...", url, dir, fileName);
-
-            HttpUtil.download(url, dir, fileName);
-
-            logger.info("download [{}] to [{}/{}] complete.", url, dir, fileName);
-
-            Response resp = new Response();
-            return resp;
-        });
-
-        // execute
-        rpcClient.registerService("execute", (ctx, payload) -> {
-            String cmd = (String)payload.get("cmd");
-            logger.info("execute [{}]...", cmd);
-
-            String output = CmdUtil.execute(cmd);
-
-            logger.info("execute [{}] complete -> \n{}\n", cmd, output);
-
-            Response resp = new Response();
-            resp.setData(URLEncoder.encode(output, "UTF-8"));
-            return resp;
-        });
+        rpcClient.registerHandler(DevopsClientHandler.class);
     }
 
     public void connect(boolean await){
@@ -62,4 +28,11 @@ public class DevopsRpcClient {
             rpcClient.awaitConnected();
         }
     }
+
+    /**
+     * 排空后断开，等待正在执行的命令结束
+     */
+    public void disconnect(){
+        rpcClient.disconnect();
+    }
 }
@@ -1,19 +1,27 @@
 package com.airxiechao.axcdevops.server;
 
 import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMetrics;
 import com.airxiechao.axcboot.communication.rpc.server.RpcServer;
+import com.airxiechao.axcdevops.client.DevopsClientHandler;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class DevopsRpcServer {
 
+    private static final String ALL_CLIENTS = "*";
+
     private RpcServer rpcServer;
 
     public DevopsRpcServer(int port){
@@ -32,6 +40,13 @@ public class DevopsRpcServer {
         rpcServer.start();
     }
 
+    /**
+     * 排空后停止，等待正在执行的命令结束
+     */
+    public void stop(){
+        rpcServer.stop();
+    }
+
     public void enterShell(){
 
         Thread t = new Thread(()->{
@@ -60,7 +75,7 @@ public class DevopsRpcServer {
         String client = lines[0];
 
         String type;
-        if(lines.length == 1 && "ls".equals(lines[0])){
+        if(lines.length == 1 && ("ls".equals(lines[0]) || "stats".equals(lines[0]))){
             type = client;
         }else{
             if(lines.length > 1){
@@ -96,16 +111,13 @@ public class DevopsRpcServer {
                 params.put("url", url);
                 params.put("dir", dir);
                 params.put("fileName", fileName);
-                try{
-                    Response resp = rpcServer.sendToClient(client, type, params);
+                sendCommand(client, type, params, resp -> {
                     if(resp.isSuccess()){
                         System.out.println("下载完成");
                     }else{
                         System.out.println("下载发生错误："+resp.getMessage());
                     }
-                }catch (Exception e){
-                    System.out.println("下载发生错误："+e.getMessage());
-                }
+                });
 
                 break;
             case "execute":
@@ -122,26 +134,137 @@ public class DevopsRpcServer {
 
                 Map params1 = new HashMap<>();
                 params1.put("cmd", cmd);
-                try{
-                    Response resp = rpcServer.sendToClient(client, type, params1);
+                System.out.println("============================================>>>");
+                streamCommand(client, DevopsClientHandler.EXECUTE_STREAM, params1, resp -> {
                     if(resp.isSuccess()){
-                        String output = URLDecoder.decode((String)resp.getData(), "UTF-8");
-                        System.out.println(
-                                "执行完成：\n" +
-                                "============================================>>>\n"+
-                                output+"\n" +
-                                "============================================<<<");
+                        System.out.println("执行完成");
                     }else{
                         System.out.println("执行发生错误："+resp.getMessage());
                     }
-                }catch (Exception e){
-                    System.out.println("执行发生错误："+e.getMessage());
+                });
+                System.out.println("============================================<<<");
+
+                break;
+            case "stats":
+                if(lines.length == 1){
+                    System.out.println("[server]");
+                    printStats(rpcServer.getMetrics());
+                    break;
                 }
 
+                sendCommand(client, RpcMetrics.SERVICE_TYPE, new HashMap<>(), resp -> {
+                    if(resp.isSuccess()){
+                        System.out.println();
+                        printStats(resp.getData());
+                    }else{
+                        System.out.println("获取统计发生错误："+resp.getMessage());
+                    }
+                });
+
                 break;
             default:
                 System.out.println("没有命令["+type+"]");
                 break;
         }
     }
+
+    /**
+     * 按服务类型输出请求数、错误数、繁忙数、过期丢弃数、处理中数和处理耗时
+     * @param data
+     */
+    private void printStats(Object data){
+        if(!(data instanceof Map)){
+            System.out.println(data);
+            return;
+        }
+
+        for(String side : new String[]{ "served", "called" }){
+            Object services = ((Map) data).get(side);
+            if(!(services instanceof Map) || ((Map) services).isEmpty()){
+                continue;
+            }
+
+            System.out.println(side + ":");
+            System.out.println(String.format("  %-16s %10s %8s %8s %8s %8s %10s %10s %10s",
+                    "type", "requests", "errors", "busy", "expired", "inflight", "p50(us)", "p99(us)", "max(us)"));
+            for(Object obj : ((Map) services).entrySet()){
+                Map.Entry entry = (Map.Entry) obj;
+                Object stats = entry.getValue();
+                Object latency = stat(stats, "latencyMicros");
+                System.out.println(String.format("  %-16s %10s %8s %8s %8s %8s %10s %10s %10s",
+                        entry.getKey(), stat(stats, "requests"), stat(stats, "errors"), stat(stats, "busy"), stat(stats, "expired"), stat(stats, "inFlight"),
+                        stat(latency, "p50"), stat(latency, "p99"), stat(latency, "max")));
+            }
+        }
+    }
+
+    /**
+     * 统计项，缺失时（如对端版本较旧）输出 -
+     * @param stats
+     * @param key
+     * @return
+     */
+    private Object stat(Object stats, String key){
+        Object value = stats instanceof Map ? ((Map) stats).get(key) : null;
+        return null == value ? "-" : value;
+    }
+
+    /**
+     * 发送流式命令，输出边收边打印，客户端为 * 时发送给所有在线客户端并在输出前加上客户端名称
+     * @param client
+     * @param type
+     * @param params
+     * @param handler
+     */
+    private void streamCommand(String client, String type, Map params, Consumer<Response> handler){
+        boolean all = ALL_CLIENTS.equals(client);
+        List<String> clients = all ? rpcServer.getActiveClients() : Collections.singletonList(client);
+
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for(String name : clients){
+            String prefix = all ? "["+name+"] " : "";
+            futures.add(rpcServer.sendStreamToClient(name, type, params, chunk -> {
+                System.out.println(prefix + chunk);
+            }).handle((resp, e) -> {
+                if(null != e){
+                    resp = new Response();
+                    resp.error(null != e.getCause() ? e.getCause().getMessage() : e.getMessage());
+                }
+                synchronized (this){
+                    System.out.print(prefix);
+                    handler.accept(resp);
+                }
+                return resp;
+            }));
+        }
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * 发送命令，客户端为 * 时发送给所有在线客户端，结果按返回顺序输出
+     * @param client
+     * @param type
+     * @param params
+     * @param handler
+     */
+    private void sendCommand(String client, String type, Map params, Consumer<Response> handler){
+        if(ALL_CLIENTS.equals(client)){
+            rpcServer.broadcast(type, params).onResult((name, resp) -> {
+                synchronized (this){
+                    System.out.print("["+name+"] ");
+                    handler.accept(resp);
+                }
+            }).join();
+            return;
+        }
+
+        try{
+            handler.accept(rpcServer.sendToClient(client, type, params));
+        }catch (Exception e){
+            Response resp = new Response();
+            resp.error(e.getMessage());
+            handler.accept(resp);
+        }
+    }
 }
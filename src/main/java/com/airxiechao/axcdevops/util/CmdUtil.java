@@ -4,30 +4,59 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class CmdUtil {
 
     public static String execute(String cmd) throws Exception {
+        List<String> output = new ArrayList<>();
+        execute(cmd, output::add);
+        return String.join("\n", output);
+    }
+
+    /**
+     * 执行命令，输出逐行交给 lineConsumer，先标准输出后错误输出
+     * @param cmd
+     * @param lineConsumer
+     * @throws Exception
+     */
+    public static void execute(String cmd, LineConsumer lineConsumer) throws Exception {
+        execute(cmd, lineConsumer, process -> {});
+    }
+
+    /**
+     * 执行命令，进程启动后交给 onStart，用于调用方取消时结束进程
+     * @param cmd
+     * @param lineConsumer
+     * @param onStart
+     * @throws Exception
+     */
+    public static void execute(String cmd, LineConsumer lineConsumer, Consumer<Process> onStart) throws Exception {
         Process process = Runtime.getRuntime().exec("cmd /C " + cmd);
+        onStart.accept(process);
 
-        List<String> output = new ArrayList<>();
         try(BufferedReader outReader = new BufferedReader(new InputStreamReader(process.getInputStream(), "GBK"));
             BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream(), "GBK"))
         ){
 
             String line;
             while ((line = outReader.readLine()) != null) {
-                output.add(line);
+                lineConsumer.accept(line);
             }
 
             while ((line = errorReader.readLine()) != null) {
-                output.add(line);
+                lineConsumer.accept(line);
             }
 
             process.waitFor();
+        }catch (Exception e){
+            process.destroy();
+            throw e;
         }
+    }
 
-        return String.join("\n", output);
+    public interface LineConsumer {
+        void accept(String line) throws Exception;
     }
 
 }
@@ -0,0 +1,48 @@
+package com.airxiechao.axcboot.communication.rpc.benchmark;
+
+import com.airxiechao.axcboot.communication.common.Response;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试的负载，ascii 为单字节字符，cjk 为 3 字节 UTF-8 字符
+ */
+class BenchmarkPayloads {
+
+    private static final String ASCII = "The quick brown fox jumps over the lazy dog 0123456789 ";
+    private static final String CJK = "命令执行输出中文日志字符测试";
+
+    /**
+     * 约 size 字节 UTF-8 的文本
+     * @param size
+     * @param charset ascii 或 cjk
+     * @return
+     */
+    static String text(int size, String charset){
+        String unit = "cjk".equals(charset) ? CJK : ASCII;
+        StringBuilder sb = new StringBuilder();
+        while(sb.toString().getBytes(StandardCharsets.UTF_8).length + unit.getBytes(StandardCharsets.UTF_8).length <= size){
+            sb.append(unit);
+        }
+        while(sb.toString().getBytes(StandardCharsets.UTF_8).length < size){
+            sb.append(unit.charAt(sb.length() % unit.length()));
+        }
+        return sb.toString();
+    }
+
+    static Map<String, Object> request(int size, String charset){
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("cmd", text(size, charset));
+        payload.put("dir", "/opt/app");
+        payload.put("timeout", 30);
+        return payload;
+    }
+
+    static Response response(int size, String charset){
+        Response response = new Response();
+        response.setData(text(size, charset));
+        return response;
+    }
+}
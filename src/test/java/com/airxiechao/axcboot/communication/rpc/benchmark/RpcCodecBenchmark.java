@@ -0,0 +1,68 @@
+package com.airxiechao.axcboot.communication.rpc.benchmark;
+
+import com.airxiechao.axcboot.communication.rpc.common.RpcFrame;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessage;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessageDecoder;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessageEncoder;
+import com.airxiechao.axcboot.communication.rpc.serializer.BinaryRpcSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帧编解码，不含负载序列化
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RpcCodecBenchmark {
+
+    @Param({ "64", "1024", "16384", "262144" })
+    public int payloadSize;
+
+    @Param({ "ascii", "cjk" })
+    public String charset;
+
+    private EmbeddedChannel encoder;
+    private EmbeddedChannel decoder;
+    private RpcMessage message;
+    private ByteBuf frame;
+
+    @Setup
+    public void setup() throws Exception {
+        encoder = new EmbeddedChannel(new RpcMessageEncoder());
+        decoder = new EmbeddedChannel(new RpcMessageDecoder());
+
+        byte[] payload = new BinaryRpcSerializer().serialize(BenchmarkPayloads.request(payloadSize, charset));
+        message = new RpcMessage(RpcFrame.KIND_REQUEST, 1, "execute", BinaryRpcSerializer.ID, payload);
+
+        encoder.writeOutbound(message);
+        frame = encoder.readOutbound();
+    }
+
+    @TearDown
+    public void tearDown(){
+        frame.release();
+        encoder.finishAndReleaseAll();
+        decoder.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public ByteBuf encode(){
+        encoder.writeOutbound(message);
+        ByteBuf buf = encoder.readOutbound();
+        buf.release();
+        return buf;
+    }
+
+    @Benchmark
+    public RpcMessage decode(){
+        decoder.writeInbound(frame.retainedDuplicate());
+        return decoder.readInbound();
+    }
+}
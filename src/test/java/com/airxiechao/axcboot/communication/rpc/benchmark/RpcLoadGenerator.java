@@ -0,0 +1,241 @@
+package com.airxiechao.axcboot.communication.rpc.benchmark;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcFanoutFuture;
+import com.airxiechao.axcboot.communication.rpc.common.RpcHistogram;
+import com.airxiechao.axcboot.communication.rpc.common.RpcTransport;
+import com.airxiechao.axcboot.communication.rpc.server.RpcServer;
+import io.netty.channel.EventLoopGroup;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单进程内模拟大量客户端连接同一个 RpcServer，逐步增加客户端数，每一步输出：
+ * 建连速率、在线数、心跳往返时间分布、download/execute 广播耗时、服务端所在进程的堆内存
+ *
+ * 模拟客户端共享一个 event loop group，每个客户端注册合成的 download 和 execute 服务
+ *
+ * mvn -Ploadtest verify -Dloadtest.args="--clients=5000 --step=500"
+ *
+ * 参数：
+ * --clients 最大客户端数，默认 2000
+ * --step 每步增加的客户端数，默认 500
+ * --channels 每个客户端的连接数，默认 1
+ * --io-threads 客户端共享的 IO 线程数，默认 CPU 数
+ * --rounds 每步的 download 广播次数，默认 3
+ * --lines execute 输出的行数，默认 10
+ * --native 使用 epoll，默认 false
+ * --port 默认 19100
+ */
+public class RpcLoadGenerator {
+
+    private static final String HOST = "127.0.0.1";
+    private static final long CONNECT_TIMEOUT_MILLIS = 60 * 1000;
+
+    private int maxClients = 2000;
+    private int step = 500;
+    private int numChannels = 1;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+    private int rounds = 3;
+    private int lines = 10;
+    private boolean nativeTransport;
+    private int port = 19100;
+
+    private RpcServer server;
+    private EventLoopGroup clientGroup;
+    private List<RpcClient> clients = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        Configurator.setRootLevel(Level.WARN);
+
+        RpcLoadGenerator generator = new RpcLoadGenerator();
+        generator.parseArgs(args);
+        generator.run();
+
+        System.exit(0);
+    }
+
+    private void parseArgs(String[] args){
+        for(String arg : args){
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            String value = kv.length > 1 ? kv[1] : "true";
+            switch (kv[0]){
+                case "clients":
+                    maxClients = Integer.parseInt(value);
+                    break;
+                case "step":
+                    step = Integer.parseInt(value);
+                    break;
+                case "channels":
+                    numChannels = Integer.parseInt(value);
+                    break;
+                case "io-threads":
+                    ioThreads = Integer.parseInt(value);
+                    break;
+                case "rounds":
+                    rounds = Integer.parseInt(value);
+                    break;
+                case "lines":
+                    lines = Integer.parseInt(value);
+                    break;
+                case "native":
+                    nativeTransport = Boolean.parseBoolean(value);
+                    break;
+                case "port":
+                    port = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown argument [" + arg + "]");
+            }
+        }
+    }
+
+    private void run() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        server = new RpcServer("load", HOST, port, cores, cores * 2);
+        server.setNativeTransport(nativeTransport);
+        server.start();
+
+        boolean useNative = RpcTransport.useNative(nativeTransport, "rpc-load");
+        clientGroup = RpcTransport.newEventLoopGroup(useNative, ioThreads);
+
+        System.out.println(String.format("%8s %10s %8s %26s %26s %12s %10s %12s",
+                "clients", "connect/s", "active", "rtt p50/p99/max (us)", "download p50/p99/all (ms)",
+                "execute (ms)", "heap (MB)", "heap/client"));
+
+        long baseHeap = usedHeap();
+        try{
+            for(int target = Math.min(step, maxClients); target <= maxClients; target += step){
+                double connectRate = addClients(target);
+                int active = server.getActiveClients().size();
+                RpcHistogram rtt = measureHeartbeat();
+                RpcHistogram download = new RpcHistogram();
+                long downloadMillis = 0;
+                for(int i = 0; i < rounds; ++i){
+                    downloadMillis = Math.max(downloadMillis, fanoutDownload(download));
+                }
+                long executeMillis = fanoutExecute();
+                long heap = usedHeap();
+
+                System.out.println(String.format("%8d %10.0f %8d %26s %26s %12d %10d %10dKB",
+                        target, connectRate, active,
+                        rtt.getPercentile(0.5) + "/" + rtt.getPercentile(0.99) + "/" + rtt.snapshot().get("max"),
+                        download.getPercentile(0.5) / 1000 + "/" + download.getPercentile(0.99) / 1000 + "/" + downloadMillis,
+                        executeMillis, heap >> 20, (heap - baseHeap) / target >> 10));
+            }
+        }finally {
+            for(RpcClient client : clients){
+                client.disconnect();
+            }
+            clientGroup.shutdownGracefully();
+            server.stop();
+        }
+    }
+
+    /**
+     * 增加客户端到目标数量，等待全部在服务端上线
+     * @param target
+     * @return 每秒上线的客户端数
+     */
+    private double addClients(int target) throws Exception {
+        int before = clients.size();
+        long start = System.nanoTime();
+        for(int i = before; i < target; ++i){
+            RpcClient client = new RpcClient("sim-" + i, HOST, port, 1, numChannels, clientGroup);
+            registerServices(client);
+            client.connect();
+            clients.add(client);
+        }
+
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while(server.getActiveClients().size() < target && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return (target - before) / Math.max(seconds, 1e-3);
+    }
+
+    private void registerServices(RpcClient client){
+        client.registerService("download", (ctx, payload) -> new Response());
+        client.registerStreamService("execute-stream", (ctx, payload, emitter) -> {
+            for(int i = 0; i < lines; ++i){
+                emitter.emit("line " + i);
+            }
+            return new Response();
+        });
+    }
+
+    /**
+     * 所有客户端立即发送心跳，收集客户端测得的往返时间
+     * @return 微秒
+     */
+    private RpcHistogram measureHeartbeat() throws Exception {
+        for(RpcClient client : clients){
+            client.ping();
+        }
+        Thread.sleep(1000);
+
+        RpcHistogram histogram = new RpcHistogram();
+        for(RpcClient client : clients){
+            long rtt = client.getRttMicros();
+            if(rtt >= 0){
+                histogram.record(rtt);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * 广播 download，记录每个客户端的响应时间
+     * @param histogram 微秒
+     * @return 全部返回的毫秒数
+     */
+    private long fanoutDownload(RpcHistogram histogram){
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("url", "http://127.0.0.1/file");
+        payload.put("dir", "/tmp");
+        payload.put("fileName", "file");
+
+        long start = System.nanoTime();
+        RpcFanoutFuture future = server.broadcast("download", payload, 30, TimeUnit.SECONDS);
+        future.onResult((client, response) -> histogram.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)));
+        future.join();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * 向所有在线客户端发送流式 execute
+     * @return 全部结束的毫秒数
+     */
+    private long fanoutExecute(){
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("cmd", "echo");
+
+        AtomicLong chunks = new AtomicLong();
+        long start = System.nanoTime();
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        for(String client : server.getActiveClients()){
+            futures.add(server.sendStreamToClient(client, "execute-stream", payload, chunk -> chunks.incrementAndGet(), 30, TimeUnit.SECONDS)
+                    .exceptionally(e -> null));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static long usedHeap() throws Exception {
+        System.gc();
+        Thread.sleep(200);
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
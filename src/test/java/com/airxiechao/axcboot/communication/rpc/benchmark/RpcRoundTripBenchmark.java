@@ -0,0 +1,110 @@
+package com.airxiechao.axcboot.communication.rpc.benchmark;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessage;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessageDecoder;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessageEncoder;
+import com.airxiechao.axcboot.communication.rpc.server.RpcServer;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整的请求响应往返
+ *
+ * embedded：调用方和被调用方各一个 EmbeddedChannel，包含序列化、编解码，不含网络和线程切换
+ * loopback：同一进程内的 RpcServer 和 RpcClient 通过本地 TCP 连接，包含路由和线程池
+ * local：同一进程内的 RpcServer 和 RpcClient 通过进程内本地传输连接，不含编解码，负载按引用传递
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RpcRoundTripBenchmark {
+
+    private static final String SERVICE = "echo";
+
+    @Param({ "embedded", "loopback", "local" })
+    public String transport;
+
+    @Param({ "64", "4096" })
+    public int payloadSize;
+
+    private Map<String, Object> payload;
+
+    private EmbeddedChannel caller;
+    private EmbeddedChannel callee;
+    private long requestId;
+
+    private RpcServer server;
+    private RpcClient client;
+
+    @Setup
+    public void setup() throws Exception {
+        payload = BenchmarkPayloads.request(payloadSize, "ascii");
+
+        if("embedded".equals(transport)){
+            caller = new EmbeddedChannel(new RpcMessageDecoder(), new RpcMessageEncoder());
+            callee = new EmbeddedChannel(new RpcMessageDecoder(), new RpcMessageEncoder());
+        }else{
+            int port = 19000 + (int)(System.nanoTime() % 1000);
+            server = new RpcServer("bench", "127.0.0.1", port, 1, 4);
+            server.setLocalTransport("local".equals(transport));
+            server.registerService(SERVICE, (ctx, p) -> echo(p));
+            server.start();
+
+            client = new RpcClient("bench", "127.0.0.1", port, 4);
+            client.setLocalTransport("local".equals(transport));
+            client.connect().awaitConnected();
+            // 等待握手完成
+            Thread.sleep(500);
+        }
+    }
+
+    @TearDown
+    public void tearDown(){
+        if(null != caller){
+            caller.finishAndReleaseAll();
+            callee.finishAndReleaseAll();
+        }
+        if(null != client){
+            client.disconnect();
+            server.stop();
+        }
+    }
+
+    private static Response echo(Map p){
+        Response response = new Response();
+        response.setData(p.get("cmd"));
+        return response;
+    }
+
+    @Benchmark
+    public Response roundTrip() throws Exception {
+        if(null != client){
+            return client.sendToServer(SERVICE, payload);
+        }
+
+        ChannelHandlerContext callerCtx = caller.pipeline().firstContext();
+        ChannelHandlerContext calleeCtx = callee.pipeline().firstContext();
+
+        caller.writeOutbound(RpcUtil.buildMessage(callerCtx, ++requestId, SERVICE, payload));
+        callee.writeInbound((ByteBuf) caller.readOutbound());
+        RpcMessage request = callee.readInbound();
+
+        Response response = echo(RpcUtil.deserializePayload(request, Map.class));
+        callee.writeOutbound(RpcUtil.buildResponseMessage(calleeCtx, request.getRequestId(), response));
+        caller.writeInbound((ByteBuf) callee.readOutbound());
+        RpcMessage reply = caller.readInbound();
+
+        return RpcUtil.deserializePayload(reply, Response.class);
+    }
+}
@@ -0,0 +1,66 @@
+package com.airxiechao.axcboot.communication.rpc.benchmark;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.serializer.BinaryRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Response 和请求负载的序列化，对比 JSON 和二进制序列化
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RpcSerializationBenchmark {
+
+    @Param({ "64", "1024", "16384" })
+    public int payloadSize;
+
+    @Param({ "ascii", "cjk" })
+    public String charset;
+
+    @Param({ "json", "binary" })
+    public String serializerName;
+
+    private RpcSerializer serializer;
+    private Response response;
+    private byte[] responseBytes;
+    private Map<String, Object> request;
+    private byte[] requestBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        serializer = "json".equals(serializerName) ? new JsonRpcSerializer() : new BinaryRpcSerializer();
+        response = BenchmarkPayloads.response(payloadSize, charset);
+        responseBytes = serializer.serialize(response);
+        request = BenchmarkPayloads.request(payloadSize, charset);
+        requestBytes = serializer.serialize(request);
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws Exception {
+        return serializer.serialize(response);
+    }
+
+    @Benchmark
+    public Response deserializeResponse() throws Exception {
+        return serializer.deserialize(responseBytes, Response.class);
+    }
+
+    @Benchmark
+    public byte[] serializeRequest() throws Exception {
+        return serializer.serialize(request);
+    }
+
+    @Benchmark
+    public Map deserializeRequest() throws Exception {
+        return serializer.deserialize(requestBytes, Map.class);
+    }
+}
@@ -0,0 +1,60 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 指数退避的延迟在逐次翻倍的上限内随机，达到最大值后不再增长，重置后从头开始
+ */
+public class RpcBackoffTest {
+
+    @Test
+    public void delayStaysWithinDoublingCeiling(){
+        for(int round = 0; round < 100; ++round){
+            RpcBackoff backoff = new RpcBackoff(100, 1000, TimeUnit.MILLISECONDS);
+            long[] ceilings = { 100, 200, 400, 800, 1000, 1000 };
+            for(long ceiling : ceilings){
+                long delay = backoff.nextDelayMillis();
+                assertTrue(delay + " > " + ceiling, delay >= 0 && delay <= ceiling);
+            }
+            assertEquals(ceilings.length, backoff.getAttempts());
+        }
+    }
+
+    @Test
+    public void delayIsJittered(){
+        RpcBackoff backoff = new RpcBackoff(1000, 1000, TimeUnit.MILLISECONDS);
+        Set<Long> delays = new HashSet<>();
+        for(int i = 0; i < 100; ++i){
+            delays.add(backoff.nextDelayMillis());
+        }
+        // 相同上限下各客户端的延迟分散开
+        assertTrue(delays.size() > 50);
+    }
+
+    @Test
+    public void manyAttemptsDoNotOverflow(){
+        RpcBackoff backoff = new RpcBackoff(1, 5000, TimeUnit.MILLISECONDS);
+        for(int i = 0; i < 100; ++i){
+            long delay = backoff.nextDelayMillis();
+            assertTrue(delay >= 0 && delay <= 5000);
+        }
+    }
+
+    @Test
+    public void resetStartsOver(){
+        RpcBackoff backoff = new RpcBackoff(10, 60000, TimeUnit.MILLISECONDS);
+        for(int i = 0; i < 10; ++i){
+            backoff.nextDelayMillis();
+        }
+
+        backoff.reset();
+        assertEquals(0, backoff.getAttempts());
+        assertTrue(backoff.nextDelayMillis() <= 10);
+    }
+}
@@ -0,0 +1,86 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 连接池在可用连接中选择等待请求最少的，相同时轮询
+ */
+public class RpcChannelPoolTest {
+
+    private RpcChannelPool pool = new RpcChannelPool();
+    private EmbeddedChannel[] channels = new EmbeddedChannel[3];
+    private ChannelHandlerContext[] contexts = new ChannelHandlerContext[3];
+
+    @Before
+    public void setUp(){
+        for(int i = 0; i < channels.length; ++i){
+            channels[i] = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+            contexts[i] = channels[i].pipeline().firstContext();
+            pool.getOrAdd(contexts[i]);
+        }
+    }
+
+    @After
+    public void tearDown(){
+        for(EmbeddedChannel channel : channels){
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void leastPendingIsSelected(){
+        addPending(0, 2);
+        addPending(1, 0);
+        addPending(2, 1);
+
+        for(int i = 0; i < 6; ++i){
+            assertSame(contexts[1], pool.select());
+        }
+
+        addPending(1, 3);
+        assertSame(contexts[2], pool.select());
+    }
+
+    @Test
+    public void tiesAreRoundRobin(){
+        Set<ChannelHandlerContext> selected = new HashSet<>();
+        for(int i = 0; i < contexts.length; ++i){
+            selected.add(pool.select());
+        }
+        assertEquals(contexts.length, selected.size());
+    }
+
+    @Test
+    public void unavailableChannelsAreSkipped(){
+        pool.get(contexts[0]).setLastHeartbeatTime(new Date(0));
+        RpcContext.setDraining(contexts[1]);
+        addPending(2, 5);
+
+        assertSame(contexts[2], pool.select());
+        assertTrue(pool.isActive());
+
+        channels[2].close();
+        assertNull(pool.select());
+        assertTrue(pool.remove(contexts[2]));
+        assertFalse(pool.isActive());
+        assertEquals(2, pool.size());
+    }
+
+    private void addPending(int index, int count){
+        RpcPendingRequests pendingRequests = RpcPendingRequests.of(channels[index]);
+        for(int i = 0; i < count; ++i){
+            pendingRequests.put(pendingRequests.nextRequestId(), new RpcFuture());
+        }
+    }
+}
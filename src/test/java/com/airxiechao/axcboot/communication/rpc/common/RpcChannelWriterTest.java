@@ -0,0 +1,191 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+import static org.junit.Assert.*;
+
+/**
+ * 本地 channel 上的合并写：同一轮任务内的写只 flush 一次，达到最大批量时立即 flush
+ *
+ * EmbeddedChannel 每次写都会执行待处理任务，无法体现一轮任务，这里使用真实的 event loop
+ */
+public class RpcChannelWriterTest {
+
+    private static final LocalAddress ADDRESS = new LocalAddress("rpc-channel-writer-test");
+
+    private EventLoopGroup group;
+    private Channel serverChannel;
+    private Channel channel;
+    private AtomicInteger flushes = new AtomicInteger();
+    private BlockingQueue<RpcMessage> received = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        group = new DefaultEventLoopGroup(1);
+        serverChannel = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                .childHandler(new ChannelInboundHandlerAdapter(){
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        received.add((RpcMessage) msg);
+                    }
+                })
+                .bind(ADDRESS).sync().channel();
+
+        channel = new Bootstrap().group(group).channel(LocalChannel.class)
+                .handler(new ChannelInitializer<LocalChannel>() {
+                    @Override
+                    protected void initChannel(LocalChannel ch) {
+                        ch.pipeline().addLast(new ChannelOutboundHandlerAdapter(){
+                            @Override
+                            public void flush(ChannelHandlerContext ctx) throws Exception {
+                                flushes.incrementAndGet();
+                                super.flush(ctx);
+                            }
+                        });
+                    }
+                })
+                .connect(ADDRESS).sync().channel();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        channel.close().sync();
+        serverChannel.close().sync();
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+
+    @Test
+    public void writesInOneTaskAreFlushedOnce() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 64, 0);
+        channel.eventLoop().submit(() -> {
+            writer.write(message(1));
+            writer.write(message(2));
+            writer.write(message(3));
+        }).sync();
+
+        assertReceived(1, 2, 3);
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void maxBatchSizeFlushesImmediately() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 2, 0);
+        channel.eventLoop().submit(() -> {
+            writer.write(message(1));
+            writer.write(message(2));
+            assertEquals(1, flushes.get());
+            writer.write(message(3));
+        }).sync();
+
+        assertReceived(1, 2, 3);
+        assertEquals(2, flushes.get());
+    }
+
+    @Test
+    public void writesFromOtherThreadsAreDelivered() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 64, 0);
+        writer.write(message(1));
+        writer.write(message(2));
+
+        assertReceived(1, 2);
+        assertTrue(flushes.get() >= 1 && flushes.get() <= 2);
+    }
+
+    @Test
+    public void maxDelayDefersFlush() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 64, TimeUnit.MILLISECONDS.toMicros(300));
+        long start = System.nanoTime();
+        writer.write(message(1));
+        writer.write(message(2));
+
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        assertReceived(1, 2);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void writeFailureFailsRequest() throws Exception {
+        channel.pipeline().addFirst(new ChannelOutboundHandlerAdapter(){
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+                promise.setFailure(new IllegalStateException("write error"));
+            }
+        });
+        RpcFuture future = new RpcFuture();
+        RpcChannelWriter.attach(channel, 64, 0).write(message(1), future);
+
+        try{
+            future.get(5, TimeUnit.SECONDS);
+            fail("request should fail with the write");
+        }catch (ExecutionException e){
+            assertEquals("write error", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void closeFlushesPendingWrites() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 64, TimeUnit.SECONDS.toMicros(10));
+        writer.write(message(1));
+
+        assertTrue(writer.close().await(5, TimeUnit.SECONDS));
+        assertReceived(1);
+    }
+
+    @Test
+    public void closeOnClosedChannelDoesNotFlush() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 64, TimeUnit.SECONDS.toMicros(10));
+        channel.close().sync();
+        flushes.set(0);
+
+        assertTrue(writer.close().isDone());
+        assertEquals(0, flushes.get());
+    }
+
+    @Test
+    public void closeWhileLoopShuttingDownSkipsFlush() throws Exception {
+        RpcChannelWriter writer = RpcChannelWriter.attach(channel, 64, TimeUnit.SECONDS.toMicros(10));
+        writer.write(message(1));
+        group.shutdownGracefully(500, 5000, TimeUnit.MILLISECONDS);
+
+        assertTrue(writer.close().await(5, TimeUnit.SECONDS));
+        assertFalse(channel.isOpen());
+        assertEquals(0, flushes.get());
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private void assertReceived(long... requestIds) throws InterruptedException {
+        for(long requestId : requestIds){
+            RpcMessage message = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull("message " + requestId + " not received", message);
+            assertEquals(requestId, message.getRequestId());
+        }
+    }
+
+    private static RpcMessage message(long requestId){
+        return new RpcMessage(KIND_REQUEST, requestId, "echo", JsonRpcSerializer.ID, new byte[0]);
+    }
+}
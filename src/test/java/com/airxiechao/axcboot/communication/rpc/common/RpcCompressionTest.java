@@ -0,0 +1,121 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.server.RpcServer;
+import com.airxiechao.axcboot.communication.rpc.server.RpcServerMessageRouter;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+import static org.junit.Assert.*;
+
+/**
+ * 握手协商 deflate 后，达到阈值且压缩后更小的负载才压缩
+ */
+public class RpcCompressionTest {
+
+    private static final int THRESHOLD = 100;
+
+    private RpcServerMessageRouter router;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp(){
+        RpcServer server = new RpcServer("compression-server", "127.0.0.1", 0, 1, 1).setCompressThreshold(THRESHOLD);
+        router = new RpcServerMessageRouter(new HashMap<>(), new HashMap<>(), new HashMap<>(), 1, server);
+        channel = new EmbeddedChannel(router);
+    }
+
+    @After
+    public void tearDown(){
+        channel.finishAndReleaseAll();
+        router.closeGracefully();
+    }
+
+    @Test
+    public void roundTrip(){
+        byte[] original = repeated(4096);
+
+        byte[] compressed = RpcCompression.compress(original);
+
+        assertTrue(compressed.length < original.length);
+        assertArrayEquals(original, RpcCompression.decompress(compressed, original.length));
+    }
+
+    @Test
+    public void incompressibleIsNotCompressed(){
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+
+        assertNull(RpcCompression.compress(random));
+        assertNull(RpcCompression.compress(new byte[4]));
+    }
+
+    @Test(expected = RpcException.class)
+    public void rejectRawLengthAboveLimit(){
+        byte[] original = repeated(4096);
+        RpcCompression.decompress(RpcCompression.compress(original), original.length - 1);
+    }
+
+    @Test(expected = RpcException.class)
+    public void rejectTruncatedPayload(){
+        byte[] compressed = RpcCompression.compress(repeated(4096));
+        RpcCompression.decompress(Arrays.copyOf(compressed, compressed.length / 2), 4096);
+    }
+
+    @Test
+    public void deflateNegotiatedWhenOffered() throws Exception {
+        Map reply = handshake(Collections.singletonList(RpcCompression.DEFLATE));
+
+        assertEquals(RpcCompression.DEFLATE, reply.get("compression"));
+        assertEquals(THRESHOLD, RpcContext.getCompressThreshold(context()));
+
+        RpcMessage large = RpcUtil.buildMessage(context(), 1, "echo", new RpcPayload(JsonRpcSerializer.ID, repeated(THRESHOLD)));
+        assertTrue(large.isCompressed());
+        assertArrayEquals(repeated(THRESHOLD), RpcUtil.getPayloadBytes(large));
+
+        RpcMessage small = RpcUtil.buildMessage(context(), 2, "echo", new RpcPayload(JsonRpcSerializer.ID, repeated(THRESHOLD - 1)));
+        assertFalse(small.isCompressed());
+        assertArrayEquals(repeated(THRESHOLD - 1), small.getPayload());
+    }
+
+    @Test
+    public void nothingCompressedWithoutNegotiation() throws Exception {
+        Map reply = handshake(Collections.emptyList());
+
+        assertNull(reply.get("compression"));
+        assertEquals(0, RpcContext.getCompressThreshold(context()));
+        assertFalse(RpcUtil.buildMessage(context(), 1, "echo", new RpcPayload(JsonRpcSerializer.ID, repeated(4096))).isCompressed());
+    }
+
+    private Map handshake(Object compressions) throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("serializers", Collections.singletonList(JsonRpcSerializer.ID));
+        payload.put("compressions", compressions);
+        channel.writeInbound(RpcUtil.buildHandshakeMessage(1, payload));
+
+        RpcMessage reply = channel.readOutbound();
+        assertEquals(KIND_HANDSHAKE, reply.getKind());
+        return RpcUtil.deserializePayload(reply, Map.class);
+    }
+
+    private ChannelHandlerContext context(){
+        return channel.pipeline().firstContext();
+    }
+
+    private static byte[] repeated(int length){
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte)'a');
+        return bytes;
+    }
+}
@@ -0,0 +1,76 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 对数分桶直方图的分位值误差不超过 12.5%，最大值精确记录
+ */
+public class RpcHistogramTest {
+
+    @Test
+    public void emptyHistogramIsZero(){
+        RpcHistogram histogram = new RpcHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.99));
+        Map<String, Long> snapshot = histogram.snapshot();
+        assertEquals(0L, (long) snapshot.get("mean"));
+        assertEquals(0L, (long) snapshot.get("max"));
+    }
+
+    @Test
+    public void smallValuesAreExact(){
+        RpcHistogram histogram = new RpcHistogram();
+        for(int i = 0; i < 16; ++i){
+            histogram.record(i);
+        }
+
+        assertEquals(7, histogram.getPercentile(0.5));
+        assertEquals(15, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void percentilesWithinRelativeError(){
+        RpcHistogram histogram = new RpcHistogram();
+        for(int i = 1; i <= 100000; ++i){
+            histogram.record(i);
+        }
+
+        assertEquals(100000, histogram.getCount());
+        assertWithin(50000, histogram.getPercentile(0.5));
+        assertWithin(90000, histogram.getPercentile(0.9));
+        assertWithin(99000, histogram.getPercentile(0.99));
+
+        Map<String, Long> snapshot = histogram.snapshot();
+        assertEquals(50000L, (long) snapshot.get("mean"));
+        assertEquals(100000L, (long) snapshot.get("max"));
+    }
+
+    @Test
+    public void percentileNeverExceedsMax(){
+        RpcHistogram histogram = new RpcHistogram();
+        histogram.record(1000);
+        histogram.record(1001);
+
+        // 桶中点大于最大值时取最大值
+        assertWithin(1000, histogram.getPercentile(0.5));
+        assertTrue(histogram.getPercentile(1) <= 1001);
+    }
+
+    @Test
+    public void negativeIsRecordedAsZero(){
+        RpcHistogram histogram = new RpcHistogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(1));
+    }
+
+    private static void assertWithin(long expected, long actual){
+        assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 8);
+    }
+}
@@ -0,0 +1,190 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import com.alibaba.fastjson.JSON;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+import static org.junit.Assert.*;
+
+/**
+ * 引入帧格式之前的旧客户端的帧经同一编解码器收发，帧按旧编码器的写法构造
+ */
+public class RpcLegacyFrameTest {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp(){
+        channel = new EmbeddedChannel(new RpcMessageDecoder(), new RpcMessageEncoder());
+    }
+
+    @After
+    public void tearDown(){
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void requestAndResponseKeepLegacyRequestId(){
+        String requestId = UUID.randomUUID().toString();
+        assertTrue(channel.writeInbound(legacyFrame(requestId, "echo", "{\"k\":\"v\"}")));
+        RpcMessage request = channel.readInbound();
+
+        assertTrue(RpcLegacyFrame.isLegacy(channel));
+        assertEquals(KIND_REQUEST, request.getKind());
+        assertEquals("echo", request.getType());
+        assertEquals(JsonRpcSerializer.ID, request.getSerializer());
+        assertEquals("{\"k\":\"v\"}", new String(request.getPayload(), StandardCharsets.UTF_8));
+
+        byte[] payload = "{\"code\":\"0\"}".getBytes(StandardCharsets.UTF_8);
+        assertTrue(channel.writeOutbound(new RpcMessage(KIND_RESPONSE, request.getRequestId(), null, JsonRpcSerializer.ID, payload)));
+        ByteBuf response = channel.readOutbound();
+        try{
+            assertEquals(requestId, readLegacyStr(response));
+            assertEquals("echo" + RpcLegacyFrame.RESPONSE_SUFFIX, readLegacyStr(response));
+            assertEquals("{\"code\":\"0\"}", readLegacyStr(response));
+            assertFalse(response.isReadable());
+        }finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void framesSplitAcrossReads(){
+        ByteBuf frame = legacyFrame(UUID.randomUUID().toString(), "ping", "{\"name\":\"agent\"}");
+        ByteBuf second = legacyFrame(UUID.randomUUID().toString(), "echo", "{}");
+
+        assertFalse(channel.writeInbound(frame.readRetainedSlice(3)));
+        assertFalse(channel.writeInbound(frame.readRetainedSlice(10)));
+        frame.writeBytes(second, 5);
+        assertTrue(channel.writeInbound(frame));
+        assertEquals("ping", ((RpcMessage) channel.readInbound()).getType());
+        assertNull(channel.readInbound());
+
+        assertTrue(channel.writeInbound(second));
+        assertEquals("echo", ((RpcMessage) channel.readInbound()).getType());
+    }
+
+    @Test
+    public void responseMapsToNumericRequestId(){
+        channel.writeInbound(legacyFrame(UUID.randomUUID().toString(), "ping", "{\"name\":\"agent\"}"));
+        channel.readInbound();
+
+        assertTrue(channel.writeInbound(legacyFrame("42", "hello" + RpcLegacyFrame.RESPONSE_SUFFIX, "{}")));
+        RpcMessage response = channel.readInbound();
+
+        assertEquals(KIND_RESPONSE, response.getKind());
+        assertEquals(42, response.getRequestId());
+        assertEquals("hello", response.getType());
+    }
+
+    @Test
+    public void responseWithForeignRequestIdIsDropped(){
+        channel.writeInbound(legacyFrame(UUID.randomUUID().toString(), "ping", "{\"name\":\"agent\"}"));
+        channel.readInbound();
+
+        assertFalse(channel.writeInbound(legacyFrame("not-a-number", "hello" + RpcLegacyFrame.RESPONSE_SUFFIX, "{}")));
+    }
+
+    @Test
+    public void requestIsSentWithNumericRequestId(){
+        channel.writeInbound(legacyFrame(UUID.randomUUID().toString(), "ping", "{\"name\":\"agent\"}"));
+        channel.readInbound();
+
+        assertTrue(channel.writeOutbound(new RpcMessage(KIND_REQUEST, 7, "hello", JsonRpcSerializer.ID,
+                "{}".getBytes(StandardCharsets.UTF_8))));
+        ByteBuf request = channel.readOutbound();
+        try{
+            assertEquals("7", readLegacyStr(request));
+            assertEquals("hello", readLegacyStr(request));
+            assertEquals("{}", readLegacyStr(request));
+        }finally {
+            request.release();
+        }
+    }
+
+    @Test
+    public void errorIsSentAsJsonResponse(){
+        String requestId = UUID.randomUUID().toString();
+        channel.writeInbound(legacyFrame(requestId, "echo", "{}"));
+        RpcMessage request = channel.readInbound();
+
+        assertTrue(channel.writeOutbound(RpcUtil.buildErrorMessage(request.getRequestId(), "serialize response error")));
+        ByteBuf error = channel.readOutbound();
+        try{
+            assertEquals(requestId, readLegacyStr(error));
+            assertEquals("echo" + RpcLegacyFrame.RESPONSE_SUFFIX, readLegacyStr(error));
+            Response response = JSON.parseObject(readLegacyStr(error), Response.class);
+            assertFalse(response.isSuccess());
+            assertEquals("serialize response error", response.getMessage());
+        }finally {
+            error.release();
+        }
+    }
+
+    @Test
+    public void framesWithoutLegacyFormAreNotSent(){
+        channel.writeInbound(legacyFrame(UUID.randomUUID().toString(), "echo", "{}"));
+        channel.readInbound();
+
+        channel.writeOutbound(RpcUtil.buildDrainMessage());
+        ByteBuf drain = channel.readOutbound();
+        try{
+            assertFalse(drain.isReadable());
+        }finally {
+            drain.release();
+        }
+    }
+
+    @Test
+    public void currentFrameOfSameLengthIsNotLegacy(){
+        // 长度同为 36 的新格式帧其后为版本号
+        byte[] payload = new byte[36 - FIXED_HEADER_LENGTH];
+        RpcMessage message = new RpcMessage(KIND_REQUEST, 3, null, JsonRpcSerializer.ID, payload);
+        ByteBuf frame = Unpooled.buffer();
+        RpcMessageEncoder.writeFrame(frame, message);
+        assertEquals(RpcLegacyFrame.UUID_LENGTH, frame.getInt(0));
+
+        assertTrue(channel.writeInbound(frame));
+        RpcMessage decoded = channel.readInbound();
+        assertFalse(RpcLegacyFrame.isLegacy(channel));
+        assertEquals(3, decoded.getRequestId());
+        assertArrayEquals(payload, decoded.getPayload());
+    }
+
+    /**
+     * 按旧编码器的写法构造帧：每个字段为 writeInt(s.length()) 加 UTF-8 字节，没有总长度和版本
+     */
+    private static ByteBuf legacyFrame(String requestId, String type, String payload){
+        ByteBuf buf = Unpooled.buffer();
+        writeLegacyStr(buf, requestId);
+        writeLegacyStr(buf, type);
+        writeLegacyStr(buf, payload);
+        return buf;
+    }
+
+    private static void writeLegacyStr(ByteBuf buf, String s){
+        buf.writeInt(s.length());
+        buf.writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 按旧解码器的写法读取字段
+     */
+    private static String readLegacyStr(ByteBuf buf){
+        int len = buf.readInt();
+        byte[] bytes = new byte[len];
+        buf.readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,251 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+import static org.junit.Assert.*;
+
+/**
+ * 帧编解码的往返和损坏帧的拒绝
+ */
+public class RpcMessageCodecTest {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp(){
+        channel = new EmbeddedChannel(new RpcMessageDecoder(), new RpcMessageEncoder());
+    }
+
+    @After
+    public void tearDown(){
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void roundTripLiteralType(){
+        RpcMessage message = request(Long.MAX_VALUE - 1, "服务-echo", "{\"k\":\"中文\"}".getBytes(StandardCharsets.UTF_8));
+
+        RpcMessage decoded = roundTrip(message);
+
+        assertEquals(KIND_REQUEST, decoded.getKind());
+        assertEquals(Long.MAX_VALUE - 1, decoded.getRequestId());
+        assertEquals("服务-echo", decoded.getType());
+        assertEquals(TYPE_ID_LITERAL, decoded.getTypeId());
+        assertEquals(JsonRpcSerializer.ID, decoded.getSerializer());
+        assertArrayEquals(message.getPayload(), decoded.getPayload());
+        assertFalse(decoded.hasDeadline());
+    }
+
+    @Test
+    public void roundTripTypeId(){
+        RpcTypeRegistry registry = new RpcTypeRegistry();
+        short typeId = registry.intern("echo");
+        RpcMessage message = request(7, "echo", new byte[]{ 1, 2, 3 });
+        message.setTypeId(typeId);
+
+        RpcMessage decoded = roundTrip(message);
+
+        assertEquals(typeId, decoded.getTypeId());
+        assertNull(decoded.getType());
+        assertEquals("echo", RpcUtil.resolveType(decoded, registry));
+    }
+
+    @Test
+    public void roundTripNoType(){
+        RpcMessage decoded = roundTrip(new RpcMessage(KIND_RESPONSE, 9, null, JsonRpcSerializer.ID, new byte[0]));
+
+        assertEquals(KIND_RESPONSE, decoded.getKind());
+        assertEquals(TYPE_ID_NONE, decoded.getTypeId());
+        assertNull(decoded.getType());
+        assertEquals(0, decoded.getPayload().length);
+    }
+
+    @Test
+    public void roundTripDeadline(){
+        RpcMessage message = request(11, "echo", new byte[]{ 42 });
+        message.setDeadlineMillis(1500);
+
+        RpcMessage decoded = roundTrip(message);
+
+        assertTrue(decoded.hasDeadline());
+        assertEquals(1500, decoded.getDeadlineMillis());
+        assertEquals("echo", decoded.getType());
+        assertArrayEquals(new byte[]{ 42 }, decoded.getPayload());
+    }
+
+    @Test
+    public void roundTripCompressed(){
+        byte[] original = new byte[64 * 1024];
+        Arrays.fill(original, (byte)'a');
+        RpcMessage message = request(13, "echo", RpcCompression.compress(original));
+        message.setFlags((byte)(message.getFlags() | FLAG_COMPRESSED));
+        message.setDeadlineMillis(100);
+
+        RpcMessage decoded = roundTrip(message);
+
+        assertTrue(decoded.isCompressed());
+        assertTrue(decoded.hasDeadline());
+        assertTrue(decoded.getPayload().length < original.length);
+        assertArrayEquals(original, RpcUtil.getPayloadBytes(decoded));
+    }
+
+    @Test
+    public void roundTripKindAndFlags(){
+        RpcMessage error = new RpcMessage(KIND_ERROR, 27, "echo", JsonRpcSerializer.ID, new byte[0]);
+        error.setFlags((byte)(FLAG_DEADLINE_EXCEEDED | FLAG_CANCELLED));
+
+        RpcMessage decoded = roundTrip(error);
+
+        // 响应由 kind 区分，类型保持原名
+        assertEquals(KIND_ERROR, decoded.getKind());
+        assertTrue(decoded.isResponse());
+        assertEquals("echo", decoded.getType());
+        assertTrue(decoded.isDeadlineExceeded());
+        assertTrue(decoded.isCancelled());
+        assertFalse(decoded.isCompressed());
+        assertFalse(decoded.isStream());
+
+        RpcMessage pong = new RpcMessage(KIND_HEARTBEAT, 0, null, JsonRpcSerializer.ID, new byte[8]);
+        pong.setFlags(FLAG_PONG);
+        decoded = roundTrip(pong);
+        assertEquals(KIND_HEARTBEAT, decoded.getKind());
+        assertTrue(decoded.isPong());
+        assertFalse(decoded.isResponse());
+
+        for(byte kind = KIND_REQUEST; kind <= KIND_DRAIN; ++kind){
+            assertEquals(kind, roundTrip(new RpcMessage(kind, kind, null, JsonRpcSerializer.ID, new byte[0])).getKind());
+        }
+    }
+
+    @Test
+    public void frameLengthMatchesWrittenBytes(){
+        RpcMessage message = request(15, "echo", new byte[100]);
+        message.setDeadlineMillis(10);
+
+        ByteBuf buf = Unpooled.buffer();
+        try{
+            RpcMessageEncoder.writeFrame(buf, message);
+            assertEquals(RpcMessageEncoder.frameLength(message), buf.readableBytes());
+            assertEquals(buf.readableBytes() - LENGTH_FIELD_LENGTH, buf.getInt(0));
+        }finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void decodeFrameSplitAcrossReads(){
+        ByteBuf frame = encode(request(17, "echo", new byte[]{ 1, 2, 3, 4 }));
+        int half = frame.readableBytes() / 2;
+
+        assertFalse(channel.writeInbound(frame.readRetainedSlice(half)));
+        assertTrue(channel.writeInbound(frame.readRetainedSlice(frame.readableBytes())));
+        frame.release();
+
+        RpcMessage decoded = channel.readInbound();
+        assertEquals(17, decoded.getRequestId());
+        assertArrayEquals(new byte[]{ 1, 2, 3, 4 }, decoded.getPayload());
+    }
+
+    @Test
+    public void rejectFrameShorterThanHeader(){
+        assertCorrupted(Unpooled.wrappedBuffer(new byte[FIXED_HEADER_LENGTH - 1]), "too short");
+    }
+
+    @Test
+    public void rejectUnknownVersion(){
+        ByteBuf frame = body(request(19, "echo", new byte[0]));
+        frame.setByte(frame.readerIndex(), VERSION + 1);
+        assertCorrupted(frame, "unsupported rpc frame version");
+    }
+
+    @Test
+    public void rejectTruncatedTypeLength(){
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeByte(VERSION);
+        frame.writeByte(KIND_REQUEST);
+        frame.writeByte(0);
+        frame.writeByte(JsonRpcSerializer.ID);
+        frame.writeLong(21);
+        frame.writeShort(TYPE_ID_LITERAL);
+        frame.writeByte(0);
+
+        assertCorrupted(frame, "string length truncated");
+    }
+
+    @Test
+    public void rejectTypeLongerThanFrame(){
+        ByteBuf frame = body(request(23, "echo", new byte[0]));
+        // 类型字符串的长度字段紧跟在固定头之后
+        frame.setShort(frame.readerIndex() + FIXED_HEADER_LENGTH, 1000);
+        assertCorrupted(frame, "string length exceeds frame");
+    }
+
+    @Test
+    public void rejectTruncatedDeadline(){
+        RpcMessage message = new RpcMessage(KIND_REQUEST, 25, null, JsonRpcSerializer.ID, new byte[0]);
+        message.setDeadlineMillis(100);
+        ByteBuf frame = body(message);
+        assertCorrupted(frame.slice(frame.readerIndex(), frame.readableBytes() - 2), "deadline truncated");
+    }
+
+    @Test(expected = TooLongFrameException.class)
+    public void rejectOversizedFrame(){
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeInt(MAX_FRAME_LENGTH + 1);
+        buf.writeByte(VERSION);
+
+        channel.writeInbound(buf);
+    }
+
+    private static void assertCorrupted(ByteBuf frame, String reason){
+        try{
+            RpcMessageDecoder.decodeFrame(frame);
+            fail("frame should be rejected: " + reason);
+        }catch (CorruptedFrameException e){
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+
+    private static RpcMessage request(long requestId, String type, byte[] payload){
+        return new RpcMessage(KIND_REQUEST, requestId, type, JsonRpcSerializer.ID, payload);
+    }
+
+    private RpcMessage roundTrip(RpcMessage message){
+        assertTrue(channel.writeInbound(encode(message)));
+        RpcMessage decoded = channel.readInbound();
+        assertNotNull(decoded);
+        assertNull(channel.readInbound());
+        return decoded;
+    }
+
+    private ByteBuf encode(RpcMessage message){
+        assertTrue(channel.writeOutbound(message));
+        ByteBuf frame = channel.readOutbound();
+        assertEquals(RpcMessageEncoder.frameLength(message), frame.readableBytes());
+        return frame;
+    }
+
+    /**
+     * 去掉长度字段的帧
+     * @param message
+     * @return
+     */
+    private static ByteBuf body(RpcMessage message){
+        ByteBuf buf = Unpooled.buffer();
+        RpcMessageEncoder.writeFrame(buf, message);
+        return buf.skipBytes(LENGTH_FIELD_LENGTH);
+    }
+}
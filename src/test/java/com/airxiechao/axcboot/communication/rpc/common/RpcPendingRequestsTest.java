@@ -0,0 +1,102 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * 连接内的数字请求号和以 long 为键的等待表
+ */
+public class RpcPendingRequestsTest {
+
+    private EmbeddedChannel channel;
+    private RpcPendingRequests pendingRequests;
+
+    @Before
+    public void setUp(){
+        channel = new EmbeddedChannel();
+        pendingRequests = RpcPendingRequests.of(channel);
+    }
+
+    @After
+    public void tearDown(){
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void requestIdsIncreasePerChannel(){
+        assertEquals(1, pendingRequests.nextRequestId());
+        assertEquals(2, pendingRequests.nextRequestId());
+        assertSame(pendingRequests, RpcPendingRequests.of(channel));
+
+        EmbeddedChannel other = new EmbeddedChannel();
+        try{
+            assertEquals(1, RpcPendingRequests.of(other).nextRequestId());
+        }finally {
+            other.finishAndReleaseAll();
+        }
+    }
+
+    @Test
+    public void putGetRemove(){
+        RpcFuture first = new RpcFuture();
+        RpcFuture second = new RpcFuture();
+        pendingRequests.put(1, first);
+        pendingRequests.put(Long.MAX_VALUE, second);
+
+        assertEquals(2, pendingRequests.size());
+        assertSame(first, pendingRequests.get(1));
+        assertSame(second, pendingRequests.get(Long.MAX_VALUE));
+        assertNull(pendingRequests.get(2));
+
+        assertSame(first, pendingRequests.remove(1));
+        assertNull(pendingRequests.remove(1));
+        assertEquals(1, pendingRequests.size());
+    }
+
+    @Test
+    public void removeOnlyMatchingFuture(){
+        RpcFuture future = new RpcFuture();
+        pendingRequests.put(1, future);
+
+        pendingRequests.remove(1, new RpcFuture());
+        assertSame(future, pendingRequests.get(1));
+
+        pendingRequests.remove(1, future);
+        assertNull(pendingRequests.get(1));
+        assertEquals(0, pendingRequests.size());
+    }
+
+    @Test
+    public void failAllCompletesEveryFuture() throws Exception {
+        RpcFuture first = new RpcFuture();
+        RpcFuture second = new RpcFuture();
+        pendingRequests.put(1, first);
+        pendingRequests.put(2, second);
+
+        Exception error = new Exception("closed");
+        pendingRequests.failAll(error);
+
+        assertEquals(0, pendingRequests.size());
+        assertFailedWith(error, first);
+        assertFailedWith(error, second);
+        // 响应晚于断开到达时已无等待的请求
+        second.success(new Response());
+        assertNull(pendingRequests.remove(2));
+    }
+
+    private static void assertFailedWith(Exception error, RpcFuture future) throws Exception {
+        try{
+            future.get();
+            fail("pending request should fail");
+        }catch (ExecutionException e){
+            assertSame(error, e.getCause());
+        }
+    }
+}
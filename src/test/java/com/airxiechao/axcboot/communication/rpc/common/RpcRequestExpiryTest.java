@@ -0,0 +1,93 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 计时轮到期的请求以 RpcTimeoutException 失败，并按服务类型计数，开启后才通知被调用方取消
+ */
+public class RpcRequestExpiryTest {
+
+    private RpcRequestExpiry expiry = new RpcRequestExpiry();
+
+    @Test
+    public void expiredRequestFailsAndIsCountedByType() throws Exception {
+        RpcFuture first = new RpcFuture();
+        RpcFuture second = new RpcFuture();
+        RpcFuture other = new RpcFuture();
+        expiry.track(first, "slow", 1, 150);
+        expiry.track(second, "slow", 2, 150);
+        expiry.track(other, "other", 3, 150);
+
+        assertTimedOut(first);
+        assertTimedOut(second);
+        assertTimedOut(other);
+
+        assertEquals(2L, (long) expiry.getTimeoutCounts().get("slow"));
+        assertEquals(1L, (long) expiry.getTimeoutCounts().get("other"));
+    }
+
+    @Test
+    public void completedRequestIsNotCounted() throws Exception {
+        RpcFuture future = new RpcFuture();
+        expiry.track(future, "fast", 1, 150);
+        future.success(new Response());
+
+        Thread.sleep(400);
+        assertFalse(future.isCompletedExceptionally());
+        assertNull(expiry.getTimeoutCounts().get("fast"));
+    }
+
+    @Test
+    public void nonPositiveTimeoutIsNotTracked() throws Exception {
+        RpcFuture future = new RpcFuture();
+        expiry.track(future, "unbounded", 1, 0);
+
+        Thread.sleep(300);
+        assertFalse(future.isDone());
+        assertNull(expiry.getTimeoutCounts().get("unbounded"));
+    }
+
+    @Test
+    public void remoteIsNotCancelledByDefault() throws Exception {
+        AtomicInteger cancels = new AtomicInteger();
+        RpcFuture future = new RpcFuture();
+        future.setCanceller(cancels::incrementAndGet);
+        expiry.track(future, "slow", 1, 150);
+
+        assertTimedOut(future);
+        assertEquals(0, cancels.get());
+    }
+
+    @Test
+    public void remoteIsCancelledWhenEnabled() throws Exception {
+        AtomicInteger cancels = new AtomicInteger();
+        RpcFuture future = new RpcFuture();
+        future.setCanceller(cancels::incrementAndGet);
+        expiry.setCancelOnTimeout(true);
+        expiry.track(future, "slow", 1, 150);
+
+        assertTimedOut(future);
+        // 取消帧在完成之后发送
+        long deadline = System.currentTimeMillis() + 5000;
+        while(cancels.get() == 0 && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertEquals(1, cancels.get());
+    }
+
+    private static void assertTimedOut(RpcFuture future) throws Exception {
+        try{
+            future.get(5, TimeUnit.SECONDS);
+            fail("request should time out");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.annotation.RpcService;
+import com.airxiechao.axcboot.communication.rpc.serializer.BinaryRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import com.airxiechao.axcboot.communication.rpc.serializer.RpcSerializerManager;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+import static org.junit.Assert.*;
+
+/**
+ * RpcService 注解的方法解析为统一签名的 MethodHandle，负载按参数类型反序列化，参数顺序任意
+ */
+public class RpcServiceMethodTest {
+
+    @Test
+    public void payloadBindsToBeanParameter() throws Throwable {
+        RpcServiceMethod method = find(Handlers.class, "greet");
+        Greeting greeting = new Greeting();
+        greeting.setName("rpc");
+
+        assertEquals(Greeting.class, method.getPayloadType());
+        assertFalse(method.isStream());
+        assertEquals("hello rpc", method.invoke(null, message(JsonRpcSerializer.ID, greeting), null).getData());
+        assertEquals("hello rpc", method.invoke(null, message(BinaryRpcSerializer.ID, greeting), null).getData());
+    }
+
+    @Test
+    public void parametersInAnyOrder() throws Throwable {
+        RpcServiceMethod method = find(Handlers.class, "sum");
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        try{
+            ChannelHandlerContext ctx = channel.pipeline().firstContext();
+            Response response = method.invoke(ctx, message(JsonRpcSerializer.ID, Arrays.asList(1, 2, 3)), null);
+
+            assertEquals(6, response.getData());
+            assertEquals(ctx.name(), response.getMessage());
+        }finally {
+            channel.finishAndReleaseAll();
+        }
+        assertEquals(2, method.getMaxConcurrency());
+        assertEquals(3, method.getMaxQueueSize());
+    }
+
+    @Test
+    public void emitterMarksStreamService() throws Throwable {
+        RpcServiceMethod method = find(Handlers.class, "tail");
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("file", "a.log");
+
+        assertTrue(method.isStream());
+        assertEquals("a.log", method.invoke(null, message(JsonRpcSerializer.ID, payload), null).getData());
+    }
+
+    @Test
+    public void noPayloadParameter() throws Throwable {
+        RpcServiceMethod method = find(Handlers.class, "none");
+
+        assertNull(method.getPayloadType());
+        assertTrue(method.invoke(null, message(JsonRpcSerializer.ID, "ignored"), null).isSuccess());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectInstanceMethod(){
+        RpcServiceMethod.resolve(InstanceHandler.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectNonResponseReturn(){
+        RpcServiceMethod.resolve(VoidHandler.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTwoPayloads(){
+        RpcServiceMethod.resolve(TwoPayloadHandler.class);
+    }
+
+    private static RpcServiceMethod find(Class<?> cls, String type){
+        for(RpcServiceMethod method : RpcServiceMethod.resolve(cls)){
+            if(type.equals(method.getType())){
+                return method;
+            }
+        }
+        throw new AssertionError("rpc service method [" + type + "] not resolved");
+    }
+
+    private static RpcMessage message(byte serializer, Object payload) throws Exception {
+        byte[] bytes = RpcSerializerManager.getInstance().getSerializer(serializer).serialize(payload);
+        return new RpcMessage(KIND_REQUEST, 1, null, serializer, bytes);
+    }
+
+    public static class Greeting {
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    static class Handlers {
+
+        @RpcService("greet")
+        static Response greet(Greeting greeting){
+            Response response = new Response();
+            response.setData("hello " + greeting.getName());
+            return response;
+        }
+
+        @RpcService(value = "sum", maxConcurrency = 2, maxQueueSize = 3)
+        static Response sum(List<Integer> numbers, ChannelHandlerContext ctx){
+            int sum = 0;
+            for(Integer number : numbers){
+                sum += number;
+            }
+            Response response = new Response();
+            response.setData(sum);
+            response.setMessage(ctx.name());
+            return response;
+        }
+
+        @RpcService("tail")
+        static Response tail(RpcStreamEmitter emitter, ChannelHandlerContext ctx, Map payload){
+            Response response = new Response();
+            response.setData(payload.get("file"));
+            return response;
+        }
+
+        @RpcService("none")
+        static Response none(){
+            return new Response();
+        }
+    }
+
+    static class InstanceHandler {
+        @RpcService("instance")
+        Response handle(Map payload){
+            return new Response();
+        }
+    }
+
+    static class VoidHandler {
+        @RpcService("void")
+        static void handle(Map payload){
+        }
+    }
+
+    static class TwoPayloadHandler {
+        @RpcService("two")
+        static Response handle(Map first, Map second){
+            return new Response();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.airxiechao.axcboot.communication.rpc.common;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.server.RpcServer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 请求 native 时在 epoll 可用时使用 epoll，否则回退到 NIO，两种情况下 TCP 调用都可用
+ */
+public class RpcTransportTest {
+
+    private static final int PORT = 28936;
+
+    @Test
+    public void nioUnlessNativeRequestedAndAvailable(){
+        assertFalse(RpcTransport.useNative(false, "test"));
+        assertEquals(RpcTransport.isNativeAvailable(), RpcTransport.useNative(true, "test"));
+
+        assertEquals(NioServerSocketChannel.class, RpcTransport.serverChannelClass(false));
+        assertEquals(NioSocketChannel.class, RpcTransport.socketChannelClass(false));
+        assertEquals(EpollServerSocketChannel.class, RpcTransport.serverChannelClass(true));
+        assertEquals(EpollSocketChannel.class, RpcTransport.socketChannelClass(true));
+    }
+
+    @Test
+    public void groupMatchesTransport(){
+        EventLoopGroup group = RpcTransport.newEventLoopGroup(RpcTransport.useNative(true, "test"), 1);
+        try{
+            assertEquals(RpcTransport.isNativeAvailable(), RpcTransport.isNative(group));
+        }finally {
+            group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+
+        EventLoopGroup nioGroup = new NioEventLoopGroup(1);
+        try{
+            assertFalse(RpcTransport.isNative(nioGroup));
+        }finally {
+            nioGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void nativeRequestedServesOverTcp() throws Exception {
+        RpcServer server = new RpcServer("transport-server", "127.0.0.1", PORT, 1, 2).setNativeTransport(true);
+        server.registerService("echo", (ctx, payload) -> {
+            Response response = new Response();
+            response.setData(payload.get("value"));
+            return response;
+        });
+        server.start();
+
+        RpcClient client = new RpcClient("transport-client", "127.0.0.1", PORT, 1, true);
+        try{
+            assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+
+            HashMap<String, Object> payload = new HashMap<>();
+            payload.put("value", "v");
+            assertEquals("v", client.sendToServerAsync("echo", payload, 5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS).getData());
+        }finally {
+            client.disconnect(0, TimeUnit.MILLISECONDS);
+            server.stop(0, TimeUnit.MILLISECONDS);
+        }
+    }
+}
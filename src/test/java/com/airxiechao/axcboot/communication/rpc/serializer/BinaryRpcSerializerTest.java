@@ -0,0 +1,238 @@
+package com.airxiechao.axcboot.communication.rpc.serializer;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * 二进制序列化的往返、zigzag 变长整数的边界和损坏负载的拒绝
+ */
+public class BinaryRpcSerializerTest {
+
+    private BinaryRpcSerializer serializer = new BinaryRpcSerializer();
+
+    @Test
+    public void roundTripNestedMapAndList() throws Exception {
+        Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("name", "中文-✓");
+        inner.put("empty", "");
+        inner.put("none", null);
+        inner.put("flag", true);
+
+        List<Object> list = new ArrayList<>();
+        list.add(1);
+        list.add(Long.MAX_VALUE);
+        list.add(null);
+        list.add("s");
+        list.add(inner);
+        list.add(Collections.emptyList());
+
+        Map<String, Object> outer = new HashMap<>();
+        outer.put("list", list);
+        outer.put("map", inner);
+        outer.put("double", 1.5d);
+
+        Map decoded = roundTrip(outer, Map.class);
+
+        assertEquals(1.5d, decoded.get("double"));
+        assertEquals(inner, decoded.get("map"));
+        List decodedList = (List) decoded.get("list");
+        assertEquals(6, decodedList.size());
+        assertEquals(1, decodedList.get(0));
+        assertEquals(Long.MAX_VALUE, decodedList.get(1));
+        assertNull(decodedList.get(2));
+        assertEquals("s", decodedList.get(3));
+        assertEquals(inner, decodedList.get(4));
+        assertEquals(Collections.emptyList(), decodedList.get(5));
+    }
+
+    @Test
+    public void roundTripNull() throws Exception {
+        assertArrayEquals(new byte[]{ 0 }, serializer.serialize(null));
+        assertNull(roundTrip(null, Object.class));
+    }
+
+    @Test
+    public void roundTripLongEdges() throws Exception {
+        long[] values = { 0, 1, -1, 63, -64, 64, -65, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1 };
+        for(long value : values){
+            assertEquals(value, (long) roundTrip(value, Long.class));
+        }
+    }
+
+    @Test
+    public void roundTripIntEdges() throws Exception {
+        int[] values = { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for(int value : values){
+            assertEquals(value, (int) roundTrip(value, Integer.class));
+        }
+    }
+
+    @Test
+    public void zigzagKeepsSmallNegativesShort() throws Exception {
+        // 标签 1 字节，zigzag 后 -64..63 占 1 字节，-65 和 64 占 2 字节
+        assertEquals(2, serializer.serialize(-1L).length);
+        assertEquals(2, serializer.serialize(-64L).length);
+        assertEquals(2, serializer.serialize(63L).length);
+        assertEquals(3, serializer.serialize(-65L).length);
+        assertEquals(3, serializer.serialize(64L).length);
+        // 64 位变长整数最多 10 字节
+        assertEquals(11, serializer.serialize(Long.MIN_VALUE).length);
+        assertEquals(11, serializer.serialize(Long.MAX_VALUE).length);
+    }
+
+    @Test
+    public void roundTripStringsAndBytes() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 1000; ++i){
+            sb.append("中文✓");
+        }
+        assertEquals(sb.toString(), roundTrip(sb.toString(), String.class));
+        assertEquals("", roundTrip("", String.class));
+        assertArrayEquals(new byte[]{ 1, 0, -1 }, roundTrip(new byte[]{ 1, 0, -1 }, byte[].class));
+        assertEquals(new Date(-1), roundTrip(new Date(-1), Date.class));
+    }
+
+    @Test
+    public void roundTripResponse() throws Exception {
+        Response response = new Response();
+        response.success("ok");
+        response.setData(Arrays.asList("a", "b"));
+
+        Response decoded = roundTrip(response, Response.class);
+
+        assertTrue(decoded.isSuccess());
+        assertEquals("ok", decoded.getMessage());
+        assertEquals(Arrays.asList("a", "b"), decoded.getData());
+    }
+
+    @Test
+    public void roundTripNestedBean() throws Exception {
+        Node child = new Node();
+        child.setName("child");
+        child.setWeight(2);
+        Node node = new Node();
+        node.setName("root");
+        node.setWeight(-1);
+        node.setChildren(Collections.singletonList(child));
+        node.setAttrs(Collections.singletonMap("k", "v"));
+
+        Node decoded = roundTrip(node, Node.class);
+
+        assertEquals("root", decoded.getName());
+        assertEquals(-1, decoded.getWeight());
+        assertEquals(Collections.singletonMap("k", "v"), decoded.getAttrs());
+        assertEquals(1, decoded.getChildren().size());
+        Node decodedChild = decoded.getChildren().get(0);
+        assertEquals("child", decodedChild.getName());
+        assertEquals(2, decodedChild.getWeight());
+        assertNull(decodedChild.getChildren());
+    }
+
+    @Test
+    public void beanIsWrittenAsMap() throws Exception {
+        Node node = new Node();
+        node.setName("root");
+        node.setWeight(3);
+
+        Map decoded = roundTrip(node, Map.class);
+
+        // null 属性不写出
+        assertEquals(2, decoded.size());
+        assertEquals("root", decoded.get("name"));
+        assertEquals(3, decoded.get("weight"));
+    }
+
+    @Test
+    public void mapIsReadIntoBean() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("name", "root");
+        map.put("weight", null);
+        map.put("unknown", Arrays.asList(1, 2));
+
+        Node decoded = roundTrip(map, Node.class);
+
+        assertEquals("root", decoded.getName());
+        assertEquals(0, decoded.getWeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectMalformedVarint() throws Exception {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte)0xFF);
+        // TAG_LONG 后跟 10 个均带后续位的字节
+        bytes[0] = 4;
+        serializer.deserialize(bytes, Long.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectStringLongerThanPayload() throws Exception {
+        // TAG_STRING，长度 10，只有 1 字节
+        serializer.deserialize(new byte[]{ 9, 10, 'a' }, String.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectTrailingBytes() throws Exception {
+        byte[] bytes = Arrays.copyOf(serializer.serialize("a"), 4);
+        serializer.deserialize(bytes, String.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectUnknownTag() throws Exception {
+        serializer.deserialize(new byte[]{ 99 }, Object.class);
+    }
+
+    public static class Node {
+        private String name;
+        private int weight;
+        private List<Node> children;
+        private Map<String, String> attrs;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        public void setChildren(List<Node> children) {
+            this.children = children;
+        }
+
+        public Map<String, String> getAttrs() {
+            return attrs;
+        }
+
+        public void setAttrs(Map<String, String> attrs) {
+            this.attrs = attrs;
+        }
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type) throws Exception {
+        return serializer.deserialize(serializer.serialize(value), type);
+    }
+}
@@ -0,0 +1,63 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * 新连接超出令牌桶速率时在监听 channel 上直接关闭，不向后传递
+ */
+public class RpcAcceptLimiterTest {
+
+    private RpcAcceptLimiter limiter;
+    private EmbeddedChannel serverChannel;
+
+    @Before
+    public void setUp(){
+        limiter = new RpcAcceptLimiter("limiter-test", 10, 2);
+        serverChannel = new EmbeddedChannel(limiter);
+    }
+
+    @After
+    public void tearDown(){
+        serverChannel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void burstThenRejected(){
+        Channel first = accept();
+        Channel second = accept();
+        Channel third = accept();
+
+        assertSame(first, serverChannel.readInbound());
+        assertSame(second, serverChannel.readInbound());
+        assertNull(serverChannel.readInbound());
+        assertTrue(first.isOpen());
+        assertFalse(third.isOpen());
+        assertEquals(2, limiter.getAccepted());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    public void permitsRefillOverTime() throws Exception {
+        accept();
+        accept();
+        assertFalse(accept().isOpen());
+
+        // 每秒 10 个，100 毫秒后补充一个
+        Thread.sleep(150);
+        assertTrue(accept().isOpen());
+        assertEquals(3, limiter.getAccepted());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    private Channel accept(){
+        EmbeddedChannel child = new EmbeddedChannel();
+        serverChannel.writeInbound(child);
+        return child;
+    }
+}
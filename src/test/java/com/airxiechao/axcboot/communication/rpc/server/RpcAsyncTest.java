@@ -0,0 +1,94 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上双向的异步调用，调用方不阻塞等待响应
+ */
+public class RpcAsyncTest {
+
+    private static final int PORT = 28934;
+
+    private RpcServer server;
+    private RpcClient client;
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("async-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.registerService("echo", (ctx, payload) -> {
+            release.await();
+            Response response = new Response();
+            response.setData(payload.get("value"));
+            return response;
+        });
+        server.start();
+
+        client = new RpcClient("async-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        client.registerService("hello", (ctx, payload) -> {
+            Response response = new Response();
+            response.setData("hello " + payload.get("name"));
+            return response;
+        });
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown(){
+        release.countDown();
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void clientCallReturnsBeforeResponse() throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("value", "v");
+        CompletableFuture<Response> future = client.sendToServerAsync("echo", payload, 5, TimeUnit.SECONDS);
+        assertFalse(future.isDone());
+
+        CompletableFuture<String> data = future.thenApply(response -> (String) response.getData());
+        release.countDown();
+        assertEquals("v", data.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void serverCallsClientAsync() throws Exception {
+        awaitCount(1, () -> (long) server.getActiveClients().size());
+
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("name", "server");
+        Response response = server.sendToClientAsync("async-client", "hello", payload, 5, TimeUnit.SECONDS)
+                .get(5, TimeUnit.SECONDS);
+
+        assertTrue(response.isSuccess());
+        assertEquals("hello server", response.getData());
+    }
+
+    @Test
+    public void unknownClientFailsWithoutBlocking() throws Exception {
+        CompletableFuture<Response> future = server.sendToClientAsync("no-such-client", "hello", new HashMap(), 5, TimeUnit.SECONDS);
+
+        assertTrue(future.isCompletedExceptionally());
+        try{
+            future.get();
+            fail("request to unknown client should fail");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause().getMessage().contains("no-such-client"));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上服务的并发和排队都满时以 CODE_BUSY 拒绝，其它服务不受影响
+ */
+public class RpcBulkheadTest {
+
+    private static final int PORT = 28939;
+
+    private RpcServer server;
+    private RpcClient client;
+    private CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("bulkhead-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        // 并发 1，排队 1
+        server.registerService("work", (ctx, payload) -> {
+            started.countDown();
+            release.await();
+            return new Response();
+        }, 1, 1);
+        server.registerService("echo", (ctx, payload) -> new Response());
+        server.start();
+
+        client = new RpcClient("bulkhead-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown(){
+        release.countDown();
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void fullServiceRejectsWithBusy() throws Exception {
+        CompletableFuture<Response> running = client.sendToServerAsync("work", new HashMap(), 10, TimeUnit.SECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Response> queued = client.sendToServerAsync("work", new HashMap(), 10, TimeUnit.SECONDS);
+        // 第二个请求已进入排队
+        awaitCount(2, () -> metric(server.getMetrics(), "work", "requests"));
+
+        Response rejected = client.sendToServerAsync("work", new HashMap(), 10, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+        assertTrue(rejected.isBusy());
+        assertEquals(1, metric(server.getMetrics(), "work", "busy"));
+
+        // 其它服务使用自己的线程池
+        assertTrue(client.sendToServerAsync("echo", new HashMap(), 5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS).isSuccess());
+        assertFalse(running.isDone());
+        assertFalse(queued.isDone());
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS).isSuccess());
+        assertTrue(queued.get(5, TimeUnit.SECONDS).isSuccess());
+    }
+
+    private static long metric(Map<String, Object> metrics, String type, String name){
+        Map service = (Map) ((Map) metrics.get("served")).get(type);
+        return null == service ? 0 : (long) service.get(name);
+    }
+}
@@ -0,0 +1,116 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上调用方取消请求后被调用方的服务被中断，超时默认只在本端放弃等待
+ */
+public class RpcCancelTest {
+
+    private static final int PORT = 28932;
+
+    private RpcServer server;
+    private RpcClient client;
+    private CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch interrupted = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("cancel-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.registerService("sleep", (ctx, payload) -> {
+            started.countDown();
+            try{
+                release.await(30, TimeUnit.SECONDS);
+            }catch (InterruptedException e){
+                interrupted.countDown();
+            }
+            return new Response();
+        });
+        server.start();
+
+        client = new RpcClient("cancel-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown(){
+        release.countDown();
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void cancelInterruptsRemoteHandler() throws Exception {
+        CompletableFuture<Response> future = client.sendToServerAsync("sleep", new HashMap(), 30, TimeUnit.SECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        try{
+            future.get();
+            fail("cancelled request should not complete");
+        }catch (CancellationException e){
+        }
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        awaitCount(1, () -> metric(client.getMetrics(), "called", "cancelled"));
+        // 被中断的服务随即结束，不再占用执行线程
+        awaitCount(0, () -> metric(server.getMetrics(), "served", "inFlight"));
+    }
+
+    @Test
+    public void timeoutKeepsRemoteHandlerRunning() throws Exception {
+        CompletableFuture<Response> future = client.sendToServerAsync("sleep", new HashMap(), 300, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try{
+            future.get(5, TimeUnit.SECONDS);
+            fail("request should time out");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+
+        assertFalse(interrupted.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, metric(server.getMetrics(), "served", "inFlight"));
+        assertEquals(0, metric(server.getMetrics(), "served", "cancelled"));
+    }
+
+    @Test
+    public void timeoutCancelsRemoteHandlerWhenEnabled() throws Exception {
+        client.setCancelOnTimeout(true);
+        CompletableFuture<Response> future = client.sendToServerAsync("sleep", new HashMap(), 300, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        try{
+            future.get(5, TimeUnit.SECONDS);
+            fail("request should time out");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        awaitCount(0, () -> metric(server.getMetrics(), "served", "inFlight"));
+    }
+
+    private static long metric(Map<String, Object> metrics, String side, String name){
+        Map service = (Map) ((Map) metrics.get(side)).get("sleep");
+        return null == service ? 0 : (long) service.get(name);
+    }
+}
@@ -0,0 +1,71 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上断开的连接按 channel 上记录的客户端名称移除，不影响其它客户端
+ */
+public class RpcClientIndexTest {
+
+    private static final int PORT = 28935;
+
+    private RpcServer server;
+    private RpcClient first;
+    private RpcClient second;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("index-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.start();
+
+        first = connect("index-first");
+        second = connect("index-second");
+        awaitCount(2, () -> (long) server.getActiveClients().size());
+    }
+
+    @After
+    public void tearDown(){
+        first.disconnect(0, TimeUnit.MILLISECONDS);
+        second.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void disconnectedClientIsRemoved() throws Exception {
+        first.disconnect(0, TimeUnit.MILLISECONDS);
+
+        awaitCount(1, () -> (long) server.getActiveClients().size());
+        assertEquals("index-second", server.getActiveClients().get(0));
+        assertFalse(server.getClientRtts().containsKey("index-first"));
+
+        try{
+            server.sendToClientAsync("index-first", "name", new HashMap(), 5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+            fail("request to disconnected client should fail");
+        }catch (ExecutionException e){
+        }
+        assertEquals("index-second", server.sendToClientAsync("index-second", "name", new HashMap(), 5, TimeUnit.SECONDS)
+                .get(5, TimeUnit.SECONDS).getData());
+    }
+
+    private static RpcClient connect(String name) throws Exception {
+        RpcClient client = new RpcClient(name, "127.0.0.1", PORT, 1).setLocalTransport(true);
+        client.registerService("name", (ctx, payload) -> {
+            Response response = new Response();
+            response.setData(name);
+            return response;
+        });
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+        return client;
+    }
+}
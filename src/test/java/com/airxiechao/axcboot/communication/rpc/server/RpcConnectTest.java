@@ -0,0 +1,51 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上服务端不可达时等待连接不会永久阻塞
+ */
+public class RpcConnectTest {
+
+    private static final int PORT = 28943;
+
+    private RpcClient client;
+
+    @Before
+    public void setUp(){
+        client = new RpcClient("connect-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        client.connect();
+    }
+
+    @After
+    public void tearDown(){
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void timedAwaitReturnsFalseWhenUnreachable(){
+        long start = System.currentTimeMillis();
+        assertFalse(client.awaitConnected(200, TimeUnit.MILLISECONDS));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void disconnectWakesWaiter() throws Exception {
+        Thread waiter = new Thread(() -> client.awaitConnected());
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive());
+
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertFalse(client.isConnected());
+    }
+}
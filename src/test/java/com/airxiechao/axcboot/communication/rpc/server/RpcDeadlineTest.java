@@ -0,0 +1,100 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上在排队中过期的请求以 DEADLINE_EXCEEDED 应答，不进入服务，未指定超时的请求使用默认超时
+ */
+public class RpcDeadlineTest {
+
+    private static final int PORT = 28931;
+
+    private RpcServer server;
+    private RpcClient client;
+    private CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+    private AtomicInteger ran = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("deadline-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        // 并发 1，后到的请求只能排队
+        server.registerService("work", (ctx, payload) -> {
+            ran.incrementAndGet();
+            started.countDown();
+            release.await();
+            return new Response();
+        }, 1, 4);
+        server.start();
+
+        client = new RpcClient("deadline-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown(){
+        release.countDown();
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void expiredRequestNeverReachesHandler() throws Exception {
+        CompletableFuture<Response> running = client.sendToServerAsync("work", new HashMap(), 10, TimeUnit.SECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Response> queued = client.sendToServerAsync("work", new HashMap(), 200, TimeUnit.MILLISECONDS);
+        try{
+            queued.get(5, TimeUnit.SECONDS);
+            fail("queued request should time out");
+        }catch (ExecutionException e){
+            // 调用方的超时先于被调用方的过期应答到达
+        }
+
+        // 被调用方收到请求后才开始计算截止时间，留出余量再放行
+        Thread.sleep(100);
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS).isSuccess());
+
+        awaitCount(1, () -> metric(server.getMetrics(), "served", "expired"));
+        awaitCount(1, () -> metric(client.getMetrics(), "called", "expired"));
+        assertEquals(1, ran.get());
+        assertTrue(client.sendToServerAsync("work", new HashMap(), 5, TimeUnit.SECONDS).get().isSuccess());
+        assertEquals(2, ran.get());
+    }
+
+    @Test
+    public void defaultTimeoutAppliesWithoutExplicitTimeout() throws Exception {
+        client.setRequestTimeout(200, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<Response> future = client.sendToServerAsync("work", new HashMap());
+        try{
+            future.get(5, TimeUnit.SECONDS);
+            fail("request should time out with the default timeout");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+        assertEquals(1L, (long) client.getTimeoutCounts().get("work"));
+    }
+
+    private static long metric(Map<String, Object> metrics, String side, String name){
+        Map service = (Map) ((Map) metrics.get(side)).get("work");
+        return null == service ? 0 : (long) service.get(name);
+    }
+}
@@ -0,0 +1,105 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import io.netty.channel.EventLoop;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上排空停止时处理中的请求正常结束，新请求得到繁忙响应
+ */
+public class RpcDrainTest {
+
+    private static final int PORT = 28933;
+
+    private RpcServer server;
+    private RpcClient client;
+    private volatile boolean serverStopped;
+    private CountDownLatch started = new CountDownLatch(1);
+    private CountDownLatch release = new CountDownLatch(1);
+    private CountDownLatch loopRelease = new CountDownLatch(1);
+    private AtomicInteger ran = new AtomicInteger();
+    private AtomicReference<EventLoop> serverLoop = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("drain-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.registerService("work", (ctx, payload) -> {
+            ran.incrementAndGet();
+            serverLoop.set(ctx.channel().eventLoop());
+            started.countDown();
+            release.await();
+            return new Response();
+        });
+        server.start();
+
+        client = new RpcClient("drain-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown(){
+        loopRelease.countDown();
+        release.countDown();
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        if(!serverStopped){
+            server.stop(0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void stopFinishesInFlightAndRejectsNewRequest() throws Exception {
+        CompletableFuture<Response> inFlight = client.sendToServerAsync("work", new HashMap(), 10, TimeUnit.SECONDS);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 阻塞服务端连接的 IO 线程，使新请求在排空开始后才被读取，排空帧也在此之后才发出
+        CountDownLatch loopBlocked = new CountDownLatch(1);
+        serverLoop.get().execute(() -> {
+            loopBlocked.countDown();
+            try{
+                loopRelease.await();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(loopBlocked.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Response> rejected = client.sendToServerAsync("work", new HashMap(), 10, TimeUnit.SECONDS);
+
+        Thread stopper = new Thread(() -> {
+            server.stop(10, TimeUnit.SECONDS);
+            serverStopped = true;
+        });
+        stopper.start();
+        // 进入排空后 stop 等待在途请求结束
+        long deadline = System.currentTimeMillis() + 5000;
+        while(Thread.State.TIMED_WAITING != stopper.getState() && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, stopper.getState());
+        loopRelease.countDown();
+
+        Response busy = rejected.get(5, TimeUnit.SECONDS);
+        assertTrue(busy.isBusy());
+        assertTrue(busy.getMessage(), busy.getMessage().contains("draining"));
+        assertEquals(1, ran.get());
+        assertTrue(stopper.isAlive());
+        assertFalse(inFlight.isDone());
+
+        release.countDown();
+        assertTrue(inFlight.get(5, TimeUnit.SECONDS).isSuccess());
+        stopper.join(5000);
+        assertFalse(stopper.isAlive());
+        assertTrue(serverStopped);
+    }
+}
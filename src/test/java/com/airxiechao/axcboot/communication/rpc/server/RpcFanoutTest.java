@@ -0,0 +1,88 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上向多个客户端发送同一请求，单个客户端失败不影响其它客户端
+ */
+public class RpcFanoutTest {
+
+    private static final int PORT = 28937;
+
+    private RpcServer server;
+    private RpcClient first;
+    private RpcClient second;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("fanout-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.start();
+
+        first = connect("fanout-first");
+        second = connect("fanout-second");
+        awaitCount(2, () -> (long) server.getActiveClients().size());
+    }
+
+    @After
+    public void tearDown(){
+        first.disconnect(0, TimeUnit.MILLISECONDS);
+        second.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void fanoutCollectsEveryClient() throws Exception {
+        Map<String, Response> listened = new ConcurrentHashMap<>();
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("value", "v");
+
+        Map<String, Response> results = server.sendToClients(Arrays.asList("fanout-first", "fanout-missing", "fanout-second"),
+                "echo", payload, 5, TimeUnit.SECONDS)
+                .onResult(listened::put)
+                .get(5, TimeUnit.SECONDS);
+
+        // 结果与传入的客户端顺序一致
+        assertEquals(Arrays.asList("fanout-first", "fanout-missing", "fanout-second"), Arrays.asList(results.keySet().toArray()));
+        assertEquals("fanout-first:v", results.get("fanout-first").getData());
+        assertEquals("fanout-second:v", results.get("fanout-second").getData());
+        assertFalse(results.get("fanout-missing").isSuccess());
+        assertTrue(results.get("fanout-missing").getMessage().contains("fanout-missing"));
+        awaitCount(3, () -> (long) listened.size());
+    }
+
+    @Test
+    public void broadcastReachesActiveClients() throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("value", "all");
+
+        Map<String, Response> results = server.broadcast("echo", payload, 5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, results.size());
+        assertEquals("fanout-first:all", results.get("fanout-first").getData());
+        assertEquals("fanout-second:all", results.get("fanout-second").getData());
+    }
+
+    private static RpcClient connect(String name) throws Exception {
+        RpcClient client = new RpcClient(name, "127.0.0.1", PORT, 1).setLocalTransport(true);
+        client.registerService("echo", (ctx, payload) -> {
+            Response response = new Response();
+            response.setData(name + ":" + payload.get("value"));
+            return response;
+        });
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+        return client;
+    }
+}
@@ -0,0 +1,68 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcFrame;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessage;
+import com.airxiechao.axcboot.communication.rpc.util.RpcUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitTrue;
+import static org.junit.Assert.*;
+
+/**
+ * 心跳帧在 IO 线程上直接返回 pong，双方据此测量往返时间
+ */
+public class RpcHeartbeatTest {
+
+    private static final int PORT = 28940;
+
+    @Test
+    public void pingIsAnsweredWithPongAndPing(){
+        RpcServer server = new RpcServer("heartbeat-server", "127.0.0.1", 0, 1, 1);
+        RpcServerMessageRouter router = new RpcServerMessageRouter(new HashMap<>(), new HashMap<>(), new HashMap<>(), 1, server);
+        EmbeddedChannel channel = new EmbeddedChannel(router);
+        try{
+            channel.writeInbound(RpcUtil.buildPingMessage(12345, "heartbeat-client"));
+
+            // 不经过工作线程，写入后的下一轮任务即已发出
+            channel.runPendingTasks();
+            RpcMessage pong = channel.readOutbound();
+            assertEquals(RpcFrame.KIND_HEARTBEAT, pong.getKind());
+            assertTrue(pong.isPong());
+            assertEquals(12345, RpcUtil.getHeartbeatTimestamp(pong));
+
+            RpcMessage ping = channel.readOutbound();
+            assertEquals(RpcFrame.KIND_HEARTBEAT, ping.getKind());
+            assertFalse(ping.isPong());
+            assertEquals("heartbeat-server", RpcUtil.getPingName(ping));
+
+            assertTrue(router.getActiveClients().contains("heartbeat-client"));
+        }finally {
+            channel.finishAndReleaseAll();
+            router.closeGracefully();
+        }
+    }
+
+    @Test
+    public void rttIsMeasuredOnBothSides() throws Exception {
+        RpcServer server = new RpcServer("heartbeat-server", "127.0.0.1", PORT, 1, 1).setLocalTransport(true);
+        server.start();
+        RpcClient client = new RpcClient("heartbeat-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        try{
+            assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+
+            assertTrue(client.ping());
+            awaitTrue(() -> client.getRttMicros() >= 0);
+            awaitTrue(() -> server.getClientRtts().getOrDefault("heartbeat-client", -1L) >= 0);
+        }finally {
+            client.disconnect(0, TimeUnit.MILLISECONDS);
+            server.stop(0, TimeUnit.MILLISECONDS);
+        }
+
+        assertFalse(client.ping());
+    }
+}
@@ -0,0 +1,103 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMetrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上双方按服务类型记录请求数和延迟直方图，指标服务返回同样的汇总
+ */
+public class RpcMetricsTest {
+
+    private static final int PORT = 28941;
+    private static final int NUM_CALLS = 5;
+    private static final long SLEEP_MILLIS = 20;
+    // 直方图的相对误差不超过 12.5%
+    private static final long MIN_LATENCY_MICROS = TimeUnit.MILLISECONDS.toMicros(SLEEP_MILLIS) * 7 / 8;
+
+    private RpcServer server;
+    private RpcClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("metrics-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.registerService("sleep", (ctx, payload) -> {
+            Thread.sleep(SLEEP_MILLIS);
+            return new Response();
+        });
+        server.registerService("fail", (ctx, payload) -> {
+            throw new IllegalStateException("fail");
+        });
+        server.start();
+
+        client = new RpcClient("metrics-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+    }
+
+    @After
+    public void tearDown(){
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void latencyIsRecordedOnBothSides() throws Exception {
+        for(int i = 0; i < NUM_CALLS; ++i){
+            assertTrue(client.sendToServer("sleep", new HashMap(), 5, TimeUnit.SECONDS).isSuccess());
+        }
+
+        // 服务端在写出响应后才结束计时
+        awaitCount(NUM_CALLS, () -> histogram(server.getMetrics(), "served", "sleep", "latencyMicros").get("count"));
+        Map served = service(server.getMetrics(), "served", "sleep");
+        assertEquals((long) NUM_CALLS, served.get("requests"));
+        assertEquals(0L, served.get("errors"));
+        assertEquals(0L, served.get("inFlight"));
+        assertEquals((long) NUM_CALLS, (long) histogram(server.getMetrics(), "served", "sleep", "queueWaitMicros").get("count"));
+        assertTrue(histogram(server.getMetrics(), "served", "sleep", "latencyMicros").get("p50") >= MIN_LATENCY_MICROS);
+
+        Map called = service(client.getMetrics(), "called", "sleep");
+        assertEquals((long) NUM_CALLS, called.get("requests"));
+        Map<String, Long> latency = histogram(client.getMetrics(), "called", "sleep", "latencyMicros");
+        assertEquals((long) NUM_CALLS, (long) latency.get("count"));
+        assertTrue(latency.get("p50") >= MIN_LATENCY_MICROS);
+        assertTrue(latency.get("max") >= latency.get("p99"));
+    }
+
+    @Test
+    public void failureCountsAsError() throws Exception {
+        assertFalse(client.sendToServer("fail", new HashMap(), 5, TimeUnit.SECONDS).isSuccess());
+
+        awaitCount(1, () -> (long) service(server.getMetrics(), "served", "fail").get("errors"));
+        assertEquals(1L, service(server.getMetrics(), "served", "fail").get("requests"));
+    }
+
+    @Test
+    public void metricsServiceReturnsSnapshot() throws Exception {
+        assertTrue(client.sendToServer("sleep", new HashMap(), 5, TimeUnit.SECONDS).isSuccess());
+
+        Response response = client.sendToServer(RpcMetrics.SERVICE_TYPE, new HashMap(), 5, TimeUnit.SECONDS);
+        assertTrue(response.isSuccess());
+        Map served = (Map) ((Map) response.getData()).get("served");
+        assertEquals(1, ((Number) ((Map) served.get("sleep")).get("requests")).intValue());
+    }
+
+    private static Map service(Map<String, Object> metrics, String side, String type){
+        Map service = (Map) ((Map) metrics.get(side)).get(type);
+        return null == service ? new HashMap() : service;
+    }
+
+    private static Map<String, Long> histogram(Map<String, Object> metrics, String side, String type, String name){
+        Map<String, Long> histogram = (Map<String, Long>) service(metrics, side, type).get(name);
+        return null == histogram ? new HashMap<>() : histogram;
+    }
+}
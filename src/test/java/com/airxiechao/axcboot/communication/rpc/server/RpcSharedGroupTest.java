@@ -0,0 +1,75 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * 多个客户端共享外部的 event loop group，断开一个客户端不关闭该 group
+ */
+public class RpcSharedGroupTest {
+
+    private static final int PORT = 28942;
+
+    private RpcServer server;
+    private EventLoopGroup group = new NioEventLoopGroup(2);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("shared-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.registerService("echo", (ctx, payload) -> new Response());
+        server.start();
+    }
+
+    @After
+    public void tearDown(){
+        server.stop(0, TimeUnit.MILLISECONDS);
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void ioThreadsCountedFromGroup(){
+        RpcClient client = new RpcClient("shared-client", "127.0.0.1", PORT, 1, 1, group);
+
+        assertEquals(2, client.getNumIoThreads());
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void disconnectKeepsSharedGroup() throws Exception {
+        RpcClient first = connect("shared-client-1");
+        RpcClient second = connect("shared-client-2");
+        try{
+            first.disconnect(0, TimeUnit.MILLISECONDS);
+
+            assertFalse(group.isShuttingDown());
+            assertTrue(second.sendToServer("echo", new HashMap(), 5, TimeUnit.SECONDS).isSuccess());
+        }finally {
+            second.disconnect(0, TimeUnit.MILLISECONDS);
+        }
+        assertFalse(group.isShuttingDown());
+    }
+
+    @Test
+    public void ownedGroupHasOneThreadPerChannel(){
+        RpcClient client = new RpcClient("owned-client", "127.0.0.1", PORT, 1, 3, false);
+
+        assertEquals(3, client.getNumIoThreads());
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+    }
+
+    private RpcClient connect(String name) throws Exception {
+        RpcClient client = new RpcClient(name, "127.0.0.1", PORT, 1, 1, group).setLocalTransport(true);
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+        return client;
+    }
+}
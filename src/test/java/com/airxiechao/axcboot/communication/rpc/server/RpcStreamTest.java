@@ -0,0 +1,180 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import com.airxiechao.axcboot.communication.common.Response;
+import com.airxiechao.axcboot.communication.rpc.client.RpcClient;
+import com.airxiechao.axcboot.communication.rpc.common.RpcContext;
+import com.airxiechao.axcboot.communication.rpc.common.RpcTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.airxiechao.axcboot.communication.rpc.server.RpcTestUtil.awaitCount;
+import static org.junit.Assert.*;
+
+/**
+ * 本地传输上的流式调用：额度用尽时被调用方暂停发送，结束响应在全部分片处理后完成，超时按空闲时间计算，
+ * 调用方异常结束时被调用方的 emit 不再等待额度
+ */
+public class RpcStreamTest {
+
+    private static final int PORT = 28938;
+    private static final int NUM_CHUNKS = RpcContext.STREAM_WINDOW * 3;
+
+    private RpcServer server;
+    private RpcClient client;
+    private AtomicInteger emitted = new AtomicInteger();
+    private CountDownLatch release = new CountDownLatch(1);
+    private CountDownLatch endlessStopped = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new RpcServer("stream-server", "127.0.0.1", PORT, 1, 2).setLocalTransport(true);
+        server.start();
+
+        client = new RpcClient("stream-client", "127.0.0.1", PORT, 1).setLocalTransport(true);
+        client.registerStreamService("count", (ctx, payload, emitter) -> {
+            for(int i = 0; i < NUM_CHUNKS; ++i){
+                emitter.emit(i);
+                emitted.incrementAndGet();
+            }
+            Response response = new Response();
+            response.setData("done");
+            return response;
+        });
+        // 每隔 interval 毫秒发送一个分片
+        client.registerStreamService("tick", (ctx, payload, emitter) -> {
+            int count = ((Number) payload.get("count")).intValue();
+            long interval = ((Number) payload.get("interval")).longValue();
+            for(int i = 0; i < count; ++i){
+                Thread.sleep(interval);
+                emitter.emit(i);
+            }
+            return new Response();
+        });
+        // 一直发送到被取消
+        client.registerStreamService("endless", (ctx, payload, emitter) -> {
+            try{
+                for(int i = 0; ; ++i){
+                    emitter.emit(i);
+                }
+            }finally {
+                endlessStopped.countDown();
+            }
+        });
+        assertTrue(client.connect().awaitConnected(5, TimeUnit.SECONDS));
+        awaitCount(1, () -> (long) server.getActiveClients().size());
+    }
+
+    @After
+    public void tearDown(){
+        release.countDown();
+        client.disconnect(0, TimeUnit.MILLISECONDS);
+        server.stop(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void emitterWaitsForCreditAndEndFollowsChunks() throws Exception {
+        List<Object> received = new CopyOnWriteArrayList<>();
+        CompletableFuture<Response> future = server.sendStreamToClient("stream-client", "count", new HashMap(), chunk -> {
+            try{
+                release.await();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            received.add(chunk);
+        }, 30, TimeUnit.SECONDS);
+
+        // 调用方未处理任何分片时，被调用方最多发送一个窗口
+        awaitCount(RpcContext.STREAM_WINDOW, () -> (long) emitted.get());
+        Thread.sleep(300);
+        assertEquals(RpcContext.STREAM_WINDOW, emitted.get());
+        assertFalse(future.isDone());
+
+        CompletableFuture<Integer> receivedAtEnd = future.thenApply(response -> received.size());
+        release.countDown();
+
+        Response response = future.get(10, TimeUnit.SECONDS);
+        assertEquals("done", response.getData());
+        assertEquals(NUM_CHUNKS, (int) receivedAtEnd.get());
+        for(int i = 0; i < NUM_CHUNKS; ++i){
+            assertEquals(i, ((Number) received.get(i)).intValue());
+        }
+    }
+
+    @Test
+    public void activeStreamOutlivesIdleTimeout() throws Exception {
+        AtomicInteger received = new AtomicInteger();
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("count", 10);
+        payload.put("interval", 100);
+
+        // 总时长约为空闲超时的三倍
+        Response response = server.sendStreamToClient("stream-client", "tick", payload, chunk -> received.incrementAndGet(),
+                400, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+
+        assertTrue(response.isSuccess());
+        assertEquals(10, received.get());
+        assertNull(server.getTimeoutCounts().get("tick"));
+    }
+
+    @Test
+    public void idleStreamTimesOut() throws Exception {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("count", 2);
+        payload.put("interval", 2000);
+
+        try{
+            server.sendStreamToClient("stream-client", "tick", payload, chunk -> {}, 300, TimeUnit.MILLISECONDS)
+                    .get(10, TimeUnit.SECONDS);
+            fail("idle stream should time out");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+        assertEquals(1L, (long) server.getTimeoutCounts().get("tick"));
+    }
+
+    @Test
+    public void consumerErrorCancelsEmitter() throws Exception {
+        CompletableFuture<Response> future = server.sendStreamToClient("stream-client", "endless", new HashMap(), chunk -> {
+            throw new IllegalStateException("consumer error");
+        }, 30, TimeUnit.SECONDS);
+
+        try{
+            future.get(10, TimeUnit.SECONDS);
+            fail("stream should fail with the consumer");
+        }catch (ExecutionException e){
+            assertEquals("consumer error", e.getCause().getMessage());
+        }
+        assertTrue(endlessStopped.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void idleTimeoutCancelsEmitter() throws Exception {
+        // 未开启 cancelOnTimeout，流式请求超时仍通知被调用方
+        CompletableFuture<Response> future = server.sendStreamToClient("stream-client", "endless", new HashMap(), chunk -> {
+            try{
+                release.await();
+            }catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }, 300, TimeUnit.MILLISECONDS);
+
+        try{
+            future.get(10, TimeUnit.SECONDS);
+            fail("idle stream should time out");
+        }catch (ExecutionException e){
+            assertTrue(e.getCause() instanceof RpcTimeoutException);
+        }
+        assertTrue(endlessStopped.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,41 @@
+package com.airxiechao.axcboot.communication.rpc.server;
+
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 本地传输测试共用的等待
+ */
+class RpcTestUtil {
+
+    private static final long WAIT_MILLIS = 5000;
+
+    private RpcTestUtil(){}
+
+    /**
+     * 等待计数达到期望值，超时后断言
+     * @param expected
+     * @param count 未知时可返回 null
+     */
+    static void awaitCount(long expected, Supplier<Long> count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while(!Long.valueOf(expected).equals(count.get()) && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertEquals(Long.valueOf(expected), count.get());
+    }
+
+    /**
+     * 等待条件成立，超时后断言
+     * @param condition
+     */
+    static void awaitTrue(Supplier<Boolean> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while(!condition.get() && System.currentTimeMillis() < deadline){
+            Thread.sleep(10);
+        }
+        assertTrue(condition.get());
+    }
+}
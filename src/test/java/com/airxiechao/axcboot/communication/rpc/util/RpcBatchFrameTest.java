@@ -0,0 +1,149 @@
+package com.airxiechao.axcboot.communication.rpc.util;
+
+import com.airxiechao.axcboot.communication.rpc.common.RpcContext;
+import com.airxiechao.axcboot.communication.rpc.common.RpcException;
+import com.airxiechao.axcboot.communication.rpc.common.RpcMessage;
+import com.airxiechao.axcboot.communication.rpc.serializer.JsonRpcSerializer;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.airxiechao.axcboot.communication.rpc.common.RpcFrame.*;
+import static org.junit.Assert.*;
+
+/**
+ * 批量帧负载的构造、解析和损坏负载的拒绝
+ */
+public class RpcBatchFrameTest {
+
+    private EmbeddedChannel channel;
+    private ChannelHandlerContext ctx;
+
+    @Before
+    public void setUp(){
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        ctx = channel.pipeline().firstContext();
+    }
+
+    @After
+    public void tearDown(){
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void roundTripItems() throws Exception {
+        List<RpcMessage> items = new ArrayList<>();
+        items.add(RpcUtil.buildBatchItemMessage(ctx, 1, "echo", Collections.singletonMap("k", "v")));
+        items.add(RpcUtil.buildBatchItemMessage(ctx, 2, "echo", "{\"raw\":true}"));
+        RpcMessage withDeadline = RpcUtil.buildBatchItemMessage(ctx, 3, "sleep", new HashMap<>());
+        withDeadline.setDeadlineMillis(250);
+        items.add(withDeadline);
+
+        RpcMessage batch = RpcUtil.buildBatchMessage(ctx, 10, items, true);
+        assertEquals(KIND_BATCH, batch.getKind());
+        assertTrue(batch.isOrdered());
+
+        List<RpcMessage> decoded = RpcUtil.getBatchItems(batch);
+        assertEquals(3, decoded.size());
+        for(int i = 0; i < items.size(); ++i){
+            assertEquals(items.get(i).getRequestId(), decoded.get(i).getRequestId());
+            assertEquals(items.get(i).getType(), decoded.get(i).getType());
+            assertArrayEquals(items.get(i).getPayload(), decoded.get(i).getPayload());
+        }
+        assertFalse(decoded.get(0).hasDeadline());
+        assertEquals(250, decoded.get(2).getDeadlineMillis());
+
+        Map payload = RpcUtil.deserializePayload(decoded.get(1), Map.class);
+        assertEquals(true, payload.get("raw"));
+    }
+
+    @Test
+    public void roundTripCompressedBatch() throws Exception {
+        RpcContext.setCompressThreshold(ctx, 64);
+        char[] text = new char[4096];
+        Arrays.fill(text, 'x');
+
+        List<RpcMessage> items = new ArrayList<>();
+        for(int i = 0; i < 4; ++i){
+            items.add(RpcUtil.buildBatchItemMessage(ctx, i + 1, "echo", Collections.singletonMap("text", new String(text))));
+        }
+        RpcMessage batch = RpcUtil.buildBatchResponseMessage(ctx, 20, items);
+        assertTrue(batch.isCompressed());
+
+        List<RpcMessage> decoded = RpcUtil.getBatchItems(batch);
+        assertEquals(4, decoded.size());
+        assertArrayEquals(items.get(3).getPayload(), decoded.get(3).getPayload());
+    }
+
+    @Test
+    public void emptyBatch(){
+        RpcMessage batch = RpcUtil.buildBatchMessage(ctx, 30, Collections.emptyList(), false);
+        assertTrue(RpcUtil.getBatchItems(batch).isEmpty());
+    }
+
+    @Test
+    public void rejectPayloadWithoutCount(){
+        assertInvalid(new byte[]{ 0, 0 }, "count invalid");
+    }
+
+    @Test
+    public void rejectCountBeyondPayload() throws Exception {
+        byte[] payload = payload(1);
+        Unpooled.wrappedBuffer(payload).setInt(0, 2);
+        assertInvalid(payload, "count invalid");
+    }
+
+    @Test
+    public void rejectNegativeCount(){
+        assertInvalid(new byte[]{ -1, -1, -1, -1 }, "count invalid");
+    }
+
+    @Test
+    public void rejectItemLongerThanPayload() throws Exception {
+        byte[] payload = payload(2);
+        assertInvalid(Arrays.copyOf(payload, payload.length - 1), "item length invalid");
+    }
+
+    @Test
+    public void rejectItemShorterThanHeader() throws Exception {
+        byte[] payload = payload(1);
+        // 第一项的长度字段在 count 之后
+        Unpooled.wrappedBuffer(payload).setInt(4, FIXED_HEADER_LENGTH - 1);
+        assertInvalid(payload, "item length invalid");
+    }
+
+    /**
+     * 含 count 项的未压缩批量负载
+     * @param count
+     * @return
+     * @throws Exception
+     */
+    private byte[] payload(int count) throws Exception {
+        List<RpcMessage> items = new ArrayList<>();
+        for(int i = 0; i < count; ++i){
+            items.add(RpcUtil.buildBatchItemMessage(ctx, i + 1, "echo", new HashMap<>()));
+        }
+        return RpcUtil.buildBatchMessage(ctx, 40, items, false).getPayload();
+    }
+
+    private static void assertInvalid(byte[] payload, String reason){
+        RpcMessage batch = new RpcMessage(KIND_BATCH, 50, null, JsonRpcSerializer.ID, payload);
+        try{
+            RpcUtil.getBatchItems(batch);
+            fail("batch should be rejected: " + reason);
+        }catch (RpcException e){
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}